@@ -0,0 +1,110 @@
+package io.pivotal.tola.cfapi.usage.benchmark;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageRecordReader;
+import io.pivotal.tola.cfapi.usage.ingest.ServiceUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.ingest.ServiceUsageRecordReader;
+import io.pivotal.tola.cfapi.usage.model.AUsage;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.model.SIUsage;
+import io.pivotal.tola.cfapi.usage.model.SpaceUsage;
+import io.pivotal.tola.cfapi.usage.support.UsagePayloads;
+import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * AggregationBenchmark - finalizing and rendering the OrgUsage/SIUsage models that views and reports read
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+
+    private static final String ORG = "org-1";
+    private static final int SPACES = 20;
+
+    @Param({"1000", "100000"})
+    private int records;
+
+    private OrgUsage orgUsage;
+    private SIUsage siUsage;
+
+    @Setup
+    public void setUp() throws IOException {
+        int perSpace = Math.max(1, records / SPACES / 20);
+        byte[] apps = UsagePayloads.appUsages(ORG, records, SPACES, perSpace, 1L);
+        byte[] services = UsagePayloads.serviceUsages(ORG, records, SPACES, perSpace, 1L);
+
+        AppUsageAccumulator appAccumulator = new AppUsageAccumulator();
+        AppUsageRecordReader appReader = new AppUsageRecordReader(appAccumulator);
+        appReader.feed(apps);
+        appReader.endOfInput();
+        orgUsage = appAccumulator.toOrgUsage(ORG, 2019, 1, 89);
+
+        ServiceUsageAccumulator svcAccumulator = new ServiceUsageAccumulator(Arrays.asList("p-rabbitmq", "p.rabbitmq", "p.mysql"));
+        ServiceUsageRecordReader svcReader = new ServiceUsageRecordReader(svcAccumulator);
+        svcReader.feed(services);
+        svcReader.endOfInput();
+        siUsage = svcAccumulator.toSIUsage(ORG, 2019, 1, 89);
+    }
+
+    /**
+     * Builds the org usage of the spaces and apps again, which computes its totals
+     */
+    @Benchmark
+    public OrgUsage computeOrgTotals() {
+        return OrgUsage.builder().orgGuid(ORG).year(2019).quarter(1)
+                .spaceUsage(orgUsage.getSpaceUsage()).aUsage(orgUsage.getAUsage()).build();
+    }
+
+    @Benchmark
+    public SIUsage computeSITotals() {
+        return SIUsage.builder().orgGuid(ORG).year(2019).quarter(1)
+                .siSpaceUsage(siUsage.getSiSpaceUsage()).serviceInstanceUsage(siUsage.getServiceInstanceUsage()).build();
+    }
+
+    /**
+     * Reads every value the org app usage page shows
+     */
+    @Benchmark
+    public void renderOrgUsage(Blackhole bh) {
+        bh.consume(orgUsage.getTotalApps());
+        bh.consume(orgUsage.getTotalGbPerAis());
+        bh.consume(orgUsage.getAvgAICount());
+        for (SpaceUsage s : orgUsage.getSpaceUsage().values()) {
+            bh.consume(s.getSpaceName());
+            bh.consume(s.getTotalApps());
+            bh.consume(s.getTotalGbPerAis());
+            bh.consume(s.getAvgAICount());
+        }
+        for (AUsage a : orgUsage.getAUsage().values()) {
+            bh.consume(a.getAppName());
+            bh.consume(a.getTotalGbPerAis());
+            bh.consume(a.getAvgAICount());
+        }
+    }
+
+    @Benchmark
+    public String format() {
+        return UsageUtils.format(orgUsage.getAiDurationInSecs());
+    }
+
+}
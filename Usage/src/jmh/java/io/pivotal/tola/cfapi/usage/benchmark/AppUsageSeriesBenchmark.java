@@ -0,0 +1,81 @@
+package io.pivotal.tola.cfapi.usage.benchmark;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageRecord;
+import io.pivotal.tola.cfapi.usage.store.AppUsageSeries;
+import io.pivotal.tola.cfapi.usage.store.AppUsageSeries.GroupBy;
+import io.pivotal.tola.cfapi.usage.store.AppUsageSeries.Metric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * AppUsageSeriesBenchmark - range queries over three years of daily usage of every app of a foundation, as the
+ * usage views run them
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class AppUsageSeriesBenchmark {
+
+    private static final int ORGS = 20;
+    private static final LocalDate FIRST = LocalDate.parse("2017-01-01");
+    private static final LocalDate LAST = LocalDate.parse("2019-12-31");
+    private static final LocalDate YEAR = LocalDate.parse("2019-01-01");
+
+    @Param({"100", "1000"})
+    private int appsPerOrg;
+
+    private AppUsageSeries series;
+
+    @Setup
+    public void setUp() {
+        series = new AppUsageSeries();
+        AppUsageRecord record = new AppUsageRecord();
+        for (LocalDate day = FIRST; !day.isAfter(LAST); day = day.plusDays(1)) {
+            for (int o = 0; o < ORGS; o++) {
+                AppUsageAccumulator usage = new AppUsageAccumulator();
+                for (int a = 0; a < appsPerOrg; a++) {
+                    record.setSpaceGuid("org-" + o + "-space-" + (a % 5));
+                    record.setAppGuid("org-" + o + "-app-" + a);
+                    record.setAppName("app-" + a);
+                    record.setDurationInSeconds(86400 * (1 + a % 3));
+                    record.setMemoryInMbPerInstance(1024);
+                    usage.accept(record);
+                }
+                series.put("f", "org-" + o, day, day, usage);
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<String, double[]> dailyByAppOfAYear() {
+        return series.daily(GroupBy.APP, Metric.MB_SECONDS, "f", null, YEAR, LAST);
+    }
+
+    @Benchmark
+    public Map<String, Double> totalBySpaceOfAYear() {
+        return series.total(GroupBy.SPACE, Metric.MB_SECONDS, "f", "org-0", YEAR, LAST);
+    }
+
+    @Benchmark
+    public double sumOfAnAppOverThreeYears() {
+        return series.sum(Metric.MB_SECONDS, "org-0-app-1", FIRST, LAST);
+    }
+
+}
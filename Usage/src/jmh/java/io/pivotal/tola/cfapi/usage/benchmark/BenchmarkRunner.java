@@ -0,0 +1,33 @@
+package io.pivotal.tola.cfapi.usage.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkRunner - runs the usage benchmarks with the GC profiler, so that every result comes with its allocation
+ * rate (gc.alloc.rate) and bytes allocated per operation (gc.alloc.rate.norm).
+ * <p>
+ * Takes the usual JMH arguments, e.g. {@code Ingestion -p records=1000,100000}. Results are written to
+ * target/jmh-result.json unless -rf/-rff say otherwise, to be attached to the change they measure.
+ */
+public class BenchmarkRunner {
+
+    private static final String RESULT = "target/jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cli).addProfiler(GCProfiler.class);
+        if (cli.getIncludes().isEmpty()) {
+            options.include(BenchmarkRunner.class.getPackage().getName() + "\\..*");
+        }
+        if (!cli.getResult().hasValue() && !cli.getResultFormat().hasValue()) {
+            options.result(RESULT).resultFormat(ResultFormatType.JSON);
+        }
+        new Runner(options.build()).run();
+    }
+
+}
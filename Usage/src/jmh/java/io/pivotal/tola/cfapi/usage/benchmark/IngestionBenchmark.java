@@ -0,0 +1,101 @@
+package io.pivotal.tola.cfapi.usage.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pivotal.tola.cfapi.response.model.AppUsage;
+import io.pivotal.tola.cfapi.response.model.AppUsage_;
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageRecordReader;
+import io.pivotal.tola.cfapi.usage.ingest.ServiceUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.ingest.ServiceUsageRecordReader;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.model.SIUsage;
+import io.pivotal.tola.cfapi.usage.support.UsagePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * IngestionBenchmark - parses and aggregates one org's app_usages and service_usages response, chunk by chunk as it
+ * arrives from the network, into the OrgUsage and SIUsage the service caches. This is the work of
+ * UsageService.generateAppUsage/generateSvcUsage without the fetch.
+ * <p>
+ * appUsageObjectMapping is the baseline it replaced, reading the whole response into AppUsage before grouping it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class IngestionBenchmark {
+
+    private static final String ORG = "org-1";
+    private static final List<String> SERVICES = Arrays.asList("p-rabbitmq", "p.rabbitmq", "p.mysql");
+    private static final int CHUNK_SIZE = 8192;
+    private static final int SPACES = 20;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int records;
+
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private byte[] appPayload;
+    private List<byte[]> appChunks;
+    private List<byte[]> svcChunks;
+
+    @Setup
+    public void setUp() {
+        // About 20 records per app or service instance, as in a quarter of daily records
+        int perSpace = Math.max(1, records / SPACES / 20);
+        appPayload = UsagePayloads.appUsages(ORG, records, SPACES, perSpace, 1L);
+        appChunks = UsagePayloads.chunks(appPayload, CHUNK_SIZE);
+        svcChunks = UsagePayloads.chunks(UsagePayloads.serviceUsages(ORG, records, SPACES, perSpace, 1L), CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public OrgUsage appUsage() throws IOException {
+        AppUsageAccumulator accumulator = new AppUsageAccumulator();
+        AppUsageRecordReader reader = new AppUsageRecordReader(accumulator);
+        for (byte[] chunk : appChunks) {
+            reader.feed(chunk);
+        }
+        reader.endOfInput();
+        return accumulator.toOrgUsage(ORG, 2019, 1, 89);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, List<AppUsage_>>> appUsageObjectMapping() throws IOException {
+        String response = new String(appPayload, StandardCharsets.UTF_8);
+        return mapper.readValue(response, AppUsage.class).getAppUsages().stream()
+                .collect(Collectors.groupingBy(AppUsage_::getSpaceGuid, Collectors.groupingBy(AppUsage_::getAppName)));
+    }
+
+    @Benchmark
+    public SIUsage svcUsage() throws IOException {
+        ServiceUsageAccumulator accumulator = new ServiceUsageAccumulator(SERVICES);
+        ServiceUsageRecordReader reader = new ServiceUsageRecordReader(accumulator);
+        for (byte[] chunk : svcChunks) {
+            reader.feed(chunk);
+        }
+        reader.endOfInput();
+        return accumulator.toSIUsage(ORG, 2019, 1, 89);
+    }
+
+}
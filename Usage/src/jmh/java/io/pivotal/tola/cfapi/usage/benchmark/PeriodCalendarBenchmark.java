@@ -0,0 +1,67 @@
+package io.pivotal.tola.cfapi.usage.benchmark;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import io.pivotal.tola.cfapi.usage.utils.UsagePeriod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * PeriodCalendarBenchmark - the period math run for every org and quarter on refreshes and page views
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PeriodCalendarBenchmark {
+
+    @Param({"1", "7"})
+    private int fiscalYearStartMonth;
+
+    private PeriodCalendar calendar;
+    private LocalDate[] days;
+
+    @Setup
+    public void setUp() {
+        calendar = new PeriodCalendar(fiscalYearStartMonth, Clock.systemDefaultZone());
+        days = new LocalDate[366];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = LocalDate.of(2020, 1, 1).plusDays(i);
+        }
+    }
+
+    @Benchmark
+    public void quarterOf(Blackhole bh) {
+        for (LocalDate day : days) {
+            bh.consume(calendar.quarterOf(day));
+        }
+    }
+
+    @Benchmark
+    public List<UsagePeriod> elapsedQuarters() {
+        return calendar.getElapsedQuarters();
+    }
+
+    @Benchmark
+    public long quarterDays() {
+        UsagePeriod quarter = calendar.quarter(2020, 1);
+        return PeriodCalendar.daysBetween(quarter.getStart(), calendar.endOrToday(quarter));
+    }
+
+}
@@ -0,0 +1,99 @@
+package io.pivotal.tola.cfapi.usage.benchmark;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.tola.cfapi.usage.UsageApplication;
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness;
+import io.pivotal.tola.cfapi.usage.service.UsageService;
+import io.pivotal.tola.cfapi.usage.support.AppUsageStandIn;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * RefreshBenchmark - a full scheduled refresh of a foundation against the app-usage stand-in, every org and elapsed
+ * quarter fetched, parsed and aggregated, with and without compressed responses
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class RefreshBenchmark {
+
+    private static final String FOUNDATION = "standin";
+
+    @Param({"20", "100"})
+    private int orgs;
+
+    @Param({"true", "false"})
+    private boolean compression;
+
+    private AppUsageStandIn standIn;
+    private ConfigurableApplicationContext context;
+    private UsageService usageService;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        standIn = AppUsageStandIn.start(AppUsageStandIn.Settings.builder()
+                .orgs(orgs)
+                .appRecords(2000)
+                .svcRecords(500)
+                .spaces(10)
+                .appsPerSpace(20)
+                .latency(Duration.ofMillis(20))
+                .compression(compression)
+                .build());
+        // Arguments, unlike default properties, override the foundations of application.properties
+        context = new SpringApplicationBuilder(UsageApplication.class).run(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:refreshbenchmark;DB_CLOSE_DELAY=-1",
+                "--usage.cronScheduleExpr=-",
+                "--usage.warmUpOnStartup=false",
+                "--usage.foundations[0].name=" + FOUNDATION,
+                "--usage.foundations[0].apiHost=localhost",
+                "--usage.foundations[0].port=" + standIn.getPort(),
+                "--usage.foundations[0].secure=false",
+                "--usage.foundations[0].appUsageUrl=" + standIn.getBaseUrl(),
+                "--usage.foundations[0].username=admin",
+                "--usage.foundations[0].password=admin"
+        );
+        usageService = context.getBean(UsageService.class);
+
+        // Orgs are discovered in the background after startup
+        FoundationReadiness readiness = context.getBean(FoundationReadiness.class);
+        long deadline = System.currentTimeMillis() + 60000;
+        while (!readiness.isReady(FOUNDATION) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        if (!readiness.isReady(FOUNDATION)) {
+            throw new IllegalStateException("Orgs of " + FOUNDATION + " were not discovered");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        standIn.close();
+    }
+
+    @Benchmark
+    public long refresh() {
+        usageService.refreshUsage();
+        return usageService.getAppUsageCache().estimatedSize();
+    }
+
+}
@@ -0,0 +1,79 @@
+package io.pivotal.tola.cfapi.usage.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.pivotal.tola.cfapi.usage.controller.UsageReportWriter;
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageRecordReader;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.support.UsagePayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ReportBenchmark - writes the usage report of a foundation of orgs with thousands of apps each, streaming with
+ * the default row window or holding every row in memory (rowWindow -1)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ReportBenchmark {
+
+    private static final int APPS_PER_ORG = 4000;
+
+    @Param({"10", "40"})
+    private int orgs;
+
+    @Param({"100", "-1"})
+    private int rowWindow;
+
+    private List<OrgUsage> orgUsages;
+
+    @Setup
+    public void setUp() throws IOException {
+        orgUsages = new ArrayList<>();
+        for (int i = 0; i < orgs; i++) {
+            String orgGuid = "org-" + i;
+            AppUsageAccumulator accumulator = new AppUsageAccumulator();
+            AppUsageRecordReader reader = new AppUsageRecordReader(accumulator);
+            reader.feed(UsagePayloads.appUsages(orgGuid, APPS_PER_ORG, APPS_PER_ORG / 200 + 4, 200, orgGuid.hashCode()));
+            reader.endOfInput();
+            orgUsages.add(accumulator.toOrgUsage(orgGuid, 2019, 1, 89));
+        }
+    }
+
+    @Benchmark
+    public void report() throws IOException {
+        try (UsageReportWriter writer = new UsageReportWriter(rowWindow)) {
+            for (OrgUsage orgUsage : orgUsages) {
+                writer.addAppUsage(orgUsage.getOrgGuid(), orgUsage);
+            }
+            writer.write(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            });
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package io.pivotal.tola.cfapi.usage.configuration;
 
+import java.time.Duration;
+
 import org.cloudfoundry.operations.DefaultCloudFoundryOperations;
 import org.cloudfoundry.reactor.ConnectionContext;
 import org.cloudfoundry.reactor.client.ReactorCloudFoundryClient;
@@ -16,17 +18,28 @@ public class FoundationConnection {
 
     private ConnectionContext connectionContext;
     private PasswordGrantTokenProvider tokenProvider;
+    private TokenCache tokenCache;
 
-    public FoundationConnection(ConnectionContext connectionContext, PasswordGrantTokenProvider tokenProvider) {
+    public FoundationConnection(String name, ConnectionContext connectionContext, PasswordGrantTokenProvider tokenProvider, Duration tokenRefreshMargin) {
         this.tokenProvider = tokenProvider;
         this.connectionContext = connectionContext;
+        this.tokenCache = new TokenCache(name, () -> tokenProvider.getToken(connectionContext),
+                () -> tokenProvider.invalidate(connectionContext), tokenRefreshMargin);
     } 
 
     public String getToken() {
-        Mono<String> token = tokenProvider.getToken(connectionContext);
+        Mono<String> token = tokenCache.getToken();
         return token.block();
     }
 
+    public Mono<String> getTokenAsync() {
+        return tokenCache.getToken();
+    }
+
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
     public DefaultCloudFoundryOperations getCloudFoundryOperations() {
         return DefaultCloudFoundryOperations.builder()
                 .cloudFoundryClient(cloudFoundryClient())
@@ -1,11 +1,14 @@
 package io.pivotal.tola.cfapi.usage.configuration;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.cloudfoundry.operations.CloudFoundryOperations;
 import org.cloudfoundry.reactor.DefaultConnectionContext;
@@ -16,6 +19,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import lombok.Data;
+import reactor.core.publisher.Mono;
 
 /** 
  * FoundationsConfig - know how to manage foundation configuration and connections from properties files
@@ -35,13 +39,71 @@ public class FoundationsConfig {
 
 	private List<String> includedServices = new ArrayList<>();
 
+	private int maxConnections = 64;
+
+	private Duration tokenRefreshMargin = Duration.ofMinutes(2);
+
+	// Refresh fetches only the days after the last stored day instead of the whole quarter
+	private boolean incrementalRefresh = true;
+
+	// Usage of ended days is stored per day, so date ranges are built from stored days
+	private boolean dailyBuckets = true;
+
+	// App usage is also kept per app and day in memory for the daily app usage report. Every span of days fetched
+	// feeds it, spread evenly over its days, and it is rebuilt from the stored spans on startup
+	private boolean appUsageSeries = true;
+
+	// Bound of each quarterly usage cache, in org, space and app/service instance rows
+	private long cacheMaxWeight = 2000000;
+
+	// Cached usage of the open quarter is fetched again after this long
+	private Duration openQuarterTtl = Duration.ofHours(6);
+
+	// Usage responses are requested gzip compressed and inflated chunk by chunk as they arrive
+	private boolean fetchCompression = true;
+
+	// Every usage response is also appended to segment files of at most archiveSegmentBytes, and 1 GB, under
+	// archiveDir. Segments are deleted once all their responses are older than archiveRetention. In archiveReplay
+	// usage is rebuilt from the archive at startup, and nothing is fetched
+	private boolean archive = false;
+	private String archiveDir = "data/archive";
+	private long archiveSegmentBytes = 64L * 1024 * 1024;
+	private Duration archiveRetention = Duration.ofDays(400);
+	private boolean archiveReplay = false;
+
+	// A usage request fails when the service sends nothing for this long, before the response or between chunks
+	private Duration fetchTimeout = Duration.ofMinutes(1);
+
+	// Failed usage fetches are retried this often, after a backoff that doubles from fetchRetryBackoff up to
+	// fetchRetryMaxBackoff, with jitter
+	private int fetchRetries = 3;
+	private Duration fetchRetryBackoff = Duration.ofSeconds(1);
+	private Duration fetchRetryMaxBackoff = Duration.ofSeconds(30);
+
+	// A foundation's circuit opens for circuitOpenDuration when circuitFailureRate of its last circuitWindow usage
+	// requests failed, once it made circuitMinCalls of them
+	private int circuitWindow = 20;
+	private int circuitMinCalls = 10;
+	private double circuitFailureRate = 0.5;
+	private Duration circuitOpenDuration = Duration.ofMinutes(1);
+
+	// Foundations refreshed at the same time, each refresh runs on one thread of the refresh executor
+	private int refreshThreads = 4;
+
+	// Usage of all orgs is fetched in the background at startup, stale quarters only
+	private boolean warmUpOnStartup = true;
+
+	// First month of the fiscal year that quarters and years are counted from
+	private int fiscalYearStartMonth = 1;
+
 	@PostConstruct
 	public void init() {
 
 	  for(Foundation f: foundations) {
-		DefaultConnectionContext connectionContext = DefaultConnectionContext.builder().apiHost(f.apiHost).skipSslValidation(f.skipSslValidation).build();		  
+		DefaultConnectionContext connectionContext = DefaultConnectionContext.builder().apiHost(f.apiHost).port(Optional.ofNullable(f.port))
+				.secure(f.secure).skipSslValidation(f.skipSslValidation).build();
 		PasswordGrantTokenProvider tokenProvider = PasswordGrantTokenProvider.builder().password(f.password).username(f.username).build();
-		FoundationConnection fc = new FoundationConnection(connectionContext, tokenProvider);
+		FoundationConnection fc = new FoundationConnection(f.name, connectionContext, tokenProvider, tokenRefreshMargin);
 		foundationMap.put(f.name, fc);
 		LOG.info("Creating foundation {}", f.name);
 	  }
@@ -52,7 +114,11 @@ public class FoundationsConfig {
 	}
 
 	public String getAppUsageBaseUrl(String name) {
-		return String.format("https://app-usage.%s", getFoundation(name).getSystemDomain());
+		Foundation foundation = getFoundation(name);
+		if (foundation.appUsageUrl != null) {
+			return foundation.appUsageUrl;
+		}
+		return String.format("https://app-usage.%s", foundation.getSystemDomain());
 	}
 
 	public String getFoundationHostApi(String name) {
@@ -66,6 +132,36 @@ public class FoundationsConfig {
 		return foundationMap.get(name).getToken();
 	}
 
+	public Mono<String> getFoundationTokenAsync(String name) {
+		if (!foundationMap.containsKey(name)) {
+			return Mono.error(new Error(String.format("Foundation %s doesn't exist", name)));
+		}
+		return foundationMap.get(name).getTokenAsync();
+	}
+
+	public boolean isSkipSslValidation(String name) {
+		return getFoundation(name).skipSslValidation;
+	}
+
+	public int getFetchConcurrency(String name) {
+		return getFoundation(name).fetchConcurrency;
+	}
+
+	public int getMaxFetchConcurrency(String name) {
+		return getFoundation(name).maxFetchConcurrency;
+	}
+
+	public List<TokenCache> getTokenCaches() {
+		List<TokenCache> caches = new ArrayList<>();
+		foundationMap.values().forEach(fc -> caches.add(fc.getTokenCache()));
+		return caches;
+	}
+
+	@PreDestroy
+	public void destroy() {
+		foundationMap.values().forEach(fc -> fc.getTokenCache().dispose());
+	}
+
 	public CloudFoundryOperations getOperations(String name) {
 		if (!foundationMap.containsKey(name)) {
 			throw new Error(String.format("Foundation %s doesn't exist", name));
@@ -96,6 +192,16 @@ public class FoundationsConfig {
 		private String username;
 		private String password;
 		private boolean skipSslValidation;
+		// Requests in flight to start with, adapted between 1 and maxFetchConcurrency to the service's latency and errors
+		private int fetchConcurrency = 8;
+		private int maxFetchConcurrency = 32;
+
+		// Defaults to the https port of apiHost
+		private Integer port;
+		private boolean secure = true;
+
+		// Defaults to https://app-usage.<system domain>
+		private String appUsageUrl;
 
 		public String getSystemDomain() {
 			return apiHost.substring(4); // "api."
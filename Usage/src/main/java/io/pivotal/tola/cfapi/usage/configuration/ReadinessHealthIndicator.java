@@ -0,0 +1,60 @@
+package io.pivotal.tola.cfapi.usage.configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness;
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness.State;
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness.Status;
+import io.pivotal.tola.cfapi.usage.service.UsageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+/**
+ * ReadinessHealthIndicator - reports the warm-up of every foundation as the readiness component of /actuator/health.
+ * <p>
+ * Out of service while any foundation is still warming up, then up as long as at least one foundation is ready.
+ * Org quarters that the last refreshes failed to fetch are listed as failedFetches.
+ */
+@Component
+public class ReadinessHealthIndicator extends AbstractHealthIndicator {
+
+    @Autowired
+    private FoundationReadiness readiness;
+
+    @Autowired
+    private UsageService usageService;
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        Map<String, Status> statuses = readiness.getStatuses();
+
+        boolean warming = statuses.values().stream().anyMatch(s -> !s.getState().isDone());
+        boolean ready = statuses.values().stream().anyMatch(s -> s.getState() == State.READY);
+        if (warming) {
+            builder.outOfService();
+        } else if (ready || statuses.isEmpty()) {
+            builder.up();
+        } else {
+            builder.down();
+        }
+
+        statuses.forEach((foundation, status) -> {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("state", status.getState());
+            details.put("orgs", status.getOrgs());
+            details.put("warmUpMillis", readiness.getWarmUp(foundation).toMillis());
+            if (status.getError() != null) {
+                details.put("error", status.getError());
+            }
+            int failedFetches = usageService.getFetchFailures().getFailures(foundation).size();
+            if (failedFetches > 0) {
+                details.put("failedFetches", failedFetches);
+            }
+            builder.withDetail(foundation, details);
+        });
+    }
+
+}
@@ -0,0 +1,203 @@
+package io.pivotal.tola.cfapi.usage.configuration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * TokenCache - caches a foundation's UAA token until shortly before it expires.
+ * <p>
+ * Concurrent callers share a single in-flight token request, and a refresh is scheduled in the background
+ * ahead of expiry so that usage fetches never wait on UAA while the foundation is reachable. A background refresh
+ * that fails is retried halfway to the expiry of the current token, and then every MIN_REFRESH_DELAY once it expired.
+ */
+public class TokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenCache.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static final Duration FALLBACK_TTL = Duration.ofMinutes(5);
+
+    private static final Duration MIN_REFRESH_DELAY = Duration.ofSeconds(10);
+
+    private final String foundation;
+    private final Supplier<Mono<String>> tokenSource;
+    private final Runnable invalidator;
+    private final Duration refreshMargin;
+    private final Clock clock;
+    private final Scheduler scheduler;
+
+    private final AtomicReference<CachedToken> current = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<String>> inflight = new AtomicReference<>();
+    private final AtomicReference<Disposable> scheduledRefresh = new AtomicReference<>();
+    private volatile boolean disposed;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TokenCache(String foundation, Supplier<Mono<String>> tokenSource, Runnable invalidator, Duration refreshMargin) {
+        this(foundation, tokenSource, invalidator, refreshMargin, Clock.systemUTC(), Schedulers.parallel());
+    }
+
+    /**
+     * @param scheduler -- runs the background refreshes, on the time of clock
+     */
+    TokenCache(String foundation, Supplier<Mono<String>> tokenSource, Runnable invalidator, Duration refreshMargin,
+               Clock clock, Scheduler scheduler) {
+        this.foundation = foundation;
+        this.tokenSource = tokenSource;
+        this.invalidator = invalidator;
+        this.refreshMargin = refreshMargin;
+        this.clock = clock;
+        this.scheduler = scheduler;
+    }
+
+    public Mono<String> getToken() {
+        CachedToken token = current.get();
+        if (token != null && clock.instant().isBefore(token.expiresAt)) {
+            hits.incrementAndGet();
+            return Mono.just(token.value);
+        }
+        misses.incrementAndGet();
+        return Mono.defer(() -> Mono.fromFuture(refresh()));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String getFoundation() {
+        return foundation;
+    }
+
+    public void dispose() {
+        disposed = true;
+        Disposable refresh = scheduledRefresh.getAndSet(null);
+        if (refresh != null) {
+            refresh.dispose();
+        }
+    }
+
+    ///////////////////////////////////////
+
+    private CompletableFuture<String> refresh() {
+        while (true) {
+            CompletableFuture<String> existing = inflight.get();
+            if (existing != null) {
+                return existing;
+            }
+            CompletableFuture<String> created = new CompletableFuture<>();
+            if (inflight.compareAndSet(null, created)) {
+                // Deferred so a source that throws instead of returning an error fails the request the same way
+                Mono.defer(tokenSource).subscribe(value -> {
+                    CachedToken token = new CachedToken(value, expiresAt(value));
+                    current.set(token);
+                    inflight.set(null);
+                    created.complete(value);
+                    scheduleRefresh(token);
+                }, e -> fail(created, e), () -> {
+                    if (!created.isDone()) {
+                        fail(created, new IllegalStateException("No token returned for foundation " + foundation));
+                    }
+                });
+                return created;
+            }
+        }
+    }
+
+    private void fail(CompletableFuture<String> request, Throwable e) {
+        LOG.error("Unable to obtain token for foundation {}", foundation, e);
+        inflight.compareAndSet(request, null);
+        request.completeExceptionally(e);
+    }
+
+    private void scheduleRefresh(CachedToken token) {
+        // Refreshes ahead of expiry by the margin, or halfway through tokens that live shorter than the margin
+        Duration lifetime = Duration.between(clock.instant(), token.expiresAt);
+        Duration delay = lifetime.minus(refreshMargin);
+        if (delay.compareTo(lifetime.dividedBy(2)) < 0) {
+            delay = lifetime.dividedBy(2);
+        }
+        schedule(delay);
+    }
+
+    private void scheduleRetry() {
+        // Halfway to the expiry of the token still held, so a few attempts fit in before it expires
+        CachedToken token = current.get();
+        Duration delay = token == null ? Duration.ZERO : Duration.between(clock.instant(), token.expiresAt).dividedBy(2);
+        LOG.warn("Background token refresh for foundation {} failed, retrying in {}", foundation, delay);
+        schedule(delay);
+    }
+
+    private void schedule(Duration delay) {
+        if (disposed) {
+            return;
+        }
+        if (delay.compareTo(MIN_REFRESH_DELAY) < 0) {
+            delay = MIN_REFRESH_DELAY;
+        }
+        Disposable refresh = scheduler.schedule(() -> {
+            // The UAA token provider hands back its own cached token until it is invalidated
+            invalidator.run();
+            refresh().whenComplete((value, e) -> {
+                if (e != null) {
+                    scheduleRetry();
+                }
+            });
+        }, delay.toMillis(), TimeUnit.MILLISECONDS);
+        Disposable previous = scheduledRefresh.getAndSet(refresh);
+        if (previous != null) {
+            previous.dispose();
+        }
+    }
+
+    private Instant expiresAt(String token) {
+        Instant now = clock.instant();
+        try {
+            String jwt = token.substring(token.indexOf(' ') + 1);
+            String[] parts = jwt.split("\\.");
+            if (parts.length > 1) {
+                JsonNode claims = MAPPER.readTree(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+                if (claims.has("exp")) {
+                    return Instant.ofEpochSecond(claims.get("exp").asLong());
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("Unable to read expiry of token for foundation {}", foundation);
+        }
+        return now.plus(FALLBACK_TTL);
+    }
+
+    private static class CachedToken {
+        private final String value;
+        private final Instant expiresAt;
+
+        CachedToken(String value, Instant expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package io.pivotal.tola.cfapi.usage.configuration;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * TokenCacheMetrics - publishes token cache hits and misses per foundation as usage.token.requests
+ */
+@Component
+public class TokenCacheMetrics implements MeterBinder {
+
+    @Autowired
+    private FoundationsConfig config;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        config.getTokenCaches().forEach(cache -> {
+            FunctionCounter.builder("usage.token.requests", cache, TokenCache::getHits)
+                    .tag("foundation", cache.getFoundation())
+                    .tag("result", "hit")
+                    .description("Token requests served from the cache")
+                    .register(registry);
+            FunctionCounter.builder("usage.token.requests", cache, TokenCache::getMisses)
+                    .tag("foundation", cache.getFoundation())
+                    .tag("result", "miss")
+                    .description("Token requests that waited on UAA")
+                    .register(registry);
+        });
+    }
+
+}
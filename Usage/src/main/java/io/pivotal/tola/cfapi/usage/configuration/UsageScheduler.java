@@ -12,12 +12,17 @@ public class UsageScheduler {
     private UsageService usageService;
 
     @Scheduled(cron = "${usage.cronScheduleExpr:0 2 0 * * *}")
-    public void scheduleAppUsage(){
-        usageService.getAppUsageByFoundationOrg();
+    public void scheduleUsage(){
+        usageService.refreshUsage();
     }
 
-    @Scheduled(cron = "${usage.cronScheduleExpr:0 2 0 * * *}")
-    public void scheduleSIUsage(){
-        usageService.getSIUsageByFoundationOrg();
+    @Scheduled(initialDelayString = "${usage.orgDiscoveryInterval:PT15M}", fixedDelayString = "${usage.orgDiscoveryInterval:PT15M}")
+    public void scheduleOrgDiscovery(){
+        usageService.refreshOrgs();
+    }
+
+    @Scheduled(initialDelayString = "${usage.failedFetchRetryInterval:PT10M}", fixedDelayString = "${usage.failedFetchRetryInterval:PT10M}")
+    public void scheduleFailedFetchRetry(){
+        usageService.retryFailedFetches();
     }
 }
@@ -0,0 +1,293 @@
+package io.pivotal.tola.cfapi.usage.controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.pivotal.tola.cfapi.usage.model.*;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * UsageReportWriter - writes the usage report of a foundation one org sheet at a time.
+ * <p>
+ * Only the last rowWindow rows of a sheet stay on the heap, older rows are spilled to compressed temp files
+ * as soon as they are created, so memory doesn't grow with the number of orgs, apps or service instances.
+ */
+public class UsageReportWriter implements Closeable {
+
+    public static final int DEFAULT_ROW_WINDOW = 100;
+
+    private final SXSSFWorkbook workbook;
+
+    private final Map<String, CellStyle> styles;
+
+    public UsageReportWriter() {
+        this(DEFAULT_ROW_WINDOW);
+    }
+
+    public UsageReportWriter(int rowWindow) {
+        this.workbook = new SXSSFWorkbook(rowWindow);
+        this.workbook.setCompressTempFiles(true);
+        this.styles = createStyles(workbook);
+    }
+
+    public void addAppUsage(String orgName, OrgUsage orgUsage) {
+
+        // create a new Excel sheet
+        SXSSFSheet sheet = createSheet(orgName);
+
+        Row titleRow = sheet.createRow(0);
+        titleRow.setHeightInPoints(45);
+        Cell titleCell = titleRow.createCell(0);
+        titleCell.setCellValue("Orgs");
+        titleCell.setCellStyle(styles.get("title"));
+        sheet.addMergedRegion(CellRangeAddress.valueOf("$A$1:$E$1"));
+
+
+        Row headerRow = sheet.createRow(1);
+        headerRow.createCell(0).setCellValue("Org Name");
+        headerRow.createCell(1).setCellValue("Total Apps");
+        headerRow.createCell(2).setCellValue("Total Gb per Ais");
+        headerRow.createCell(3).setCellValue("Avg AI Count");
+
+        Row dataRow = sheet.createRow(2);
+        dataRow.createCell(0).setCellValue(orgName);
+        dataRow.createCell(1).setCellValue(orgUsage.getTotalApps());
+        dataRow.createCell(2).setCellValue(orgUsage.getTotalGbPerAis());
+        dataRow.createCell(3).setCellValue(orgUsage.getAvgAICount());
+
+        sheet.setRowBreak(3);
+        sheet.setRowBreak(4);
+
+        titleRow = sheet.createRow(5);
+        titleRow.setHeightInPoints(45);
+        titleCell = titleRow.createCell(0);
+        titleCell.setCellValue("Spaces");
+        titleCell.setCellStyle(styles.get("title"));
+        sheet.addMergedRegion(CellRangeAddress.valueOf("$A$6:$E$6"));
+
+        headerRow = sheet.createRow(6);
+        headerRow.createCell(0).setCellValue("Space Name");
+        headerRow.createCell(1).setCellValue("Total Apps");
+        headerRow.createCell(2).setCellValue("Total Gb per Ais");
+        headerRow.createCell(3).setCellValue("Avg AI Count");
+
+        int i = 7;
+        for (Map.Entry<String, SpaceUsage> entry : orgUsage.getSpaceUsage().entrySet()) {
+
+            dataRow = sheet.createRow(i);
+            dataRow.createCell(0).setCellValue(entry.getValue().getSpaceName());
+            dataRow.createCell(1).setCellValue(entry.getValue().getTotalApps());
+            dataRow.createCell(2).setCellValue(entry.getValue().getTotalGbPerAis());
+            dataRow.createCell(3).setCellValue(entry.getValue().getAvgAICount());
+            i++;
+        }
+
+
+        sheet.setRowBreak(i++);
+        sheet.setRowBreak(i++);
+
+        titleRow = sheet.createRow(i++);
+        titleRow.setHeightInPoints(45);
+        titleCell = titleRow.createCell(0);
+        titleCell.setCellValue("Applications");
+        titleCell.setCellStyle(styles.get("title"));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("$A$").append(i).append(":$E$").append(i);
+        sheet.addMergedRegion(CellRangeAddress.valueOf(sb.toString()));
+
+        headerRow = sheet.createRow(i++);
+        headerRow.createCell(0).setCellValue("Application Name");
+        headerRow.createCell(1).setCellValue("Space Name");
+        headerRow.createCell(2).setCellValue("Total Gb per Ais");
+        headerRow.createCell(3).setCellValue("Avg AI Count");
+
+        for (Map.Entry<String, AUsage> entry : orgUsage.getAUsage().entrySet()) {
+
+            dataRow = sheet.createRow(i);
+            dataRow.createCell(0).setCellValue(entry.getValue().getAppName());
+            dataRow.createCell(1).setCellValue(entry.getValue().getSpaceName());
+            dataRow.createCell(2).setCellValue(entry.getValue().getTotalGbPerAis());
+            dataRow.createCell(3).setCellValue(entry.getValue().getAvgAICount());
+            i++;
+        }
+    }
+
+    public void addSvcUsage(String orgName, SIUsage siUsage) {
+
+        // create a new Excel sheet
+        SXSSFSheet sheet = createSheet(orgName);
+
+        Row titleRow = sheet.createRow(0);
+        titleRow.setHeightInPoints(45);
+        Cell titleCell = titleRow.createCell(0);
+        titleCell.setCellValue("Orgs");
+        titleCell.setCellStyle(styles.get("title"));
+        sheet.addMergedRegion(CellRangeAddress.valueOf("$A$1:$D$1"));
+
+
+        Row headerRow = sheet.createRow(1);
+        headerRow.createCell(0).setCellValue("Org Name");
+        headerRow.createCell(1).setCellValue("Total Services");
+        headerRow.createCell(2).setCellValue("Total Sis");
+        headerRow.createCell(3).setCellValue("Avg SI Count");
+
+        Row dataRow = sheet.createRow(2);
+        dataRow.createCell(0).setCellValue(orgName);
+        dataRow.createCell(1).setCellValue(siUsage.getTotalSvcs());
+        dataRow.createCell(2).setCellValue(siUsage.getTotalSis());
+        dataRow.createCell(3).setCellValue(siUsage.getAvgSICount());
+
+        sheet.setRowBreak(3);
+        sheet.setRowBreak(4);
+
+        titleRow = sheet.createRow(5);
+        titleRow.setHeightInPoints(45);
+        titleCell = titleRow.createCell(0);
+        titleCell.setCellValue("Spaces");
+        titleCell.setCellStyle(styles.get("title"));
+        sheet.addMergedRegion(CellRangeAddress.valueOf("$A$6:$D$6"));
+
+        headerRow = sheet.createRow(6);
+        headerRow.createCell(0).setCellValue("Space Name");
+        headerRow.createCell(1).setCellValue("Total Services");
+        headerRow.createCell(2).setCellValue("Total Sis");
+        headerRow.createCell(3).setCellValue("Avg SI Count");
+
+        int i = 7;
+        for (Map.Entry<String, SISpaceUsage> entry : siUsage.getSiSpaceUsage().entrySet()) {
+
+            dataRow = sheet.createRow(i);
+            dataRow.createCell(0).setCellValue(entry.getValue().getSpaceName());
+            dataRow.createCell(1).setCellValue(entry.getValue().getTotalSvcs());
+            dataRow.createCell(2).setCellValue(entry.getValue().getTotalSis());
+            dataRow.createCell(3).setCellValue(entry.getValue().getAvgSICount());
+            i++;
+        }
+
+
+        sheet.setRowBreak(i++);
+        sheet.setRowBreak(i++);
+
+        titleRow = sheet.createRow(i++);
+        titleRow.setHeightInPoints(45);
+        titleCell = titleRow.createCell(0);
+        titleCell.setCellValue("Applications");
+        titleCell.setCellStyle(styles.get("title"));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("$A$").append(i).append(":$D$").append(i);
+        sheet.addMergedRegion(CellRangeAddress.valueOf(sb.toString()));
+
+        headerRow = sheet.createRow(i++);
+        headerRow.createCell(0).setCellValue("Service Name");
+        headerRow.createCell(1).setCellValue("Space Name");
+        headerRow.createCell(2).setCellValue("Service Instance Name");
+        headerRow.createCell(3).setCellValue("Avg SI Count");
+
+        for (Map.Entry<String, ServiceInstanceUsage> entry : siUsage.getServiceInstanceUsage().entrySet()) {
+
+            dataRow = sheet.createRow(i);
+            dataRow.createCell(0).setCellValue(entry.getValue().getServiceName());
+            dataRow.createCell(1).setCellValue(entry.getValue().getSpaceName());
+            dataRow.createCell(2).setCellValue(entry.getValue().getServiceInstanceName());
+            dataRow.createCell(3).setCellValue(entry.getValue().getAvgSICount());
+            i++;
+        }
+    }
+
+    /**
+     * Writes two rows per app, its AI count and its Gb per AI, with a column per day from start
+     */
+    public void addDailyAppUsage(String orgName, LocalDate start, List<DailyAppUsage> usage) {
+
+        // create a new Excel sheet
+        SXSSFSheet sheet = createSheet(orgName);
+
+        Row titleRow = sheet.createRow(0);
+        titleRow.setHeightInPoints(45);
+        Cell titleCell = titleRow.createCell(0);
+        titleCell.setCellValue("Applications");
+        titleCell.setCellStyle(styles.get("title"));
+        sheet.addMergedRegion(CellRangeAddress.valueOf("$A$1:$E$1"));
+
+        int days = usage.isEmpty() ? 0 : usage.get(0).getAiCount().length;
+        Row headerRow = sheet.createRow(1);
+        headerRow.createCell(0).setCellValue("Application Name");
+        headerRow.createCell(1).setCellValue("Space Name");
+        headerRow.createCell(2).setCellValue("Metric");
+        for (int day = 0; day < days; day++) {
+            headerRow.createCell(3 + day).setCellValue(start.plusDays(day).toString());
+        }
+
+        int i = 2;
+        for (DailyAppUsage app : usage) {
+            addDailyRow(sheet.createRow(i++), app, "AI Count", app.getAiCount());
+            addDailyRow(sheet.createRow(i++), app, "Gb per AI", app.getGbPerAi());
+        }
+    }
+
+    /**
+     * Assembles the workbook from the spilled sheets into out
+     */
+    public void write(OutputStream out) throws IOException {
+        workbook.write(out);
+    }
+
+    SXSSFSheet getSheet(String orgName) {
+        return workbook.getSheet(orgName);
+    }
+
+    /**
+     * Deletes the temp files backing the sheets
+     */
+    @Override
+    public void close() throws IOException {
+        workbook.dispose();
+        workbook.close();
+    }
+
+    ///////////////////////////////////////
+
+    private static void addDailyRow(Row row, DailyAppUsage app, String metric, double[] values) {
+        row.createCell(0).setCellValue(app.getAppName());
+        row.createCell(1).setCellValue(app.getSpaceName());
+        row.createCell(2).setCellValue(metric);
+        for (int day = 0; day < values.length; day++) {
+            row.createCell(3 + day).setCellValue(values[day]);
+        }
+    }
+
+    private SXSSFSheet createSheet(String orgName) {
+        SXSSFSheet sheet = workbook.createSheet(orgName);
+
+        PrintSetup printSetup = sheet.getPrintSetup();
+        printSetup.setLandscape(true);
+        sheet.setFitToPage(true);
+        sheet.setHorizontallyCenter(true);
+        return sheet;
+    }
+
+    private static Map<String, CellStyle> createStyles(Workbook wb) {
+        Map<String, CellStyle> styles = new HashMap<>();
+        CellStyle style;
+        Font titleFont = wb.createFont();
+        titleFont.setFontHeightInPoints((short) 18);
+        titleFont.setBold(true);
+        style = wb.createCellStyle();
+        style.setAlignment(HorizontalAlignment.CENTER);
+        style.setVerticalAlignment(VerticalAlignment.CENTER);
+        style.setFont(titleFont);
+        styles.put("title", style);
+        return styles;
+    }
+
+}
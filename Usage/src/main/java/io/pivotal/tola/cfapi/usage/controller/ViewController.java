@@ -1,11 +1,12 @@
 package io.pivotal.tola.cfapi.usage.controller;
 
-import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
 import io.pivotal.tola.cfapi.usage.model.OrgUsage;
 import io.pivotal.tola.cfapi.usage.model.Organization;
 import io.pivotal.tola.cfapi.usage.model.SIUsage;
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness;
 import io.pivotal.tola.cfapi.usage.service.UsageService;
-import io.pivotal.tola.cfapi.usage.utils.DateUtils;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import io.pivotal.tola.cfapi.usage.utils.UsagePeriod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +21,7 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 @Controller
 @CrossOrigin(origins = "*")
@@ -27,10 +29,13 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ViewController {
 
     @Autowired
-    private FoundationsConfig config;
+    private UsageService usageService;
 
     @Autowired
-    private UsageService usageService;
+    private PeriodCalendar periods;
+
+    @Autowired
+    private FoundationReadiness readiness;
 
     private static final Logger LOG = LoggerFactory.getLogger(ViewController.class);
 
@@ -38,11 +43,18 @@ public class ViewController {
     @GetMapping("/foundations")
     public String foundations(Model model){
 
+        // Foundations still warming up, or that failed to, are listed without their usage
         final Map<String, String> foundationOrgMap = new ConcurrentHashMap<>();
-        config.getFoundations().stream().forEach(f -> {
-            foundationOrgMap.put(f.getName(), f.getName());
+        final Map<String, String> pendingFoundations = new LinkedHashMap<>();
+        readiness.getStatuses().forEach((foundation, status) -> {
+            if (status.getState() == FoundationReadiness.State.READY) {
+                foundationOrgMap.put(foundation, foundation);
+            } else {
+                pendingFoundations.put(foundation, status.getState().name().toLowerCase());
+            }
         });
         model.addAttribute("foundations", foundationOrgMap);
+        model.addAttribute("pendingFoundations", pendingFoundations);
 
         return "foundation";
     }
@@ -55,8 +67,8 @@ public class ViewController {
         foundationOrgMap.put(foundation, usageService.getOrgs(foundation));
         model.addAttribute("foundations", foundationOrgMap);
 
-        List<String> quarters = new DateUtils().getElapsedQuartersInCurrentYear();
-        model.addAttribute("quarters", quarters);
+        List<UsagePeriod> quarters = periods.getElapsedQuarters();
+        model.addAttribute("quarters", quarters.stream().map(UsagePeriod::getLabel).collect(Collectors.toList()));
 
         Map<String, Map<String, OrgUsage>> quarterlyOrgUsageMap = new LinkedHashMap<>();
 
@@ -68,12 +80,7 @@ public class ViewController {
 
                     Map<String, OrgUsage> quarterlyOrgUsage = new LinkedHashMap<>();
                     quarters.stream().forEach(qu -> {
-
-                        String[] d = qu.split("-Q");
-                        int year = Integer.parseInt(d[0]);
-                        int quarter = Integer.parseInt(d[1]);
-
-                        quarterlyOrgUsage.put(qu, usageService.appUsage(foundation, vi.getGuid(), year, quarter));
+                        quarterlyOrgUsage.put(qu.getLabel(), usageService.appUsage(foundation, vi.getGuid(), qu.getYear(), qu.getNumber()));
                     });
 
                     quarterlyOrgUsageMap.put(vi.getName(), quarterlyOrgUsage);
@@ -93,8 +100,8 @@ public class ViewController {
         foundationOrgMap.put(foundation, usageService.getOrgs(foundation));
         model.addAttribute("foundations", foundationOrgMap);
 
-        List<String> quarters = new DateUtils().getElapsedQuartersInCurrentYear();
-        model.addAttribute("quarters", quarters);
+        List<UsagePeriod> quarters = periods.getElapsedQuarters();
+        model.addAttribute("quarters", quarters.stream().map(UsagePeriod::getLabel).collect(Collectors.toList()));
 
         Map<String, Map<String, SIUsage>> quarterlyOrgUsageMap = new LinkedHashMap<>();
 
@@ -106,12 +113,7 @@ public class ViewController {
 
                     Map<String, SIUsage> quarterlyOrgUsage = new LinkedHashMap<>();
                     quarters.stream().forEach(qu -> {
-
-                        String[] d = qu.split("-Q");
-                        int year = Integer.parseInt(d[0]);
-                        int quarter = Integer.parseInt(d[1]);
-
-                        quarterlyOrgUsage.put(qu, usageService.svcUsage(foundation, vi.getGuid(), year, quarter));
+                        quarterlyOrgUsage.put(qu.getLabel(), usageService.svcUsage(foundation, vi.getGuid(), qu.getYear(), qu.getNumber()));
                     });
 
                     quarterlyOrgUsageMap.put(vi.getName(), quarterlyOrgUsage);
@@ -131,11 +133,9 @@ public class ViewController {
         model.addAttribute("orgName", orgName);
         model.addAttribute("foundation", foundation);
 
-        String[] d = yearQuarter.split("-Q");
-        int year = Integer.parseInt(d[0]);
-        int quarter = Integer.parseInt(d[1]);
+        UsagePeriod quarter = periods.quarter(yearQuarter);
 
-        model.addAttribute("orgAppUsage", usageService.appUsage(foundation,orgGuid, year, quarter));
+        model.addAttribute("orgAppUsage", usageService.appUsage(foundation,orgGuid, quarter.getYear(), quarter.getNumber()));
         model.addAttribute("yearQuarter", yearQuarter);
 
         return "orgappusage";
@@ -147,11 +147,9 @@ public class ViewController {
         model.addAttribute("orgName", orgName);
         model.addAttribute("foundation", foundation);
 
-        String[] d = yearQuarter.split("-Q");
-        int year = Integer.parseInt(d[0]);
-        int quarter = Integer.parseInt(d[1]);
+        UsagePeriod quarter = periods.quarter(yearQuarter);
 
-        model.addAttribute("orgSvcUsage", usageService.svcUsage(foundation,orgGuid, year, quarter));
+        model.addAttribute("orgSvcUsage", usageService.svcUsage(foundation,orgGuid, quarter.getYear(), quarter.getNumber()));
         model.addAttribute("yearQuarter", yearQuarter);
 
         return "orgsvcusage";
@@ -0,0 +1,218 @@
+package io.pivotal.tola.cfapi.usage.ingest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import io.pivotal.tola.cfapi.usage.model.AUsage;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.model.SpaceUsage;
+import io.pivotal.tola.cfapi.usage.utils.DoubleSum;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
+
+/**
+ * AppUsageAccumulator - single pass aggregation kernel for app usage. Records are folded into primitive per space
+ * and per app totals as they are read, and SpaceUsage, AUsage and OrgUsage are built from those totals in one go.
+ * <p>
+ * Totals of consecutive periods can be merged, and serialize to JSON so partial periods can be stored.
+ */
+@JsonAutoDetect(fieldVisibility = Visibility.ANY, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE)
+public class AppUsageAccumulator implements Consumer<AppUsageRecord> {
+
+    private Map<String, SpaceTotals> spaces = new HashMap<>();
+
+    @Override
+    public void accept(AppUsageRecord record) {
+        SpaceTotals space = spaces.get(record.getSpaceGuid());
+        if (space == null) {
+            space = new SpaceTotals(record.getSpaceGuid(), record.getSpaceName());
+            spaces.put(space.spaceGuid, space);
+        }
+        space.durationInSeconds.add(record.getDurationInSeconds());
+
+        AppTotals app = space.apps.get(record.getAppName());
+        if (app == null) {
+            app = new AppTotals(record.getAppGuid(), record.getAppName());
+            space.apps.put(app.appName, app);
+        }
+        ConfigTotals config = app.config(record.getAppGuid(), record.getInstanceCount(), record.getMemoryInMbPerInstance());
+        config.records++;
+        config.memoryInMb += record.getMemoryInMbPerInstance();
+        app.durationInSeconds.add(record.getDurationInSeconds());
+    }
+
+    /**
+     * Adds the totals of a later period, e.g. the next day.
+     * <p>
+     * The app-usage service reports a period with one record per app guid, instance count and memory, the records of
+     * the same configuration in both periods are one record of the whole period and their usage adds up.
+     */
+    public void merge(AppUsageAccumulator other) {
+        other.spaces.values().forEach(o -> {
+            SpaceTotals space = spaces.get(o.spaceGuid);
+            if (space == null) {
+                space = new SpaceTotals(o.spaceGuid, o.spaceName);
+                spaces.put(space.spaceGuid, space);
+            }
+            space.durationInSeconds.add(o.durationInSeconds);
+
+            for (AppTotals oa : o.apps.values()) {
+                AppTotals app = space.apps.get(oa.appName);
+                if (app == null) {
+                    app = new AppTotals(oa.appGuid, oa.appName);
+                    space.apps.put(app.appName, app);
+                }
+                for (ConfigTotals oc : oa.configs) {
+                    ConfigTotals config = app.config(oc.appGuid, oc.instanceCount, oc.memoryInMbPerInstance);
+                    if (oc.records > config.records) {
+                        config.records = oc.records;
+                        config.memoryInMb = oc.memoryInMb;
+                    }
+                }
+                app.durationInSeconds.add(oa.durationInSeconds);
+            }
+        });
+    }
+
+    /**
+     * Passes the totals of every app, with its memory at the average memory per instance the usage reports show
+     */
+    public void forEachApp(AppTotalsConsumer consumer) {
+        spaces.values().forEach(s -> s.apps.values().forEach(ap -> {
+            long records = 0;
+            long memoryInMb = 0;
+            for (ConfigTotals config : ap.configs) {
+                records += config.records;
+                memoryInMb += config.memoryInMb;
+            }
+            double instanceSeconds = ap.durationInSeconds.sum();
+            consumer.accept(s.spaceGuid, s.spaceName, ap.appGuid, ap.appName, instanceSeconds,
+                    instanceSeconds * memoryInMb / records);
+        }));
+    }
+
+    /**
+     * @param days -- number of days in the requested period
+     */
+    public OrgUsage toOrgUsage(String orgGuid, int year, int quarter, long days) {
+
+        long period = UsageUtils.periodInSeconds(days);
+
+        Map<String, SpaceUsage> spaceUsageMap = new HashMap<>();
+        Map<String, AUsage> aUsageMap = new HashMap<>();
+        spaces.values().forEach(s -> {
+
+            // Accumulators restored from JSON hold their own copies of the identifiers
+            String spaceGuid = Identifiers.intern(s.spaceGuid);
+            String spaceName = Identifiers.intern(s.spaceName);
+
+            double spaceMbPerAis = 0.0;
+            for (AppTotals ap : s.apps.values()) {
+                long records = 0;
+                long memoryInMb = 0;
+                for (ConfigTotals config : ap.configs) {
+                    records += config.records;
+                    memoryInMb += config.memoryInMb;
+                }
+                AUsage a = AUsage.builder()
+                        .spaceGuid(spaceGuid)
+                        .spaceName(spaceName)
+                        .appGuid(Identifiers.intern(ap.appGuid))
+                        .appName(Identifiers.intern(ap.appName))
+                        .totalMbPerAis(memoryInMb / records)
+                        .aiDurationInSecs(ap.durationInSeconds.sum() / period)
+                        .build();
+
+                // An app counts at least one instance in the memory of its space
+                spaceMbPerAis += a.getTotalMbPerAis() * Math.max(a.getAiDurationInSecs(), 1.0);
+
+                aUsageMap.put(Identifiers.intern(ap.appName + "-" + spaceName), a);
+            }
+            spaceUsageMap.put(spaceGuid, SpaceUsage.builder()
+                    .spaceGuid(spaceGuid)
+                    .spaceName(spaceName)
+                    .totalApps(s.apps.size())
+                    .totalMbPerAis(spaceMbPerAis)
+                    .aiDurationInSecs(s.durationInSeconds.sum() / period)
+                    .build());
+        });
+
+        return OrgUsage.builder().orgGuid(Identifiers.intern(orgGuid)).year(year).quarter(quarter)
+                .spaceUsage(spaceUsageMap).aUsage(aUsageMap).build();
+    }
+
+    public interface AppTotalsConsumer {
+
+        /**
+         * @param instanceSeconds -- seconds of all instances of the app
+         * @param mbSeconds       -- memory of the instances in MB times their seconds
+         */
+        void accept(String spaceGuid, String spaceName, String appGuid, String appName, double instanceSeconds, double mbSeconds);
+    }
+
+    @JsonAutoDetect(fieldVisibility = Visibility.ANY)
+    private static class SpaceTotals {
+        private String spaceGuid;
+        private String spaceName;
+        private Map<String, AppTotals> apps = new HashMap<>();
+        private DoubleSum durationInSeconds = new DoubleSum();
+
+        SpaceTotals() {
+        }
+
+        SpaceTotals(String spaceGuid, String spaceName) {
+            this.spaceGuid = spaceGuid;
+            this.spaceName = spaceName;
+        }
+    }
+
+    @JsonAutoDetect(fieldVisibility = Visibility.ANY)
+    private static class AppTotals {
+        private String appGuid;
+        private String appName;
+        private List<ConfigTotals> configs = new ArrayList<>(2);
+        private DoubleSum durationInSeconds = new DoubleSum();
+
+        AppTotals() {
+        }
+
+        AppTotals(String appGuid, String appName) {
+            this.appGuid = appGuid;
+            this.appName = appName;
+        }
+
+        /**
+         * @return totals of the configuration, an app has only a few so they are searched in order
+         */
+        ConfigTotals config(String appGuid, int instanceCount, int memoryInMbPerInstance) {
+            for (ConfigTotals config : configs) {
+                if (config.instanceCount == instanceCount && config.memoryInMbPerInstance == memoryInMbPerInstance
+                        && Objects.equals(config.appGuid, appGuid)) {
+                    return config;
+                }
+            }
+            ConfigTotals config = new ConfigTotals();
+            config.appGuid = appGuid;
+            config.instanceCount = instanceCount;
+            config.memoryInMbPerInstance = memoryInMbPerInstance;
+            configs.add(config);
+            return config;
+        }
+    }
+
+    @JsonAutoDetect(fieldVisibility = Visibility.ANY)
+    private static class ConfigTotals {
+        private String appGuid;
+        private int instanceCount;
+        private int memoryInMbPerInstance;
+        private long records;
+        private long memoryInMb;
+    }
+
+}
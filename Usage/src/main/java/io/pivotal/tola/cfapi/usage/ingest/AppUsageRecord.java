@@ -0,0 +1,29 @@
+package io.pivotal.tola.cfapi.usage.ingest;
+
+import lombok.Data;
+
+/**
+ * AppUsageRecord - a single element of an app_usages response. Readers reuse one instance for every record.
+ */
+@Data
+public class AppUsageRecord {
+
+    private String spaceGuid;
+    private String spaceName;
+    private String appName;
+    private String appGuid;
+    private int instanceCount;
+    private int memoryInMbPerInstance;
+    private double durationInSeconds;
+
+    void clear() {
+        spaceGuid = null;
+        spaceName = null;
+        appName = null;
+        appGuid = null;
+        instanceCount = 0;
+        memoryInMbPerInstance = 0;
+        durationInSeconds = 0.0;
+    }
+
+}
@@ -0,0 +1,61 @@
+package io.pivotal.tola.cfapi.usage.ingest;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+
+/**
+ * AppUsageRecordReader - streams the app_usages array of a response into a record consumer
+ */
+public class AppUsageRecordReader extends UsageRecordReader {
+
+    private final AppUsageRecord record = new AppUsageRecord();
+    private final Consumer<AppUsageRecord> consumer;
+
+    public AppUsageRecordReader(Consumer<AppUsageRecord> consumer) {
+        super("app_usages");
+        this.consumer = consumer;
+    }
+
+    @Override
+    protected void onRecordStart() {
+        record.clear();
+    }
+
+    @Override
+    protected void onValue(String field, JsonParser parser) throws IOException {
+        switch (field) {
+            case "space_guid":
+                record.setSpaceGuid(Identifiers.intern(parser));
+                break;
+            case "space_name":
+                record.setSpaceName(Identifiers.intern(parser));
+                break;
+            case "app_name":
+                record.setAppName(Identifiers.intern(parser));
+                break;
+            case "app_guid":
+                record.setAppGuid(Identifiers.intern(parser));
+                break;
+            case "instance_count":
+                record.setInstanceCount(parser.getValueAsInt());
+                break;
+            case "memory_in_mb_per_instance":
+                record.setMemoryInMbPerInstance(parser.getValueAsInt());
+                break;
+            case "duration_in_seconds":
+                record.setDurationInSeconds(parser.getValueAsDouble());
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected void onRecordEnd() {
+        consumer.accept(record);
+    }
+
+}
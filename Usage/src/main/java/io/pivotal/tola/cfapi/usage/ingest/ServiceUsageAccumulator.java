@@ -0,0 +1,191 @@
+package io.pivotal.tola.cfapi.usage.ingest;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.pivotal.tola.cfapi.usage.model.SISpaceUsage;
+import io.pivotal.tola.cfapi.usage.model.SIUsage;
+import io.pivotal.tola.cfapi.usage.model.ServiceInstanceUsage;
+import io.pivotal.tola.cfapi.usage.utils.DoubleSum;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
+
+/**
+ * ServiceUsageAccumulator - single pass aggregation kernel for service usage. Records of the included services are
+ * folded into per space and per service instance totals as they are read, and SISpaceUsage, ServiceInstanceUsage
+ * and SIUsage are built from those totals in one go.
+ * <p>
+ * Totals of consecutive periods can be merged, and serialize to JSON so partial periods can be stored.
+ */
+@JsonAutoDetect(fieldVisibility = Visibility.ANY, getterVisibility = Visibility.NONE, isGetterVisibility = Visibility.NONE)
+public class ServiceUsageAccumulator implements Consumer<ServiceUsageRecord> {
+
+    @JsonIgnore
+    private final Set<String> includedServices;
+    private Map<String, SpaceTotals> spaces = new HashMap<>();
+    private Map<String, InstanceTotals> instances = new LinkedHashMap<>();
+
+    public ServiceUsageAccumulator(Collection<String> includedServices) {
+        this.includedServices = new HashSet<>(includedServices);
+    }
+
+    private ServiceUsageAccumulator() {
+        this(Collections.emptySet());
+    }
+
+    @Override
+    public void accept(ServiceUsageRecord record) {
+        if (!includedServices.contains(record.getServiceName())) {
+            return;
+        }
+
+        SpaceTotals space = spaces.get(record.getSpaceGuid());
+        if (space == null) {
+            space = new SpaceTotals(record.getSpaceGuid(), record.getSpaceName());
+            spaces.put(space.spaceGuid, space);
+        }
+        space.durationInSeconds.add(record.getDurationInSeconds());
+
+        InstanceTotals instance = instances.get(record.getServiceInstanceGuid());
+        if (instance == null) {
+            instance = new InstanceTotals();
+            instances.put(record.getServiceInstanceGuid(), instance);
+        }
+        instance.spaceGuid = record.getSpaceGuid();
+        instance.spaceName = record.getSpaceName();
+        instance.serviceName = record.getServiceName();
+        instance.serviceInstanceName = record.getServiceInstanceName();
+
+        String planGuid = record.getServicePlanGuid() == null ? "" : record.getServicePlanGuid();
+        PlanTotals plan = instance.plans.get(planGuid);
+        if (plan == null) {
+            plan = new PlanTotals();
+            instance.plans.put(planGuid, plan);
+        }
+        plan.records++;
+        // The last record of a service instance describes it
+        plan.durationInSeconds = record.getDurationInSeconds();
+        instance.lastPlan = planGuid;
+    }
+
+    /**
+     * Adds the totals of the following period, e.g. the next day.
+     * <p>
+     * The app-usage service reports a period with one record per service instance and plan, the records of the same
+     * instance and plan in both periods are one record of the whole period and their usage adds up.
+     */
+    public void merge(ServiceUsageAccumulator other) {
+        other.spaces.values().forEach(o -> {
+            SpaceTotals space = spaces.get(o.spaceGuid);
+            if (space == null) {
+                space = new SpaceTotals(o.spaceGuid, o.spaceName);
+                spaces.put(space.spaceGuid, space);
+            }
+            space.durationInSeconds.add(o.durationInSeconds);
+        });
+
+        other.instances.forEach((guid, o) -> {
+            InstanceTotals instance = instances.get(guid);
+            if (instance == null) {
+                instance = new InstanceTotals();
+                instances.put(guid, instance);
+            }
+            instance.spaceGuid = o.spaceGuid;
+            instance.spaceName = o.spaceName;
+            instance.serviceName = o.serviceName;
+            instance.serviceInstanceName = o.serviceInstanceName;
+            for (Map.Entry<String, PlanTotals> op : o.plans.entrySet()) {
+                PlanTotals plan = instance.plans.get(op.getKey());
+                if (plan == null) {
+                    plan = new PlanTotals();
+                    instance.plans.put(op.getKey(), plan);
+                }
+                plan.records = Math.max(plan.records, op.getValue().records);
+                plan.durationInSeconds += op.getValue().durationInSeconds;
+            }
+            instance.lastPlan = o.lastPlan;
+        });
+    }
+
+    /**
+     * @param days -- number of days in the requested period
+     */
+    public SIUsage toSIUsage(String orgGuid, int year, int quarter, long days) {
+
+        long period = UsageUtils.periodInSeconds(days);
+
+        // Service instances and their plan records per space
+        Map<String, long[]> spaceCounts = new HashMap<>();
+        Map<String, ServiceInstanceUsage> serviceInstanceUsageMap = new HashMap<>();
+        instances.forEach((guid, i) -> {
+            long[] counts = spaceCounts.computeIfAbsent(i.spaceGuid, s -> new long[2]);
+            counts[0]++;
+            counts[1] += i.plans.values().stream().mapToLong(p -> p.records).sum();
+
+            serviceInstanceUsageMap.put(Identifiers.intern(guid), ServiceInstanceUsage.builder()
+                    .spaceName(Identifiers.intern(i.spaceName))
+                    // Unlike the space totals, an empty period is not rounded up to a day here
+                    .durationInSecs(i.plans.get(i.lastPlan).durationInSeconds / (86400 * days))
+                    .serviceInstanceName(Identifiers.intern(i.serviceInstanceName))
+                    .serviceName(Identifiers.intern(i.serviceName))
+                    .build());
+        });
+
+        Map<String, SISpaceUsage> siSpaceUsageMap = new HashMap<>();
+        spaces.values().forEach(s -> {
+            long[] counts = spaceCounts.getOrDefault(s.spaceGuid, new long[2]);
+            // Accumulators restored from JSON hold their own copies of the identifiers
+            siSpaceUsageMap.put(Identifiers.intern(s.spaceGuid), SISpaceUsage.builder()
+                    .spaceGuid(Identifiers.intern(s.spaceGuid))
+                    .spaceName(Identifiers.intern(s.spaceName))
+                    .totalSvcs(counts[0])
+                    .totalSis(counts[1])
+                    .siDurationInSecs(s.durationInSeconds.sum() / period)
+                    .build());
+        });
+
+        return SIUsage.builder().orgGuid(Identifiers.intern(orgGuid)).year(year).quarter(quarter)
+                .siSpaceUsage(siSpaceUsageMap).serviceInstanceUsage(serviceInstanceUsageMap).build();
+    }
+
+    @JsonAutoDetect(fieldVisibility = Visibility.ANY)
+    private static class SpaceTotals {
+        private String spaceGuid;
+        private String spaceName;
+        private DoubleSum durationInSeconds = new DoubleSum();
+
+        SpaceTotals() {
+        }
+
+        SpaceTotals(String spaceGuid, String spaceName) {
+            this.spaceGuid = spaceGuid;
+            this.spaceName = spaceName;
+        }
+    }
+
+    @JsonAutoDetect(fieldVisibility = Visibility.ANY)
+    private static class InstanceTotals {
+        private String spaceGuid;
+        private String spaceName;
+        private String serviceName;
+        private String serviceInstanceName;
+        private Map<String, PlanTotals> plans = new HashMap<>(2);
+        private String lastPlan;
+    }
+
+    @JsonAutoDetect(fieldVisibility = Visibility.ANY)
+    private static class PlanTotals {
+        private long records;
+        private double durationInSeconds;
+    }
+
+}
@@ -0,0 +1,29 @@
+package io.pivotal.tola.cfapi.usage.ingest;
+
+import lombok.Data;
+
+/**
+ * ServiceUsageRecord - a single element of a service_usages response. Readers reuse one instance for every record.
+ */
+@Data
+public class ServiceUsageRecord {
+
+    private String spaceGuid;
+    private String spaceName;
+    private String serviceInstanceGuid;
+    private String serviceInstanceName;
+    private String serviceName;
+    private String servicePlanGuid;
+    private double durationInSeconds;
+
+    void clear() {
+        spaceGuid = null;
+        spaceName = null;
+        serviceInstanceGuid = null;
+        serviceInstanceName = null;
+        serviceName = null;
+        servicePlanGuid = null;
+        durationInSeconds = 0.0;
+    }
+
+}
@@ -0,0 +1,61 @@
+package io.pivotal.tola.cfapi.usage.ingest;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonParser;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+
+/**
+ * ServiceUsageRecordReader - streams the service_usages array of a response into a record consumer
+ */
+public class ServiceUsageRecordReader extends UsageRecordReader {
+
+    private final ServiceUsageRecord record = new ServiceUsageRecord();
+    private final Consumer<ServiceUsageRecord> consumer;
+
+    public ServiceUsageRecordReader(Consumer<ServiceUsageRecord> consumer) {
+        super("service_usages");
+        this.consumer = consumer;
+    }
+
+    @Override
+    protected void onRecordStart() {
+        record.clear();
+    }
+
+    @Override
+    protected void onValue(String field, JsonParser parser) throws IOException {
+        switch (field) {
+            case "space_guid":
+                record.setSpaceGuid(Identifiers.intern(parser));
+                break;
+            case "space_name":
+                record.setSpaceName(Identifiers.intern(parser));
+                break;
+            case "service_instance_guid":
+                record.setServiceInstanceGuid(Identifiers.intern(parser));
+                break;
+            case "service_instance_name":
+                record.setServiceInstanceName(Identifiers.intern(parser));
+                break;
+            case "service_name":
+                record.setServiceName(Identifiers.intern(parser));
+                break;
+            case "service_plan_guid":
+                record.setServicePlanGuid(Identifiers.intern(parser));
+                break;
+            case "duration_in_seconds":
+                record.setDurationInSeconds(parser.getValueAsDouble());
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    protected void onRecordEnd() {
+        consumer.accept(record);
+    }
+
+}
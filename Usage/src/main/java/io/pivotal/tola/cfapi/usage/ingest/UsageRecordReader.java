@@ -0,0 +1,111 @@
+package io.pivotal.tola.cfapi.usage.ingest;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+
+/**
+ * UsageRecordReader - incrementally parses an app-usage service response as its bytes arrive and hands every
+ * element of the records array to the subclass one field at a time, without building the response in memory.
+ */
+public abstract class UsageRecordReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final int ARRAY_DEPTH = 2;
+    private static final int RECORD_DEPTH = 3;
+
+    private final String recordsField;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private int depth;
+    private boolean inRecords;
+    private String field;
+    private long records;
+
+    protected UsageRecordReader(String recordsField) {
+        this.recordsField = recordsField;
+        try {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Parses the next chunk of the response. The chunk is fully consumed before this method returns.
+     */
+    public void feed(byte[] chunk) throws IOException {
+        feeder.feedInput(chunk, 0, chunk.length);
+        drain();
+    }
+
+    /**
+     * Signals the end of the response and parses whatever is left.
+     */
+    public void endOfInput() throws IOException {
+        feeder.endOfInput();
+        drain();
+        parser.close();
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    protected abstract void onRecordStart();
+
+    protected abstract void onValue(String field, JsonParser parser) throws IOException;
+
+    protected abstract void onRecordEnd();
+
+    ///////////////////////////////////////
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            switch (token) {
+                case START_OBJECT:
+                    depth++;
+                    if (inRecords && depth == RECORD_DEPTH) {
+                        onRecordStart();
+                    }
+                    break;
+                case START_ARRAY:
+                    depth++;
+                    if (depth == ARRAY_DEPTH && recordsField.equals(field)) {
+                        inRecords = true;
+                    }
+                    break;
+                case END_OBJECT:
+                    if (inRecords && depth == RECORD_DEPTH) {
+                        records++;
+                        onRecordEnd();
+                    }
+                    depth--;
+                    break;
+                case END_ARRAY:
+                    if (inRecords && depth == ARRAY_DEPTH) {
+                        inRecords = false;
+                    }
+                    depth--;
+                    break;
+                case FIELD_NAME:
+                    field = parser.getCurrentName();
+                    break;
+                default:
+                    // Nested values of a record are skipped, only its own scalar fields are of interest
+                    if (inRecords && depth == RECORD_DEPTH) {
+                        onValue(field, parser);
+                    }
+                    break;
+            }
+        }
+    }
+
+}
@@ -1,36 +1,50 @@
 package io.pivotal.tola.cfapi.usage.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
 import lombok.Builder;
-import lombok.Data;
-
-import java.text.DecimalFormat;
-
-@Data
-@Builder
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@EqualsAndHashCode
+@ToString
+// The formatted totals are written for the views, and computed again when read
+@JsonIgnoreProperties(value = {"totalGbPerAis", "avgAICount"}, allowGetters = true)
 public class AUsage {
 
-    private String appGuid;
-    private String appName;
-    private String spaceGuid;
-    private String spaceName;
-
-    private double totalMbPerAis;
-    private String totalGbPerAis;
-    private double aiDurationInSecs;
-    private String avgAICount;
-
-    public String getTotalGbPerAis(){
-
-        DecimalFormat df = new DecimalFormat("#.###");
-        return df.format( (double) this.getTotalMbPerAis() / 1024);
-
-    }
-
-    public String getAvgAICount(){
-
-        DecimalFormat df = new DecimalFormat("#.###");
-        return df.format(this.getAiDurationInSecs());
-
+    private final String appGuid;
+    private final String appName;
+    private final String spaceGuid;
+    private final String spaceName;
+
+    private final double totalMbPerAis;
+    private final double aiDurationInSecs;
+    private final String totalGbPerAis;
+    private final String avgAICount;
+
+    @Builder
+    @JsonCreator
+    private AUsage(@JsonProperty("appGuid") @JsonDeserialize(using = Identifiers.Deserializer.class) String appGuid,
+                   @JsonProperty("appName") @JsonDeserialize(using = Identifiers.Deserializer.class) String appName,
+                   @JsonProperty("spaceGuid") @JsonDeserialize(using = Identifiers.Deserializer.class) String spaceGuid,
+                   @JsonProperty("spaceName") @JsonDeserialize(using = Identifiers.Deserializer.class) String spaceName,
+                   @JsonProperty("totalMbPerAis") double totalMbPerAis,
+                   @JsonProperty("aiDurationInSecs") double aiDurationInSecs) {
+        this.appGuid = appGuid;
+        this.appName = appName;
+        this.spaceGuid = spaceGuid;
+        this.spaceName = spaceName;
+        this.totalMbPerAis = totalMbPerAis;
+        this.aiDurationInSecs = aiDurationInSecs;
+        // Formatted once, views and reports only read them
+        this.totalGbPerAis = UsageUtils.format(totalMbPerAis / 1024);
+        this.avgAICount = UsageUtils.format(aiDurationInSecs);
     }
 
 }
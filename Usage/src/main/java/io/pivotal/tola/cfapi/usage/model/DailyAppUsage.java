@@ -0,0 +1,22 @@
+package io.pivotal.tola.cfapi.usage.model;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * DailyAppUsage - usage of an app on each day of a date range, the first value being the first day's
+ */
+@Value
+@Builder
+public class DailyAppUsage {
+
+    private String appGuid;
+    private String appName;
+    private String spaceName;
+
+    // Average number of running instances
+    private double[] aiCount;
+    // Average memory per instance, 0 on days without instances
+    private double[] gbPerAi;
+
+}
@@ -1,72 +1,67 @@
 package io.pivotal.tola.cfapi.usage.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
 import lombok.Builder;
-import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 
-import java.text.DecimalFormat;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-
-@Data
-@Builder
+@Getter
+@EqualsAndHashCode
+@ToString
 public class OrgUsage {
 
-    private String orgGuid;
-    private int year;
-    private int quarter;
+    private final String orgGuid;
+    private final int year;
+    private final int quarter;
 
+    // Totals of the spaces
     private long totalApps;
     private double totalMbPerAis;
     private String totalGbPerAis;
     private double aiDurationInSecs;
     private String avgAICount;
 
-    @Builder.Default
-    private Map<String, SpaceUsage> spaceUsage = new HashMap<>();
-
-    @Builder.Default
-    private Map<String, AUsage> aUsage = new HashMap<>();
-
-    public long getTotalApps() {
-
-        long count = 0L;
-        if (spaceUsage != null && spaceUsage.size() > 0) {
-            count = spaceUsage.values().stream().map(o -> o.getTotalApps()).mapToLong(Long::longValue).sum();
-        }
-        return count;
+    private final Map<String, SpaceUsage> spaceUsage;
+
+    // Named to match the ausage property of the generated accessors
+    @JsonProperty("ausage")
+    private final Map<String, AUsage> aUsage;
+
+    @Builder
+    @JsonCreator
+    private OrgUsage(@JsonProperty("orgGuid") @JsonDeserialize(using = Identifiers.Deserializer.class) String orgGuid,
+                     @JsonProperty("year") int year,
+                     @JsonProperty("quarter") int quarter,
+                     @JsonProperty("spaceUsage") @JsonDeserialize(keyUsing = Identifiers.KeyInterner.class) Map<String, SpaceUsage> spaceUsage,
+                     @JsonProperty("ausage") @JsonDeserialize(keyUsing = Identifiers.KeyInterner.class) Map<String, AUsage> aUsage) {
+        this.orgGuid = orgGuid;
+        this.year = year;
+        this.quarter = quarter;
+        this.spaceUsage = Collections.unmodifiableMap(spaceUsage == null ? new HashMap<>() : spaceUsage);
+        this.aUsage = Collections.unmodifiableMap(aUsage == null ? new HashMap<>() : aUsage);
+        // Built complete, the usage doesn't change after
+        computeTotals();
     }
 
-    public double getTotalMbPerAis() {
-
-        double count = 0.0;
-        if (spaceUsage != null && spaceUsage.size() > 0) {
-            count = spaceUsage.values().stream().map(o -> o.getTotalMbPerAis()).mapToDouble(Double::doubleValue).sum();
-        }
-        return count;
-    }
-
-    public double getAiDurationInSecs() {
-
-        double count = 0L;
-        if (spaceUsage != null && spaceUsage.size() > 0) {
-            count = spaceUsage.values().stream().map(o -> o.getAiDurationInSecs()).mapToDouble(Double::doubleValue).sum();
-        }
-        return count;
-    }
-
-    public String getAvgAICount(){
-
-        DecimalFormat df = new DecimalFormat("#.###");
-        return df.format(this.getAiDurationInSecs());
-
-    }
-
-    public String getTotalGbPerAis(){
-
-        DecimalFormat df = new DecimalFormat("#.###");
-        return df.format( (double) this.getTotalMbPerAis() / 1024);
+    /**
+     * Totals and formats the usage once, views and reports only read the results
+     */
+    private void computeTotals() {
 
+        totalApps = spaceUsage.values().stream().mapToLong(SpaceUsage::getTotalApps).sum();
+        totalMbPerAis = spaceUsage.values().stream().mapToDouble(SpaceUsage::getTotalMbPerAis).sum();
+        aiDurationInSecs = spaceUsage.values().stream().mapToDouble(SpaceUsage::getAiDurationInSecs).sum();
+        totalGbPerAis = UsageUtils.format(totalMbPerAis / 1024);
+        avgAICount = UsageUtils.format(aiDurationInSecs);
     }
 
-}
\ No newline at end of file
+}
@@ -1,27 +1,45 @@
 package io.pivotal.tola.cfapi.usage.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
 import lombok.Builder;
-import lombok.Data;
-
-import java.text.DecimalFormat;
-
-@Data
-@Builder
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@EqualsAndHashCode
+@ToString
+// The formatted totals are written for the views, and computed again when read
+@JsonIgnoreProperties(value = {"avgSICount"}, allowGetters = true)
 public class SISpaceUsage {
 
-    private String spaceGuid;
-    private String spaceName;
-
-    private long totalSvcs;
-    private long totalSis;
-    private double siDurationInSecs;
-    private String avgSICount;
-
-    public String getAvgSICount(){
-
-        DecimalFormat df = new DecimalFormat("#.###");
-        return df.format(this.getSiDurationInSecs());
-
+    private final String spaceGuid;
+    private final String spaceName;
+
+    private final long totalSvcs;
+    private final long totalSis;
+    private final double siDurationInSecs;
+    private final String avgSICount;
+
+    @Builder
+    @JsonCreator
+    private SISpaceUsage(@JsonProperty("spaceGuid") @JsonDeserialize(using = Identifiers.Deserializer.class) String spaceGuid,
+                         @JsonProperty("spaceName") @JsonDeserialize(using = Identifiers.Deserializer.class) String spaceName,
+                         @JsonProperty("totalSvcs") long totalSvcs,
+                         @JsonProperty("totalSis") long totalSis,
+                         @JsonProperty("siDurationInSecs") double siDurationInSecs) {
+        this.spaceGuid = spaceGuid;
+        this.spaceName = spaceName;
+        this.totalSvcs = totalSvcs;
+        this.totalSis = totalSis;
+        this.siDurationInSecs = siDurationInSecs;
+        // Formatted once, views and reports only read them
+        this.avgSICount = UsageUtils.format(siDurationInSecs);
     }
 
 }
@@ -1,64 +1,63 @@
 package io.pivotal.tola.cfapi.usage.model;
 
-import lombok.Builder; 
-import lombok.Data;
-
-import java.text.DecimalFormat;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
-@Data
-@Builder
+@Getter
+@EqualsAndHashCode
+@ToString
 public class SIUsage {
 
-    private String orgGuid;
-    private int year;
-    private int quarter;
+    private final String orgGuid;
+    private final int year;
+    private final int quarter;
 
+    // Totals of the spaces
     private long totalSvcs;
     private long totalSis;
     private double siDurationInSecs;
     private String avgSICount;
 
-    @Builder.Default
-    private Map<String, SISpaceUsage> siSpaceUsage = new HashMap<>();
-
-    @Builder.Default
-    private Map<String, ServiceInstanceUsage> serviceInstanceUsage = new HashMap<>();
-
-    public long getTotalSvcs(){
-
-        long count = 0L;
-        if(siSpaceUsage != null && siSpaceUsage.size() > 0){
-            count = siSpaceUsage.values().stream().map(o-> o.getTotalSvcs()).mapToLong(Long::intValue).sum();
-        }
-        return count;
-    }
-
-    public long getTotalSis(){
-
-        long count = 0L;
-        if(siSpaceUsage != null && siSpaceUsage.size() > 0){
-            count = siSpaceUsage.values().stream().map(o-> o.getTotalSis()).mapToLong(Long::intValue).sum();
-        }
-        return count;
-    }
-
-    public double getSiDurationInSecs(){
-
-        double count = 0.0;
-        if(siSpaceUsage != null && siSpaceUsage.size() > 0){
-            count = siSpaceUsage.values().stream().map(o-> o.getSiDurationInSecs()).mapToDouble(Double::doubleValue).sum();
-        }
-        return count;
+    private final Map<String, SISpaceUsage> siSpaceUsage;
+
+    private final Map<String, ServiceInstanceUsage> serviceInstanceUsage;
+
+    @Builder
+    @JsonCreator
+    private SIUsage(@JsonProperty("orgGuid") @JsonDeserialize(using = Identifiers.Deserializer.class) String orgGuid,
+                    @JsonProperty("year") int year,
+                    @JsonProperty("quarter") int quarter,
+                    @JsonProperty("siSpaceUsage") @JsonDeserialize(keyUsing = Identifiers.KeyInterner.class) Map<String, SISpaceUsage> siSpaceUsage,
+                    @JsonProperty("serviceInstanceUsage") @JsonDeserialize(keyUsing = Identifiers.KeyInterner.class) Map<String, ServiceInstanceUsage> serviceInstanceUsage) {
+        this.orgGuid = orgGuid;
+        this.year = year;
+        this.quarter = quarter;
+        this.siSpaceUsage = Collections.unmodifiableMap(siSpaceUsage == null ? new HashMap<>() : siSpaceUsage);
+        this.serviceInstanceUsage = Collections.unmodifiableMap(serviceInstanceUsage == null ? new HashMap<>() : serviceInstanceUsage);
+        // Built complete, the usage doesn't change after
+        computeTotals();
     }
 
-    public String getAvgSICount(){
-
-        DecimalFormat df = new DecimalFormat("#.###");
-        return df.format(this.getSiDurationInSecs());
+    /**
+     * Totals and formats the usage once, views and reports only read the results
+     */
+    private void computeTotals() {
 
+        totalSvcs = siSpaceUsage.values().stream().mapToLong(SISpaceUsage::getTotalSvcs).sum();
+        totalSis = siSpaceUsage.values().stream().mapToLong(SISpaceUsage::getTotalSis).sum();
+        siDurationInSecs = siSpaceUsage.values().stream().mapToDouble(SISpaceUsage::getSiDurationInSecs).sum();
+        avgSICount = UsageUtils.format(siDurationInSecs);
     }
 
-
-}
\ No newline at end of file
+}
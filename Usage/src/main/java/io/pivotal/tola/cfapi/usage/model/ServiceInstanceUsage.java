@@ -1,24 +1,42 @@
 package io.pivotal.tola.cfapi.usage.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
 import lombok.Builder;
-import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 
-import java.text.DecimalFormat;
-
-@Data
-@Builder
+@Getter
+@EqualsAndHashCode
+@ToString
+// The formatted totals are written for the views, and computed again when read
+@JsonIgnoreProperties(value = {"avgSICount"}, allowGetters = true)
 public class ServiceInstanceUsage {
 
-    private String spaceName;
-    private String serviceName;
-    private String serviceInstanceName;
-    private double durationInSecs;
-    private String avgSICount;
-
-    public String getAvgSICount(){
+    private final String spaceName;
+    private final String serviceName;
+    private final String serviceInstanceName;
 
-        DecimalFormat df = new DecimalFormat("#.###");
-        return df.format(this.getDurationInSecs());
+    private final double durationInSecs;
+    private final String avgSICount;
 
+    @Builder
+    @JsonCreator
+    private ServiceInstanceUsage(@JsonProperty("spaceName") @JsonDeserialize(using = Identifiers.Deserializer.class) String spaceName,
+                                 @JsonProperty("serviceName") @JsonDeserialize(using = Identifiers.Deserializer.class) String serviceName,
+                                 @JsonProperty("serviceInstanceName") @JsonDeserialize(using = Identifiers.Deserializer.class) String serviceInstanceName,
+                                 @JsonProperty("durationInSecs") double durationInSecs) {
+        this.spaceName = spaceName;
+        this.serviceName = serviceName;
+        this.serviceInstanceName = serviceInstanceName;
+        this.durationInSecs = durationInSecs;
+        // Formatted once, views and reports only read them
+        this.avgSICount = UsageUtils.format(durationInSecs);
     }
+
 }
@@ -1,43 +1,47 @@
 package io.pivotal.tola.cfapi.usage.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
 import lombok.Builder;
-import lombok.Data;
-
-import java.text.DecimalFormat;
-
-@Data
-@Builder
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@EqualsAndHashCode
+@ToString
+// The formatted totals are written for the views, and computed again when read
+@JsonIgnoreProperties(value = {"totalGbPerAis", "avgAICount"}, allowGetters = true)
 public class SpaceUsage {
 
-    private String spaceGuid;
-    private String spaceName;
-
-    private long totalApps;
-    private double totalMbPerAis = 0.0;
-    private String totalGbPerAis;
-    private double aiDurationInSecs;
-    private String avgAICount;
-
-    public String getAvgAICount(){
-
-        DecimalFormat df = new DecimalFormat("#.###");
-        return df.format(this.getAiDurationInSecs());
-
-    }
-
-    public String getTotalGbPerAis(){
-
-        DecimalFormat df = new DecimalFormat("#.###");
-        return df.format( (double)this.getTotalMbPerAis() / 1024);
-
-    }
-
-    public void computeTotalMbPerAis(double memory, double avgAI){
-
-        if(avgAI < 1.0){
-            avgAI = 1.0;
-        }
-        this.totalMbPerAis = this.totalMbPerAis + (memory * avgAI);
+    private final String spaceGuid;
+    private final String spaceName;
+
+    private final long totalApps;
+    private final double totalMbPerAis;
+    private final double aiDurationInSecs;
+    private final String totalGbPerAis;
+    private final String avgAICount;
+
+    @Builder
+    @JsonCreator
+    private SpaceUsage(@JsonProperty("spaceGuid") @JsonDeserialize(using = Identifiers.Deserializer.class) String spaceGuid,
+                       @JsonProperty("spaceName") @JsonDeserialize(using = Identifiers.Deserializer.class) String spaceName,
+                       @JsonProperty("totalApps") long totalApps,
+                       @JsonProperty("totalMbPerAis") double totalMbPerAis,
+                       @JsonProperty("aiDurationInSecs") double aiDurationInSecs) {
+        this.spaceGuid = spaceGuid;
+        this.spaceName = spaceName;
+        this.totalApps = totalApps;
+        this.totalMbPerAis = totalMbPerAis;
+        this.aiDurationInSecs = aiDurationInSecs;
+        // Formatted once, views and reports only read them
+        this.totalGbPerAis = UsageUtils.format(totalMbPerAis / 1024);
+        this.avgAICount = UsageUtils.format(aiDurationInSecs);
     }
 
 }
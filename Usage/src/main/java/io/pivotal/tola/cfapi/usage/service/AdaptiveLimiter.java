@@ -0,0 +1,193 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * AdaptiveLimiter - AIMD limit of the requests in flight against one foundation's app-usage service.
+ * <p>
+ * The limit grows by one for every limit's worth of successful responses while it is in use, and shrinks by BACKOFF
+ * when a response fails with an overload error or when recent latency rises above TOLERANCE times long-term latency.
+ * Comparing averages rather than single responses keeps one large org from lowering the limit. It shrinks at most
+ * once per long-term latency, so a burst of failures of requests sent together counts once.
+ * Requests over the limit wait in order until a request completes, they are never dropped.
+ */
+public class AdaptiveLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveLimiter.class);
+
+    private static final double BACKOFF = 0.75;
+    private static final double TOLERANCE = 2.0;
+    // Weight of a new sample in the recent and the long-term latency
+    private static final double RECENT = 0.3;
+    private static final double LONG_TERM = 0.05;
+
+    private final String foundation;
+    private final int minLimit;
+    private final int maxLimit;
+    private final Predicate<Throwable> overload;
+
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inflight;
+    private double recentNanos;
+    private double longTermNanos;
+    private long lastDecrease;
+
+    /**
+     * @param overload -- errors that mean the service is overloaded, others release their permit without feedback
+     */
+    public AdaptiveLimiter(String foundation, int initialLimit, int minLimit, int maxLimit, Predicate<Throwable> overload) {
+        this.foundation = foundation;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.overload = overload;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Subscribes to the call once a permit is available, and adjusts the limit to its outcome
+     */
+    public <T> Flux<T> limit(Supplier<Flux<T>> call) {
+        return acquire().flatMapMany(permit -> call.get()
+                .doOnComplete(() -> permit.release(Outcome.SUCCESS))
+                .doOnError(e -> permit.release(overload.test(e) ? Outcome.OVERLOAD : Outcome.IGNORED))
+                .doOnCancel(() -> permit.release(Outcome.IGNORED)));
+    }
+
+    public String getFoundation() {
+        return foundation;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInflight() {
+        return inflight;
+    }
+
+    public synchronized int getQueued() {
+        return waiting.size();
+    }
+
+    ///////////////////////////////////////
+
+    private Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink);
+            sink.onCancel(() -> cancel(waiter));
+            synchronized (this) {
+                if (inflight < (int) limit && waiting.isEmpty()) {
+                    inflight++;
+                    waiter.permit = new Permit(System.nanoTime(), inflight >= (int) limit);
+                } else {
+                    waiting.add(waiter);
+                }
+            }
+            if (waiter.permit != null) {
+                sink.success(waiter.permit);
+            }
+        });
+    }
+
+    private void cancel(Waiter waiter) {
+        Permit granted;
+        synchronized (this) {
+            if (waiting.remove(waiter)) {
+                return;
+            }
+            granted = waiter.permit;
+        }
+        // Cancelled while its permit was being handed over
+        if (granted != null) {
+            granted.release(Outcome.IGNORED);
+        }
+    }
+
+    private void release(Permit permit, Outcome outcome) {
+        long now = System.nanoTime();
+        Waiter next;
+        synchronized (this) {
+            inflight--;
+            adjust(permit, outcome, now);
+
+            next = inflight < (int) limit ? waiting.poll() : null;
+            if (next != null) {
+                inflight++;
+                next.permit = new Permit(now, inflight >= (int) limit);
+            }
+        }
+        if (next != null) {
+            next.sink.success(next.permit);
+        }
+    }
+
+    private void adjust(Permit permit, Outcome outcome, long now) {
+        if (outcome == Outcome.IGNORED) {
+            return;
+        }
+        if (outcome == Outcome.SUCCESS) {
+            long nanos = now - permit.startedAt;
+            recentNanos = recentNanos == 0 ? nanos : recentNanos + RECENT * (nanos - recentNanos);
+            longTermNanos = longTermNanos == 0 ? nanos : longTermNanos + LONG_TERM * (nanos - longTermNanos);
+        }
+        boolean slow = recentNanos > TOLERANCE * longTermNanos;
+
+        if (outcome == Outcome.OVERLOAD || slow) {
+            if (now - lastDecrease > longTermNanos) {
+                double previous = limit;
+                limit = Math.max(minLimit, limit * BACKOFF);
+                lastDecrease = now;
+                if ((int) previous != (int) limit) {
+                    LOG.info("Lowered concurrency limit of foundation {} to {} after a {} response", foundation,
+                            (int) limit, outcome == Outcome.OVERLOAD ? "failed" : "slow");
+                }
+            }
+        } else if (permit.saturated) {
+            // Only grows while the limit is what holds requests back
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    private enum Outcome {
+        SUCCESS, OVERLOAD, IGNORED
+    }
+
+    private static class Waiter {
+        private final MonoSink<Permit> sink;
+        private volatile Permit permit;
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    private class Permit {
+        private final long startedAt;
+        // The request took the last permit under the limit
+        private final boolean saturated;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(long startedAt, boolean saturated) {
+            this.startedAt = startedAt;
+            this.saturated = saturated;
+        }
+
+        void release(Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveLimiter.this.release(this, outcome);
+            }
+        }
+    }
+
+}
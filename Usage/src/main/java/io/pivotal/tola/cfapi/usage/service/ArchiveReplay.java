@@ -0,0 +1,129 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import io.pivotal.tola.cfapi.usage.store.DailyUsageStore;
+import io.pivotal.tola.cfapi.usage.store.UsageAggregateStore;
+import io.pivotal.tola.cfapi.usage.store.UsageArchive;
+import io.pivotal.tola.cfapi.usage.store.UsageArchive.Entry;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+/**
+ * ArchiveReplay - builds the usage accumulator of an org quarter out of the responses archived for it, the way
+ * {@link UsageAccumulation} built it out of the responses as they were fetched.
+ * <p>
+ * A response is complete when its range ended before the day it was fetched on. The quarter is covered from its
+ * first day with the complete responses that reach furthest, preferring the latest fetched, and stored as the
+ * quarter aggregate through the last day they cover. The latest response of the following day, fetched while that
+ * day was still running, is added on top of it the way today's usage is.
+ */
+class ArchiveReplay<A> {
+
+    private final Kind kind;
+    private final UsageArchive.Type type;
+    private final Supplier<A> empty;
+    private final BiConsumer<A, A> merge;
+    private final Function<Entry, Mono<A>> reader;
+
+    private final UsageArchive archive;
+    private final DailyUsageStore dailyStore;
+    private final UsageAggregateStore aggregateStore;
+    private final PeriodCalendar periods;
+
+    ArchiveReplay(Kind kind, UsageArchive.Type type, Supplier<A> empty, BiConsumer<A, A> merge,
+                  Function<Entry, Mono<A>> reader, UsageArchive archive, DailyUsageStore dailyStore,
+                  UsageAggregateStore aggregateStore, PeriodCalendar periods) {
+        this.kind = kind;
+        this.type = type;
+        this.empty = empty;
+        this.merge = merge;
+        this.reader = reader;
+        this.archive = archive;
+        this.dailyStore = dailyStore;
+        this.aggregateStore = aggregateStore;
+        this.periods = periods;
+    }
+
+    /**
+     * @param key -- foundation$org$year$quarter$fiscalYearStartMonth
+     * @return usage of the quarter and the last day it covers, or nothing when no response covers its first day
+     */
+    Mono<Tuple2<A, LocalDate>> quarter(String foundation, String orgGuid, String key, LocalDate first, LocalDate last) {
+        return Mono.defer(() -> {
+            List<Entry> entries = archive.getEntries(type, foundation, orgGuid).stream()
+                    .filter(e -> !e.getStart().isBefore(first) && !e.getEnd().isAfter(last))
+                    .collect(Collectors.toList());
+
+            List<Entry> cover = new ArrayList<>();
+            LocalDate day = first;
+            for (Entry next = latest(entries, day, true); next != null; next = latest(entries, day, true)) {
+                cover.add(next);
+                day = next.getEnd().plusDays(1);
+            }
+            LocalDate settled = day.minusDays(1);
+            Entry running = latest(entries, day, false);
+            if (cover.isEmpty() && running == null) {
+                return Mono.empty();
+            }
+
+            A base = empty.get();
+            Mono<A> settledUsage = Flux.fromIterable(cover)
+                    .concatMap(entry -> reader.apply(entry).doOnNext(usage -> {
+                        // Like the fetched ones, only responses after the quarter's first are kept as spans of days
+                        if (!entry.getStart().equals(first)) {
+                            dailyStore.save(kind, foundation, orgGuid, entry.getStart(), entry.getEnd(), usage);
+                        }
+                    }))
+                    .doOnNext(usage -> merge.accept(base, usage))
+                    .then(Mono.fromCallable(() -> {
+                        if (!cover.isEmpty()) {
+                            aggregateStore.replace(kind, key, foundation, orgGuid, settled, base);
+                        }
+                        return base;
+                    }));
+
+            if (running == null) {
+                return settledUsage.map(usage -> Tuples.of(usage, settled));
+            }
+            return settledUsage.flatMap(usage -> reader.apply(running).map(runningUsage -> {
+                A total = empty.get();
+                merge.accept(total, usage);
+                merge.accept(total, runningUsage);
+                return Tuples.of(total, running.getEnd());
+            }));
+        });
+    }
+
+    ///////////////////////////////////////
+
+    /**
+     * @return of the responses starting on the day, the complete one reaching furthest or the running one, latest
+     * fetched first
+     */
+    private Entry latest(List<Entry> entries, LocalDate day, boolean complete) {
+        Entry latest = null;
+        for (Entry entry : entries) {
+            if (entry.getStart().equals(day) && isComplete(entry) == complete
+                    && (latest == null || !complete || !entry.getEnd().isBefore(latest.getEnd()))) {
+                latest = entry;
+            }
+        }
+        return latest;
+    }
+
+    private boolean isComplete(Entry entry) {
+        return entry.getEnd().isBefore(periods.dayOf(entry.getFetchedAt()));
+    }
+
+}
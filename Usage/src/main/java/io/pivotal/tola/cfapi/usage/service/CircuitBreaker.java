@@ -0,0 +1,158 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+/**
+ * CircuitBreaker - stops sending requests to a foundation's app-usage service while most of them fail.
+ * <p>
+ * Opens when at least failureRate of the last window requests failed, once minCalls requests were made. While open,
+ * requests fail right away with a {@link CircuitOpenException}. After openDuration a single trial request is let
+ * through, which closes the breaker when it succeeds or opens it again when it fails.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String foundation;
+    private final double failureRate;
+    private final int minCalls;
+    private final Duration openDuration;
+    private final Clock clock;
+
+    // Outcomes of the last window requests, as a ring
+    private final boolean[] failed;
+    private int calls;
+    private int failures;
+    private int next;
+
+    private State state = State.CLOSED;
+    private Instant openUntil;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(String foundation, int window, int minCalls, double failureRate, Duration openDuration) {
+        this(foundation, window, minCalls, failureRate, openDuration, Clock.systemUTC());
+    }
+
+    CircuitBreaker(String foundation, int window, int minCalls, double failureRate, Duration openDuration, Clock clock) {
+        this.foundation = foundation;
+        this.failed = new boolean[window];
+        this.minCalls = Math.min(minCalls, window);
+        this.failureRate = failureRate;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * @param counts -- errors that count as failures, others neither open nor close the breaker
+     */
+    public <T> Flux<T> protect(Supplier<Flux<T>> call, Predicate<Throwable> counts) {
+        return Flux.defer(() -> {
+            if (!tryAcquire()) {
+                return Flux.error(new CircuitOpenException(foundation));
+            }
+            return call.get()
+                    .doOnComplete(this::onSuccess)
+                    .doOnError(e -> {
+                        if (counts.test(e)) {
+                            onFailure();
+                        } else {
+                            onIgnored();
+                        }
+                    })
+                    .doOnCancel(this::onIgnored);
+        });
+    }
+
+    public String getFoundation() {
+        return foundation;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    ///////////////////////////////////////
+
+    private synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (clock.instant().isBefore(openUntil)) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            LOG.info("Closed circuit of foundation {}", foundation);
+            state = State.CLOSED;
+            trialInFlight = false;
+            calls = failures = next = 0;
+            return;
+        }
+        record(false);
+    }
+
+    private synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && calls >= minCalls && failures >= failureRate * calls) {
+            open();
+        }
+    }
+
+    private synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    private void open() {
+        LOG.warn("Opened circuit of foundation {} for {}", foundation, openDuration);
+        state = State.OPEN;
+        openUntil = clock.instant().plus(openDuration);
+        trialInFlight = false;
+    }
+
+    private void record(boolean failure) {
+        if (calls == failed.length) {
+            if (failed[next]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        failed[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % failed.length;
+    }
+
+}
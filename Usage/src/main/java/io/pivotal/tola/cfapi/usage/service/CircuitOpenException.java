@@ -0,0 +1,12 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+/**
+ * CircuitOpenException - a request that wasn't sent because the foundation's circuit breaker is open
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    public CircuitOpenException(String foundation) {
+        super(String.format("Circuit of foundation %s is open", foundation));
+    }
+
+}
@@ -0,0 +1,71 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * FetchFailures - org quarters whose usage couldn't be fetched by a refresh, until a later refresh fetches them.
+ * <p>
+ * A refresh completes with the orgs that could be fetched, these records are what it left out. Those whose response
+ * couldn't be read are permanent, fetching them again right away would fail the same way, they wait for the next
+ * scheduled refresh.
+ */
+public class FetchFailures {
+
+    private final Map<String, Failure> failures = new ConcurrentHashMap<>();
+
+    public void failed(Kind kind, String foundation, String orgGuid, int year, int quarter, Throwable e) {
+        failures.compute(kind + "$" + key(foundation, orgGuid, year, quarter), (k, previous) -> Failure.builder()
+                .kind(kind).foundation(foundation).orgGuid(orgGuid).year(year).quarter(quarter)
+                .error(e.toString())
+                .permanent(UsageClient.isUnreadable(e))
+                .attempts(previous == null ? 1 : previous.attempts + 1)
+                .failedAt(Instant.now())
+                .build());
+    }
+
+    public void fetched(Kind kind, String foundation, String orgGuid, int year, int quarter) {
+        failures.remove(kind + "$" + key(foundation, orgGuid, year, quarter));
+    }
+
+    public List<Failure> getFailures(String foundation) {
+        return failures.values().stream().filter(f -> f.foundation.equals(foundation)).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the failures that aren't permanent
+     */
+    public Map<String, List<Failure>> getRetryableByFoundation() {
+        return failures.values().stream().filter(f -> !f.permanent).collect(Collectors.groupingBy(Failure::getFoundation));
+    }
+
+    ///////////////////////////////////////
+
+    private static String key(String foundation, String orgGuid, int year, int quarter) {
+        return String.format("%s$%s$%s$%s", foundation, orgGuid, year, quarter);
+    }
+
+    @Getter
+    @Builder
+    public static class Failure {
+        private final Kind kind;
+        private final String foundation;
+        private final String orgGuid;
+        private final int year;
+        private final int quarter;
+        private final String error;
+        // The response couldn't be read, see UsageClient.isUnreadable
+        private final boolean permanent;
+        // Refreshes in a row that failed to fetch it
+        private final int attempts;
+        private final Instant failedAt;
+    }
+
+}
@@ -0,0 +1,49 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * FetchLimiterMetrics - publishes the concurrency limit, requests in flight and queued requests of every foundation
+ * as usage.fetch.limit, usage.fetch.inflight and usage.fetch.queued, whether its circuit is open as
+ * usage.fetch.circuit.open, and the bytes received from it before they are inflated as usage.fetch.wire.bytes
+ */
+@Component
+public class FetchLimiterMetrics implements MeterBinder {
+
+    @Autowired
+    private UsageClient usageClient;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        usageClient.getLimiters().forEach(limiter -> {
+            Gauge.builder("usage.fetch.limit", limiter, AdaptiveLimiter::getLimit)
+                    .tag("foundation", limiter.getFoundation())
+                    .description("Requests allowed in flight against the app-usage service")
+                    .register(registry);
+            Gauge.builder("usage.fetch.inflight", limiter, AdaptiveLimiter::getInflight)
+                    .tag("foundation", limiter.getFoundation())
+                    .description("Requests in flight against the app-usage service")
+                    .register(registry);
+            Gauge.builder("usage.fetch.queued", limiter, AdaptiveLimiter::getQueued)
+                    .tag("foundation", limiter.getFoundation())
+                    .description("Requests waiting for the concurrency limit")
+                    .register(registry);
+            FunctionCounter.builder("usage.fetch.wire.bytes", usageClient, c -> c.getWireBytes(limiter.getFoundation()))
+                    .tag("foundation", limiter.getFoundation())
+                    .baseUnit("bytes")
+                    .description("Bytes received from the app-usage service, compressed when it compressed them")
+                    .register(registry);
+        });
+        usageClient.getBreakers().forEach(breaker ->
+                Gauge.builder("usage.fetch.circuit.open", breaker, b -> b.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                        .tag("foundation", breaker.getFoundation())
+                        .description("Whether requests to the app-usage service fail fast")
+                        .register(registry));
+    }
+
+}
@@ -0,0 +1,118 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import lombok.Builder;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * FoundationReadiness - warm-up state of every foundation, from discovering its orgs until its usage is cached
+ */
+@Component
+public class FoundationReadiness {
+
+    public enum State {
+        PENDING, DISCOVERING, WARMING, READY, FAILED;
+
+        public boolean isDone() {
+            return this == READY || this == FAILED;
+        }
+    }
+
+    private final FoundationsConfig config;
+    private final Clock clock;
+    private final Map<String, Status> statuses = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FoundationReadiness(FoundationsConfig config) {
+        this(config, Clock.systemUTC());
+    }
+
+    FoundationReadiness(FoundationsConfig config, Clock clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+
+    public void discovering(String foundation) {
+        statuses.put(foundation, Status.builder().state(State.DISCOVERING).startedAt(clock.instant()).build());
+    }
+
+    public void warming(String foundation, int orgs) {
+        update(foundation, s -> s.toBuilder().state(State.WARMING).orgs(orgs).build());
+    }
+
+    public void ready(String foundation) {
+        update(foundation, s -> s.toBuilder().state(State.READY).readyAt(clock.instant()).error(null).build());
+    }
+
+    /**
+     * A foundation that was ready stays ready, it keeps serving its last orgs and usage
+     */
+    public void failed(String foundation, Throwable e) {
+        update(foundation, s -> s.toBuilder().state(s.state == State.READY ? State.READY : State.FAILED)
+                .error(e.toString()).build());
+    }
+
+    public boolean isReady(String foundation) {
+        return getStatus(foundation).state == State.READY;
+    }
+
+    public boolean isFailed(String foundation) {
+        return getStatus(foundation).state == State.FAILED;
+    }
+
+    /**
+     * @return how long the foundation's warm-up took, or has been running so far
+     */
+    public Duration getWarmUp(String foundation) {
+        Status status = getStatus(foundation);
+        if (status.startedAt == null) {
+            return Duration.ZERO;
+        }
+        return Duration.between(status.startedAt, status.readyAt != null ? status.readyAt : clock.instant());
+    }
+
+    public Status getStatus(String foundation) {
+        return statuses.getOrDefault(foundation, Status.PENDING);
+    }
+
+    /**
+     * @return status of every foundation, in the order they are configured
+     */
+    public Map<String, Status> getStatuses() {
+        Map<String, Status> result = new LinkedHashMap<>();
+        config.getFoundations().forEach(f -> result.put(f.getName(), getStatus(f.getName())));
+        return result;
+    }
+
+    ///////////////////////////////////////
+
+    private void update(String foundation, UnaryOperator<Status> update) {
+        statuses.compute(foundation, (k, s) -> update.apply(s != null ? s
+                : Status.builder().state(State.DISCOVERING).startedAt(clock.instant()).build()));
+    }
+
+    @Getter
+    @Builder(toBuilder = true)
+    public static class Status {
+
+        private static final Status PENDING = Status.builder().state(State.PENDING).build();
+
+        private final State state;
+        private final int orgs;
+        private final Instant startedAt;
+        private final Instant readyAt;
+        // Last discovery or warm-up failure
+        private final String error;
+    }
+
+}
@@ -0,0 +1,179 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.store.DailyUsageStore;
+import io.pivotal.tola.cfapi.usage.store.DailyUsageStore.Span;
+import io.pivotal.tola.cfapi.usage.store.UsageAggregateStore;
+import io.pivotal.tola.cfapi.usage.store.UsageAggregateStore.Aggregate;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+/**
+ * UsageAccumulation - builds the usage accumulator of an org for a range of days out of stored spans of days and
+ * stored quarter aggregates, and fetches only the days that haven't been fetched before.
+ * <p>
+ * Days that have ended don't change anymore, each contiguous run of them that is missing is fetched in one request
+ * and stored as a span. A stored span is only used by ranges that cover it whole. Today is still changing, so it is
+ * fetched every time it is part of a range and never stored.
+ */
+class UsageAccumulation<A> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UsageAccumulation.class);
+
+    interface Fetcher<A> {
+
+        /**
+         * @param start -- date in format of yyyy-MM-dd
+         * @param end   -- date in format of yyyy-MM-dd
+         */
+        Mono<A> fetch(String foundation, String orgGuid, String start, String end);
+    }
+
+    private final Kind kind;
+    private final Class<A> type;
+    private final Supplier<A> empty;
+    private final BiConsumer<A, A> merge;
+    private final Fetcher<A> fetcher;
+
+    private final FoundationsConfig config;
+    private final DailyUsageStore dailyStore;
+    private final UsageAggregateStore aggregateStore;
+    private final Supplier<LocalDate> today;
+
+    UsageAccumulation(Kind kind, Class<A> type, Supplier<A> empty, BiConsumer<A, A> merge, Fetcher<A> fetcher,
+                      FoundationsConfig config, DailyUsageStore dailyStore, UsageAggregateStore aggregateStore,
+                      Supplier<LocalDate> today) {
+        this.kind = kind;
+        this.type = type;
+        this.empty = empty;
+        this.merge = merge;
+        this.fetcher = fetcher;
+        this.config = config;
+        this.dailyStore = dailyStore;
+        this.aggregateStore = aggregateStore;
+        this.today = today;
+    }
+
+    /**
+     * @return usage of the days from and to, both included, merged in day order
+     */
+    Mono<A> range(String foundation, String orgGuid, LocalDate from, LocalDate to) {
+        return Mono.defer(() -> {
+            LocalDate now = today.get();
+            LocalDate settled = to.isBefore(now) ? to : now.minusDays(1);
+
+            // Of the stored spans starting on the same day, the one reaching furthest
+            TreeMap<LocalDate, Span<A>> stored = new TreeMap<>();
+            dailyStore.find(kind, foundation, orgGuid, from, settled, type).forEach(span -> stored.merge(span.getFirst(), span,
+                    (a, b) -> b.getLast().isAfter(a.getLast()) ? b : a));
+
+            // Days no stored span covers are fetched in one request per contiguous run
+            TreeMap<LocalDate, A> parts = new TreeMap<>();
+            List<Tuple2<LocalDate, LocalDate>> missing = new ArrayList<>();
+            LocalDate gap = null;
+            for (LocalDate day = from; !day.isAfter(settled); ) {
+                Span<A> span = stored.get(day);
+                if (span == null) {
+                    gap = gap == null ? day : gap;
+                    day = day.plusDays(1);
+                    continue;
+                }
+                if (gap != null) {
+                    missing.add(Tuples.of(gap, day.minusDays(1)));
+                    gap = null;
+                }
+                parts.put(day, span.getAccumulator());
+                day = span.getLast().plusDays(1);
+            }
+            if (gap != null) {
+                missing.add(Tuples.of(gap, settled));
+            }
+            boolean withToday = !from.isAfter(now) && !to.isBefore(now);
+            if (!missing.isEmpty()) {
+                LOG.info("Fetching {} spans of days of {} usage of org {}, {} stored spans", missing.size(), kind, orgGuid, parts.size());
+            }
+
+            Flux<Tuple2<LocalDate, A>> settledFetches = Flux.fromIterable(missing)
+                    .flatMap(span -> fetcher.fetch(foundation, orgGuid, span.getT1().toString(), span.getT2().toString())
+                            .doOnNext(usage -> dailyStore.save(kind, foundation, orgGuid, span.getT1(), span.getT2(), usage))
+                            .map(usage -> Tuples.of(span.getT1(), usage)), config.getFetchConcurrency(foundation));
+            // Today is still changing, it is fetched on its own and never stored
+            Flux<Tuple2<LocalDate, A>> todays = withToday
+                    ? fetcher.fetch(foundation, orgGuid, now.toString(), now.toString()).map(usage -> Tuples.of(now, usage)).flux()
+                    : Flux.empty();
+
+            return Flux.merge(settledFetches, todays)
+                    .collectList()
+                    .map(fetched -> {
+                        fetched.forEach(t -> parts.put(t.getT1(), t.getT2()));
+                        A total = empty.get();
+                        parts.values().forEach(usage -> merge.accept(total, usage));
+                        return total;
+                    });
+        });
+    }
+
+    /**
+     * Brings the stored aggregate of the quarter up to yesterday by fetching only the days it is missing, then adds
+     * today's usage when the quarter is still running.
+     *
+     * @param key  -- foundation$org$year$quarter$fiscalYearStartMonth
+     * @param last -- last day of the quarter, or today while the quarter is running
+     */
+    Mono<A> quarter(String foundation, String orgGuid, String key, LocalDate first, LocalDate last) {
+        return Mono.defer(() -> {
+            LocalDate now = today.get();
+            LocalDate settled = last.isBefore(now) ? last : now.minusDays(1);
+
+            Aggregate<A> stored = aggregateStore.find(kind, key, type);
+            A base = stored == null ? empty.get() : stored.getAccumulator();
+            LocalDate from = stored == null ? first : stored.getThroughDay().plusDays(1);
+
+            Mono<A> settledUsage;
+            if (from.isAfter(settled)) {
+                settledUsage = Mono.just(base);
+            } else {
+                LOG.info("Fetching {} usage of {} from {} to {}", kind, key, from, settled);
+                // The first fetch of a quarter is a single request, later deltas are kept as days for range queries.
+                // The first fetch is kept as a span too, range queries covering it whole and the series reuse it
+                Mono<A> delta;
+                if (stored != null && config.isDailyBuckets()) {
+                    delta = range(foundation, orgGuid, from, settled);
+                } else {
+                    delta = fetcher.fetch(foundation, orgGuid, from.toString(), settled.toString());
+                    if (config.isDailyBuckets()) {
+                        delta = delta.doOnNext(usage -> dailyStore.save(kind, foundation, orgGuid, from, settled, usage));
+                    }
+                }
+                settledUsage = delta.map(usage -> {
+                    merge.accept(base, usage);
+                    aggregateStore.save(kind, key, foundation, orgGuid, settled, base);
+                    return base;
+                });
+            }
+
+            if (last.isBefore(now)) {
+                return settledUsage;
+            }
+            return settledUsage.flatMap(usage -> fetcher.fetch(foundation, orgGuid, now.toString(), now.toString()).map(todays -> {
+                A total = empty.get();
+                merge.accept(total, usage);
+                merge.accept(total, todays);
+                return total;
+            }));
+        });
+    }
+
+}
@@ -0,0 +1,234 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.ZipException;
+
+import javax.annotation.PreDestroy;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonEOFException;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.store.PayloadWriter;
+import io.pivotal.tola.cfapi.usage.store.UsageArchive;
+import io.pivotal.tola.cfapi.usage.utils.GzipInflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.ipc.netty.http.client.HttpClient;
+import reactor.ipc.netty.http.client.HttpClientException;
+import reactor.ipc.netty.resources.PoolResources;
+
+/**
+ * UsageClient - shared, connection pooled, non-blocking client for the app-usage service of every foundation
+ */
+@Component
+public class UsageClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UsageClient.class);
+
+    private final Map<String, HttpClient> clients = new ConcurrentHashMap<>();
+
+    private final Map<String, AdaptiveLimiter> limiters = new LinkedHashMap<>();
+
+    private final Map<String, CircuitBreaker> breakers = new LinkedHashMap<>();
+
+    // Response bytes received from the app-usage service of each foundation, compressed when it compressed them
+    private final Map<String, LongAdder> wireBytes = new ConcurrentHashMap<>();
+
+    private final FoundationsConfig config;
+
+    private final PoolResources pool;
+
+    private final UsageArchive archive;
+
+    @Autowired
+    public UsageClient(FoundationsConfig config, UsageArchive archive) {
+        this.config = config;
+        this.archive = archive;
+        this.pool = PoolResources.fixed("app-usage", config.getMaxConnections());
+        config.getFoundations().forEach(f -> limiters.put(f.getName(), new AdaptiveLimiter(f.getName(),
+                f.getFetchConcurrency(), 1, f.getMaxFetchConcurrency(), UsageClient::isOverload)));
+        config.getFoundations().forEach(f -> breakers.put(f.getName(), new CircuitBreaker(f.getName(),
+                config.getCircuitWindow(), config.getCircuitMinCalls(), config.getCircuitFailureRate(),
+                config.getCircuitOpenDuration())));
+    }
+
+    /**
+     * @param foundation
+     * @param orgGuid
+     * @param start      -- date in format of yyyy-MM-dd
+     * @param end        -- date in format of yyyy-MM-dd
+     * @return app_usages JSON response, chunk by chunk as it arrives
+     */
+    public Flux<byte[]> appUsages(String foundation, String orgGuid, String start, String end) {
+        return get(foundation, String.format("%s/organizations/%s/app_usages?start=%s&end=%s",
+                config.getAppUsageBaseUrl(foundation), orgGuid, start, end),
+                gzipped -> archive.writer(UsageArchive.Type.APP, foundation, orgGuid, start, end, gzipped));
+    }
+
+    /**
+     * @param foundation
+     * @param orgGuid
+     * @param start      -- date in format of yyyy-MM-dd
+     * @param end        -- date in format of yyyy-MM-dd
+     * @return service_usages JSON response, chunk by chunk as it arrives
+     */
+    public Flux<byte[]> svcUsages(String foundation, String orgGuid, String start, String end) {
+        return get(foundation, String.format("%s/organizations/%s/service_usages?start=%s&end=%s",
+                config.getAppUsageBaseUrl(foundation), orgGuid, start, end),
+                gzipped -> archive.writer(UsageArchive.Type.SVC, foundation, orgGuid, start, end, gzipped));
+    }
+
+    public Collection<AdaptiveLimiter> getLimiters() {
+        return limiters.values();
+    }
+
+    public Collection<CircuitBreaker> getBreakers() {
+        return breakers.values();
+    }
+
+    public long getWireBytes(String foundation) {
+        LongAdder received = wireBytes.get(foundation);
+        return received == null ? 0 : received.sum();
+    }
+
+    @PreDestroy
+    public void dispose() {
+        pool.dispose();
+    }
+
+    ///////////////////////////////////////
+
+    /**
+     * @param raw -- archive writer of the raw response given whether it is gzipped
+     */
+    private Flux<byte[]> get(String foundation, String uri, Function<Boolean, PayloadWriter> raw) {
+        LOG.info(uri);
+        HttpClient client = clients.computeIfAbsent(foundation, this::createClient);
+        LongAdder received = wireBytes.computeIfAbsent(foundation, f -> new LongAdder());
+
+        // Sets Authorization token as header needed for CF API calls
+        Supplier<Flux<byte[]>> call = () -> config.getFoundationTokenAsync(foundation)
+                .flatMap(token -> client.get(uri, request -> {
+                    request.header(HttpHeaderNames.AUTHORIZATION, token).keepAlive(true);
+                    if (config.isFetchCompression()) {
+                        request.header(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP);
+                    }
+                    return request.send();
+                }))
+                .flatMapMany(response -> {
+                    boolean gzipped = HttpHeaderValues.GZIP.contentEqualsIgnoreCase(
+                            response.responseHeaders().get(HttpHeaderNames.CONTENT_ENCODING, ""));
+                    Flux<byte[]> body = response.receive().asByteArray()
+                            .doOnNext(chunk -> received.add(chunk.length));
+                    // Inflating and the archive writer, which compresses and appends to files, run off the event loop
+                    if (gzipped || archive.isEnabled()) {
+                        body = body.publishOn(Schedulers.parallel());
+                    }
+                    body = retaining(body, raw, gzipped);
+                    return gzipped ? inflating(body) : body;
+                })
+                // Between the request and the first chunk, and between chunks
+                .timeout(config.getFetchTimeout());
+
+        // Requests over the foundation's current limit wait for a request in flight to complete, none are sent while
+        // its circuit is open
+        AdaptiveLimiter limiter = limiters.get(foundation);
+        CircuitBreaker breaker = breakers.get(foundation);
+        Supplier<Flux<byte[]>> limited = limiter != null ? () -> limiter.limit(call) : call;
+        return breaker != null ? breaker.protect(limited, UsageClient::isOverload) : limited.get();
+    }
+
+    /**
+     * Tees the response as received into the archive, compressed unless already gzipped
+     */
+    private Flux<byte[]> retaining(Flux<byte[]> body, Function<Boolean, PayloadWriter> raw, boolean gzipped) {
+        if (!archive.isEnabled()) {
+            return body;
+        }
+        return Flux.defer(() -> {
+            PayloadWriter writer = raw.apply(gzipped);
+            return body
+                    .doOnNext(writer::write)
+                    .doOnComplete(writer::commit)
+                    .doOnError(e -> writer.abort())
+                    .doOnCancel(writer::abort);
+        });
+    }
+
+    /**
+     * Inflates a gzipped response chunk by chunk
+     */
+    private static Flux<byte[]> inflating(Flux<byte[]> body) {
+        return Flux.using(GzipInflater::new,
+                inflater -> body
+                        .concatMapIterable(chunk -> {
+                            try {
+                                return inflater.inflate(chunk);
+                            } catch (ZipException e) {
+                                throw Exceptions.propagate(e);
+                            }
+                        })
+                        .concatWith(Mono.fromRunnable(() -> {
+                            try {
+                                inflater.finish();
+                            } catch (ZipException e) {
+                                throw Exceptions.propagate(e);
+                            }
+                        })),
+                GzipInflater::close);
+    }
+
+    /**
+     * Server errors, throttling and connection failures lower the limit, other client errors and unreadable
+     * responses don't
+     */
+    public static boolean isOverload(Throwable e) {
+        e = Exceptions.unwrap(e);
+        if (e instanceof HttpClientException) {
+            int code = ((HttpClientException) e).status().code();
+            return code >= 500 || code == HttpResponseStatus.TOO_MANY_REQUESTS.code();
+        }
+        return e instanceof IOException && !isUnreadable(e) || e instanceof TimeoutException;
+    }
+
+    /**
+     * Responses that aren't valid JSON or gzip come back the same when fetched again. Responses that were cut off
+     * may not, they are left to the overload and retry handling of the connection failures they come from.
+     */
+    public static boolean isUnreadable(Throwable e) {
+        e = Exceptions.unwrap(e);
+        if (e instanceof JsonEOFException || e instanceof GzipInflater.TruncatedException) {
+            return false;
+        }
+        return e instanceof JsonProcessingException || e instanceof ZipException;
+    }
+
+    private HttpClient createClient(String foundation) {
+        boolean skipSslValidation = config.isSkipSslValidation(foundation);
+        return HttpClient.create(options -> {
+            options.poolResources(pool);
+            if (skipSslValidation) {
+                options.sslSupport(ssl -> ssl.trustManager(InsecureTrustManagerFactory.INSTANCE));
+            }
+        });
+    }
+
+}
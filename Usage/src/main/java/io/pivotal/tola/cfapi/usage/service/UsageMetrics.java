@@ -0,0 +1,120 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * UsageMetrics - timers and distribution summaries of the refresh pipeline, tagged by foundation.
+ * <p>
+ * Each app-usage response is recorded as usage.fetch (per org), usage.fetch.bytes, usage.fetch.records and
+ * usage.parse, turning the records into org usage as usage.aggregate and refresh runs as usage.refresh and
+ * usage.refresh.foundation. The quarterly usage caches publish the standard cache.* metrics, plus the rows they hold
+ * as usage.cache.weight.
+ */
+@Component
+public class UsageMetrics {
+
+    public static final String APP = "app";
+    public static final String SVC = "svc";
+
+    private final MeterRegistry registry;
+
+    @Autowired
+    public UsageMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Records one app_usages or service_usages response of an org, from the request until its last record was read
+     *
+     * @param kind -- {@link #APP} or {@link #SVC}
+     */
+    public void fetched(String foundation, String orgGuid, String kind, boolean success, long nanos, long bytes,
+                        long records, long parseNanos) {
+        Timer.builder("usage.fetch")
+                .tag("foundation", foundation)
+                .tag("org", orgGuid)
+                .tag("kind", kind)
+                .tag("outcome", success ? "success" : "error")
+                .description("Latency of app-usage service responses, per org")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (!success) {
+            return;
+        }
+        DistributionSummary.builder("usage.fetch.bytes")
+                .tag("foundation", foundation)
+                .tag("kind", kind)
+                .baseUnit("bytes")
+                .description("Size of app-usage service responses")
+                .register(registry)
+                .record(bytes);
+        DistributionSummary.builder("usage.fetch.records")
+                .tag("foundation", foundation)
+                .tag("kind", kind)
+                .description("Usage records per app-usage service response")
+                .register(registry)
+                .record(records);
+        Timer.builder("usage.parse")
+                .tag("foundation", foundation)
+                .tag("kind", kind)
+                .description("Time spent parsing app-usage service responses")
+                .register(registry)
+                .record(parseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Times turning the accumulated records of an org into its usage
+     */
+    public <T> T aggregate(String foundation, String kind, Supplier<T> aggregation) {
+        return Timer.builder("usage.aggregate")
+                .tag("foundation", foundation)
+                .tag("kind", kind)
+                .description("Time spent turning usage records into org usage")
+                .register(registry)
+                .record(aggregation);
+    }
+
+    /**
+     * Times a refresh of all foundations
+     */
+    public void refresh(Runnable run) {
+        Timer.builder("usage.refresh")
+                .description("Duration of refresh runs")
+                .register(registry)
+                .record(run);
+    }
+
+    /**
+     * Times the refresh of one foundation, app and service usage together
+     */
+    public void refresh(String foundation, Runnable run) {
+        Timer.builder("usage.refresh.foundation")
+                .tag("foundation", foundation)
+                .description("Duration of refresh runs, per foundation")
+                .register(registry)
+                .record(run);
+    }
+
+    /**
+     * Publishes the hits, misses, evictions and size of a cache built with recordStats, and its weight
+     */
+    public void monitor(Cache<?, ?> cache, String name) {
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+        Gauge.builder("usage.cache.weight", cache, c -> c.policy().eviction()
+                        .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L))
+                .tag("cache", name)
+                .description("Rows held by the cache")
+                .register(registry);
+    }
+
+}
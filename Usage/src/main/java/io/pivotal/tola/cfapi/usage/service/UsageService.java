@@ -1,327 +1,877 @@
 package io.pivotal.tola.cfapi.usage.service;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-
-import io.pivotal.tola.cfapi.usage.utils.DateUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.pivotal.tola.cfapi.usage.ingest.*;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import io.pivotal.tola.cfapi.usage.utils.Retries;
+import io.pivotal.tola.cfapi.usage.utils.SingleFlight;
+import io.pivotal.tola.cfapi.usage.utils.UsagePeriod;
 import io.pivotal.tola.cfapi.usage.model.*;
-import io.pivotal.tola.cfapi.usage.utils.UsageUtils;
-import io.pivotal.tola.cfapi.response.model.*;
+import io.pivotal.tola.cfapi.usage.store.AppUsageSeries;
+import io.pivotal.tola.cfapi.usage.store.DailyUsageStore;
+import io.pivotal.tola.cfapi.usage.store.UsageAggregateStore;
+import io.pivotal.tola.cfapi.usage.store.UsageArchive;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshotStore;
 import org.cloudfoundry.operations.CloudFoundryOperations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.task.TaskExecutor;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
 
 import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 @Component
 public class UsageService {
 
     private static final Logger LOG = LoggerFactory.getLogger(UsageService.class);
-    private final String[] START_DATES = new String[]{"01-01", "04-01", "07-01", "10-01"};
-    private final String[] END_DATES = new String[]{"03-31", "06-30", "09-30", "12-31"};
     private static final Map<String, List<Organization>> organizationMap = new ConcurrentHashMap<>();
-    private static final Map<String, OrgUsage> quarterlyOrgUsageMap = new ConcurrentHashMap<>();
-    private static final Map<String, SIUsage> quarterlySIUsageMap = new ConcurrentHashMap<>();
-    private final Object lock = new Object();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    // Weighed in org, space and app/service instance rows, bound to cacheMaxWeight once configured
+    private final Cache<String, OrgUsage> appUsageCache = Caffeine.newBuilder()
+            .maximumWeight(Long.MAX_VALUE)
+            .weigher((String key, OrgUsage u) -> 1 + u.getSpaceUsage().size() + u.getAUsage().size())
+            .expireAfter(new QuarterExpiry<OrgUsage>())
+            .recordStats()
+            .build();
+    private final Cache<String, SIUsage> siUsageCache = Caffeine.newBuilder()
+            .maximumWeight(Long.MAX_VALUE)
+            .weigher((String key, SIUsage u) -> 1 + u.getSiSpaceUsage().size() + u.getServiceInstanceUsage().size())
+            .expireAfter(new QuarterExpiry<SIUsage>())
+            .recordStats()
+            .build();
+    private Duration openQuarterTtl = Duration.ofHours(6);
+    private final SingleFlight<OrgUsage> appUsageFlights = new SingleFlight<>();
+    private final SingleFlight<SIUsage> siUsageFlights = new SingleFlight<>();
+    // Foundations with a refresh queued or running on the refresh executor
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final FetchFailures fetchFailures = new FetchFailures();
+    private ThreadPoolTaskExecutor refreshExecutor;
 
     @Autowired
     private FoundationsConfig config;
 
     @Autowired
-    private DateUtils dateUtils;
+    private PeriodCalendar periods;
 
     @Autowired
-    private TaskExecutor taskExecutor;
+    private UsageClient usageClient;
 
-    @PostConstruct
-    public void getOrgsByFoundation() {
+    @Autowired
+    private UsageSnapshotStore snapshotStore;
 
-        config.getFoundations().stream().forEach(f -> {
-            CloudFoundryOperations operations = config.getOperations(f.getName());
-            Mono<List<Organization>> orgs = operations.organizations().list().filter(organizationSummary -> !config.getExcludedOrgs().contains(organizationSummary.getName()))
-                    .map(organizationSummary -> Organization.builder().guid(organizationSummary.getId()).name(organizationSummary.getName()).build()).collectList();
-            organizationMap.put(f.getName(), orgs.block());
-        });
+    @Autowired
+    private UsageAggregateStore aggregateStore;
 
-    }
+    @Autowired
+    private DailyUsageStore dailyStore;
 
-    public void getAppUsageByFoundationOrg() {
+    @Autowired
+    private AppUsageSeries appUsageSeries;
 
-        List<String> quarters = dateUtils.getElapsedQuartersInCurrentYear();
+    @Autowired
+    private UsageArchive archive;
 
-         config.getFoundations().parallelStream().forEach(f -> {
+    @Autowired
+    private UsageMetrics metrics;
 
-            List<Organization> orgList = this.getOrgs(f.getName());
+    @Autowired
+    private FoundationReadiness readiness;
 
-            orgList.stream().forEach(v -> {
-                if (v != null) {
-                    LOG.info("Org GUID : " + v.getGuid());
-                    LOG.info("Org Name : " + v.getName());
+    private UsageAccumulation<AppUsageAccumulator> appAccumulation;
+    private UsageAccumulation<ServiceUsageAccumulator> svcAccumulation;
+    private ArchiveReplay<AppUsageAccumulator> appReplay;
+    private ArchiveReplay<ServiceUsageAccumulator> svcReplay;
 
-                    quarters.stream().forEach(qu -> {
+    @PostConstruct
+    public void init() {
+        Supplier<LocalDate> today = periods::today;
+        appAccumulation = new UsageAccumulation<>(Kind.APP, AppUsageAccumulator.class, AppUsageAccumulator::new,
+                AppUsageAccumulator::merge, this::fetchAppUsage, config, dailyStore, aggregateStore, today);
+        svcAccumulation = new UsageAccumulation<>(Kind.SVC, ServiceUsageAccumulator.class,
+                () -> new ServiceUsageAccumulator(config.getIncludedServices()), ServiceUsageAccumulator::merge,
+                this::fetchSvcUsage, config, dailyStore, aggregateStore, today);
+        appReplay = new ArchiveReplay<>(Kind.APP, UsageArchive.Type.APP, AppUsageAccumulator::new,
+                AppUsageAccumulator::merge, this::readArchivedAppUsage, archive, dailyStore, aggregateStore, periods);
+        svcReplay = new ArchiveReplay<>(Kind.SVC, UsageArchive.Type.SVC,
+                () -> new ServiceUsageAccumulator(config.getIncludedServices()), ServiceUsageAccumulator::merge,
+                this::readArchivedSvcUsage, archive, dailyStore, aggregateStore, periods);
+
+        openQuarterTtl = config.getOpenQuarterTtl();
+        appUsageCache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(config.getCacheMaxWeight()));
+        siUsageCache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(config.getCacheMaxWeight()));
+        metrics.monitor(appUsageCache, "appUsage");
+        metrics.monitor(siUsageCache, "siUsage");
+
+        // At most one refresh per foundation is queued or running, plus the warm-up that dispatches them
+        refreshExecutor = new ThreadPoolTaskExecutor();
+        refreshExecutor.setThreadNamePrefix("usage-refresh-");
+        refreshExecutor.setCorePoolSize(config.getRefreshThreads());
+        refreshExecutor.setMaxPoolSize(config.getRefreshThreads());
+        refreshExecutor.setQueueCapacity(config.getFoundations().size() + 1);
+        refreshExecutor.initialize();
+    }
 
-                        String[] d = qu.split("-Q");
-                        int year = Integer.parseInt(d[0]);
-                        int quarter = Integer.parseInt(d[1]);
+    @PreDestroy
+    public void dispose() {
+        refreshExecutor.shutdown();
+    }
 
-                        quarterlyOrgUsageMap.put(String.format("%s$%s$%s$%s", f.getName(), v.getGuid(), year, quarter),
-                                this.appUsageByFoundationOrg(f.getName(), v.getGuid(), year, quarter));
+    /**
+     * Restores the snapshots, then discovers the orgs and warms up the usage of every foundation on the refresh
+     * executor, in the background so that startup doesn't wait on any foundation. In archive replay the usage is
+     * rebuilt from the archive instead.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (config.isArchiveReplay()) {
+            refreshExecutor.execute(this::replayArchive);
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            restoreSnapshots();
 
-                    });
-                }
-            });
+            List<UsagePeriod> quarters = periods.getElapsedQuarters();
+            config.getFoundations().forEach(f -> submitRefresh(f.getName(), () -> warmUp(f.getName(), quarters)));
         });
     }
 
-    public void getSIUsageByFoundationOrg() {
-
-        List<String> quarters = dateUtils.getElapsedQuartersInCurrentYear();
+    public void restoreSnapshots() {
+        appUsageCache.putAll(snapshotStore.loadAppUsage());
+        siUsageCache.putAll(snapshotStore.loadSIUsage());
 
-        config.getFoundations().parallelStream().forEach(f -> {
-
-            List<Organization> orgList = this.getOrgs(f.getName());
-
-            orgList.stream().forEach(v -> {
-                if (v != null) {
-                    LOG.info("Org GUID : " + v.getGuid());
-                    LOG.info("Org Name : " + v.getName());
+        // The series is rebuilt from the stored spans, the days fetched since are added by the refreshes
+        if (config.isAppUsageSeries()) {
+            int[] spans = new int[1];
+            dailyStore.forEach(Kind.APP, AppUsageAccumulator.class, (foundation, orgGuid, span) -> {
+                appUsageSeries.put(foundation, orgGuid, span.getFirst(), span.getLast(), span.getAccumulator());
+                spans[0]++;
+            });
+            LOG.info("Restored the app usage series from {} stored spans of days", spans[0]);
+        }
+    }
 
-                    quarters.stream().forEach(qu -> {
+    /**
+     * Lists the orgs of all foundations concurrently and swaps in each foundation's new list. Usage of orgs that
+     * were deleted since the last discovery is evicted, a foundation that can't be reached keeps its last list.
+     *
+     * @return orgs created since the last discovery, per foundation
+     */
+    public Map<String, List<Organization>> getOrgsByFoundation() {
+        Map<String, List<Organization>> created = new ConcurrentHashMap<>();
+
+        Flux.fromIterable(config.getFoundations())
+                .flatMap(f -> listOrgs(f.getName())
+                        .doOnNext(orgs -> created.put(f.getName(), updateOrgs(f.getName(), orgs)))
+                        .onErrorResume(e -> {
+                            LOG.error("Unable to list orgs of foundation {}", f.getName(), e);
+                            readiness.failed(f.getName(), e);
+                            return Mono.empty();
+                        }))
+                .blockLast();
+
+        return created;
+    }
 
-                        String[] d = qu.split("-Q");
-                        int year = Integer.parseInt(d[0]);
-                        int quarter = Integer.parseInt(d[1]);
+    /**
+     * Discovers orgs created or deleted since the last discovery, and fetches the usage of the created ones.
+     * Foundations that failed to warm up so far are warmed up again.
+     */
+    public void refreshOrgs() {
+        if (isReplaying()) {
+            return;
+        }
+        List<UsagePeriod> quarters = periods.getElapsedQuarters();
 
-                        quarterlySIUsageMap.put(String.format("%s$%s$%s$%s", f.getName(), v.getGuid(), year, quarter),
-                                this.svcUsageByFoundationOrg(f.getName(), v.getGuid(), year, quarter));
-                    });
-                }
-            });
+        getOrgsByFoundation().forEach((foundation, orgs) -> {
+            if (readiness.isFailed(foundation)) {
+                submitRefresh(foundation, () -> warmUp(foundation, quarters));
+            } else if (!orgs.isEmpty()) {
+                submitRefresh(foundation, () -> refreshUsage(foundation, orgs, quarters));
+            }
         });
     }
 
-    public List<Organization> getOrgs(String foundation) {
-        return organizationMap.get(foundation);
+    /**
+     * Refreshes the app and service usage of every foundation, each on its own thread of the refresh executor, and
+     * waits for all of them. A foundation that fails doesn't hold up or fail the others.
+     */
+    public void refreshUsage() {
+        if (isReplaying()) {
+            return;
+        }
+        List<UsagePeriod> quarters = periods.getElapsedQuarters();
+
+        metrics.refresh(() -> {
+            long started = System.nanoTime();
+            CompletableFuture<?>[] runs = config.getFoundations().stream()
+                    .map(f -> submitRefresh(f.getName(), () -> refreshUsage(f.getName(), getOrgs(f.getName()), quarters)))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(runs).join();
+            LOG.info("Refreshed usage of {} foundations in {} ms", runs.length, (System.nanoTime() - started) / 1000000);
+        });
     }
 
-    public OrgUsage appUsage(String foundation, String orgGuid, Date start, Date end) {
-        return generateAppUsage(foundation, orgGuid, dateUtils.converttoyyyyMMdd(start), dateUtils.converttoyyyyMMdd(end));
+    /**
+     * Rebuilds the usage of every foundation from the archive, each on its own thread of the refresh executor, and
+     * waits for all of them. Nothing is fetched, the orgs are those of the latest list archived.
+     */
+    public void replayArchive() {
+        List<UsagePeriod> quarters = periods.getElapsedQuarters();
+
+        long started = System.nanoTime();
+        CompletableFuture<?>[] runs = config.getFoundations().stream()
+                .map(f -> submitRefresh(f.getName(), () -> replayArchive(f.getName(), quarters)))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(runs).join();
+        LOG.info("Replayed usage of {} foundations from the archive in {} ms", runs.length, (System.nanoTime() - started) / 1000000);
     }
 
-    public OrgUsage appUsage(String foundation, String orgGuid, int year, int quarter) {
+    /**
+     * @return whether a refresh or warm-up of the foundation is queued or running
+     */
+    public boolean isRefreshing(String foundation) {
+        return refreshing.contains(foundation);
+    }
 
-        String key = String.format("%s$%s$%s$%s", foundation, orgGuid, year, quarter);
-        if (quarterlyOrgUsageMap.containsKey(key)) {
-            return quarterlyOrgUsageMap.get(key);
-        } else {
-            OrgUsage orgUsage;
-            synchronized (lock) {
-                if (quarterlyOrgUsageMap.containsKey(key)) {
-                    orgUsage = quarterlyOrgUsageMap.get(key);
-                }else{
-                    orgUsage = this.appUsageByFoundationOrg(foundation, orgGuid, year, quarter);
-                    quarterlyOrgUsageMap.put(key, orgUsage);
+    /**
+     * Runs the refresh on the refresh executor, unless one is already queued or running for the foundation
+     *
+     * @return completes when the refresh is done, whether it succeeded or not
+     */
+    private CompletableFuture<Void> submitRefresh(String foundation, Runnable refresh) {
+        if (!refreshing.add(foundation)) {
+            LOG.info("Refresh of foundation {} is still running, skipping", foundation);
+            return CompletableFuture.completedFuture(null);
+        }
+        try {
+            return CompletableFuture.runAsync(() -> {
+                try {
+                    refresh.run();
+                } catch (RuntimeException e) {
+                    LOG.error("Unable to refresh foundation {}", foundation, e);
+                } finally {
+                    refreshing.remove(foundation);
                 }
+            }, refreshExecutor);
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(foundation);
+            LOG.error("Unable to queue refresh of foundation {}", foundation, e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void warmUp(String foundation, List<UsagePeriod> quarters) {
+        readiness.discovering(foundation);
+        try {
+            listOrgs(foundation).doOnNext(orgs -> updateOrgs(foundation, orgs)).block();
+            List<Organization> orgs = getOrgs(foundation);
+            readiness.warming(foundation, orgs.size());
+
+            if (config.isWarmUpOnStartup()) {
+                refreshUsage(foundation, orgs, quarters);
             }
-            return orgUsage;
+            readiness.ready(foundation);
+            LOG.info("Foundation {} is ready after {} ms", foundation, readiness.getWarmUp(foundation).toMillis());
+        } catch (RuntimeException e) {
+            LOG.error("Unable to warm up foundation {}", foundation, e);
+            readiness.failed(foundation, e);
         }
+    }
 
+    private void replayArchive(String foundation, List<UsagePeriod> quarters) {
+        readiness.discovering(foundation);
+        try {
+            updateOrgs(foundation, archivedOrgs(foundation));
+            List<Organization> orgs = getOrgs(foundation);
+            readiness.warming(foundation, orgs.size());
+
+            // Parsing the archived responses is bound by CPU, one org quarter per core at a time
+            AtomicInteger replayed = new AtomicInteger();
+            metrics.refresh(foundation, () -> Flux.fromIterable(orgs)
+                    .flatMap(org -> Flux.fromIterable(quarters)
+                            .flatMap(qu -> Flux.merge(replayAppUsage(foundation, org.getGuid(), qu),
+                                    replaySIUsage(foundation, org.getGuid(), qu)))
+                            .subscribeOn(Schedulers.parallel()), Schedulers.DEFAULT_POOL_SIZE)
+                    .doOnNext(usage -> replayed.incrementAndGet())
+                    .blockLast());
+
+            readiness.ready(foundation);
+            LOG.info("Replayed {} org quarters of foundation {} from the archive in {} ms", replayed.get(), foundation,
+                    readiness.getWarmUp(foundation).toMillis());
+        } catch (RuntimeException e) {
+            LOG.error("Unable to replay foundation {} from the archive", foundation, e);
+            readiness.failed(foundation, e);
+        }
     }
 
-    private OrgUsage appUsageByFoundationOrg(String foundation, String orgGuid, int year, int quarter) {
-        int currentQuarter = dateUtils.getQuarter(year, dateUtils.getCurrentDate());
-        if (currentQuarter == quarter) {
-            return generateAppUsage(foundation, orgGuid, year + "-" + START_DATES[quarter - 1], dateUtils.converttoyyyyMMdd(dateUtils.getCurrentDate()));
-        } else {
-            return generateAppUsage(foundation, orgGuid, year + "-" + START_DATES[quarter - 1], year + "-" + END_DATES[quarter - 1]);
+    /**
+     * @return orgs of the latest list archived, or of the usage archived when no list is
+     */
+    private List<Organization> archivedOrgs(String foundation) {
+        UsageArchive.Entry latest = archive.getLatest(UsageArchive.Type.ORGS, foundation, null);
+        if (latest == null) {
+            return archive.getOrgGuids(UsageArchive.Type.APP, foundation).stream()
+                    .map(guid -> Organization.builder().guid(guid).name(guid).build())
+                    .collect(Collectors.toList());
+        }
+        byte[] json = archive.read(latest).reduce(new byte[0], (bytes, chunk) -> {
+            byte[] joined = Arrays.copyOf(bytes, bytes.length + chunk.length);
+            System.arraycopy(chunk, 0, joined, bytes.length, chunk.length);
+            return joined;
+        }).block();
+        try {
+            Map<String, String> names = MAPPER.readValue(json, new TypeReference<LinkedHashMap<String, String>>() {
+            });
+            return names.entrySet().stream()
+                    .map(org -> Organization.builder().guid(org.getKey()).name(org.getValue()).build())
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable org list archived for foundation " + foundation, e);
         }
     }
 
-    private OrgUsage generateAppUsage(String foundation, String orgGuid, String start, String end) {
+    private boolean isReplaying() {
+        if (config.isArchiveReplay()) {
+            LOG.info("Usage is replayed from the archive, skipping refresh");
+        }
+        return config.isArchiveReplay();
+    }
 
-        String result = callAppUsageApi(foundation, orgGuid, start, end).getBody();
+    private Mono<List<Organization>> listOrgs(String foundation) {
+        CloudFoundryOperations operations = config.getOperations(foundation);
+        return operations.organizations().list().filter(organizationSummary -> !config.getExcludedOrgs().contains(organizationSummary.getName()))
+                .map(organizationSummary -> Organization.builder().guid(organizationSummary.getId()).name(organizationSummary.getName()).build()).collectList();
+    }
 
-        if(LOG.isDebugEnabled()){
-            LOG.debug("JSON Response: " + result);
+    /**
+     * @return orgs that are new since the last discovery, none on the first discovery of the foundation
+     */
+    private List<Organization> updateOrgs(String foundation, List<Organization> orgs) {
+        List<Organization> previous = organizationMap.put(foundation, Collections.unmodifiableList(orgs));
+
+        Set<String> orgGuids = orgs.stream().map(Organization::getGuid).collect(Collectors.toSet());
+        if (previous == null) {
+            // Snapshots restored at startup may still hold orgs deleted while the dashboard was down
+            retainOrgs(foundation, orgGuids);
+            LOG.info("Discovered {} orgs in foundation {}", orgs.size(), foundation);
+            archiveOrgs(foundation, orgs);
+            return Collections.emptyList();
         }
 
-        int year = dateUtils.getYear();
-        int quarter = dateUtils.getQuarter(year, dateUtils.getDayStart(start));
+        Set<String> previousGuids = previous.stream().map(Organization::getGuid).collect(Collectors.toSet());
+        List<Organization> created = orgs.stream().filter(o -> !previousGuids.contains(o.getGuid())).collect(Collectors.toList());
+        boolean deleted = previousGuids.stream().anyMatch(guid -> !orgGuids.contains(guid));
+        if (deleted) {
+            retainOrgs(foundation, orgGuids);
+        }
+        if (deleted || !created.isEmpty()) {
+            LOG.info("Discovered {} new orgs in foundation {}, {} orgs in total", created.size(), foundation, orgs.size());
+            archiveOrgs(foundation, orgs);
+        }
+        return created;
+    }
+
+    /**
+     * Evicts the cached usage of the foundation's orgs that are not in orgGuids anymore
+     */
+    private void retainOrgs(String foundation, Set<String> orgGuids) {
+        for (Cache<String, ?> cache : Arrays.asList(appUsageCache, siUsageCache)) {
+            List<String> deleted = cache.asMap().keySet().stream().filter(key -> {
+                String[] k = key.split("\\$");
+                return k[0].equals(foundation) && !orgGuids.contains(k[1]);
+            }).collect(Collectors.toList());
+            if (!deleted.isEmpty()) {
+                cache.invalidateAll(deleted);
+                LOG.info("Evicted {} cached quarters of deleted orgs in foundation {}", deleted.size(), foundation);
+            }
+        }
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        AppUsage appUsage = null;
+    /**
+     * Archives the org list, so a replay knows the orgs and their names
+     */
+    private void archiveOrgs(String foundation, List<Organization> orgs) {
+        if (archive == null || !archive.isEnabled() || config.isArchiveReplay()) {
+            return;
+        }
+        Map<String, String> names = new LinkedHashMap<>();
+        orgs.forEach(org -> names.put(org.getGuid(), org.getName()));
         try {
-            appUsage = objectMapper.readValue(result, AppUsage.class);
-        } catch (JsonParseException | JsonMappingException jme) {
-            LOG.error("Encountered exception response to AppUsage", jme.getMessage());
-        } catch (IOException e) {
-            LOG.error("Encountered IO exception response to AppUsage", e);
+            LocalDate today = periods.today();
+            archive.append(UsageArchive.Type.ORGS, foundation, null, today, today, MAPPER.writeValueAsBytes(names));
+        } catch (JsonProcessingException e) {
+            LOG.warn("Unable to archive orgs of foundation {}", foundation, e);
         }
+    }
 
-        OrgUsage orgUsage = OrgUsage.builder().orgGuid(orgGuid).year(year).quarter(quarter).build();
+    /**
+     * Fetches the stale app and service usage of each org and quarter in one pass over the orgs
+     */
+    private void refreshUsage(String foundation, List<Organization> orgList, List<UsagePeriod> quarters) {
 
-        //Space calculations
-        Map<String, List<AppUsage_>> spaceMap = appUsage.getAppUsages().stream().collect(Collectors.groupingBy(AppUsage_::getSpaceGuid));
-        Map<String, SpaceUsage> spaceUsageMap = new HashMap<>();
-        Map<String, AUsage> aUsageMap = new HashMap<>();
-        spaceMap.forEach((k, v) -> {
+        Flux<Mono<Boolean>> fetches = Flux.fromIterable(orgList).filter(Objects::nonNull).concatMap(v -> {
+            LOG.info("Org GUID : " + v.getGuid());
+            LOG.info("Org Name : " + v.getName());
 
-            if (v != null && v.size() > 0) {
-                final SpaceUsage su = SpaceUsage.builder().build();
-                su.setSpaceGuid(k);
-                su.setSpaceName(v.get(0).getSpaceName());
-                su.setTotalApps(UsageUtils.getUniqueApps(v).size());
-                su.setAiDurationInSecs(UsageUtils.computeTotalDurationInSecs(v, dateUtils.getNoOfDaysElapsed(start, end)));
+            return Flux.fromIterable(quarters).concatMap(qu -> Flux.just(
+                    refreshAppUsage(foundation, v.getGuid(), qu), refreshSIUsage(foundation, v.getGuid(), qu)));
+        });
 
+        runFetches(foundation, fetches);
+    }
 
-                Map<String, List<AppUsage_>> appMap = v.stream().collect(Collectors.groupingBy(AppUsage_::getAppName));
-                appMap.forEach((ak, av) -> {
+    /**
+     * Fetches again the org quarters that failed in earlier refreshes
+     */
+    public void retryFailedFetches() {
+        if (isReplaying()) {
+            return;
+        }
+        fetchFailures.getRetryableByFoundation().forEach((foundation, failures) -> submitRefresh(foundation, () -> {
+            Flux<Mono<Boolean>> fetches = Flux.fromIterable(failures).map(f -> {
+                UsagePeriod quarter = periods.quarter(f.getYear(), f.getQuarter());
+                return f.getKind() == Kind.APP ? refreshAppUsage(foundation, f.getOrgGuid(), quarter)
+                        : refreshSIUsage(foundation, f.getOrgGuid(), quarter);
+            });
+            runFetches(foundation, fetches);
+        }));
+    }
 
-                    if (av != null && av.size() > 0) {
-                        final AUsage a = AUsage.builder().build();
-                        a.setSpaceGuid(su.getSpaceGuid());
-                        a.setSpaceName(su.getSpaceName());
-                        a.setAppGuid(av.get(0).getAppGuid());
-                        a.setAppName(av.get(0).getAppName());
-                        a.setTotalMbPerAis(UsageUtils.computeTotalMbPerAis(av));
-                        a.setAiDurationInSecs(UsageUtils.computeTotalDurationInSecs(av, dateUtils.getNoOfDaysElapsed(start, end)));
+    public FetchFailures getFetchFailures() {
+        return fetchFailures;
+    }
 
-                        su.computeTotalMbPerAis(a.getTotalMbPerAis(), a.getAiDurationInSecs());
+    /**
+     * Runs the fetches of a foundation to the end, the usage that fails is left out and recorded in fetchFailures
+     */
+    private void runFetches(String foundation, Flux<Mono<Boolean>> fetches) {
+        AtomicInteger fetched = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        // Fans out org x quarter requests, the client's limiter holds those over the foundation's current limit
+        metrics.refresh(foundation, () -> Flux.merge(fetches, config.getMaxFetchConcurrency(foundation))
+                .doOnNext(ok -> (ok ? fetched : failed).incrementAndGet())
+                .blockLast());
+
+        if (failed.get() > 0) {
+            LOG.warn("Refreshed foundation {} partially, fetched {} org quarters, {} failed and are retried later",
+                    foundation, fetched.get(), failed.get());
+        } else {
+            LOG.info("Refreshed foundation {}, fetched {} org quarters", foundation, fetched.get());
+        }
+    }
+
+    /**
+     * @return whether the usage was fetched, or nothing when it is up to date
+     */
+    private Mono<Boolean> refreshAppUsage(String foundation, String orgGuid, UsagePeriod quarter) {
+        int year = quarter.getYear();
+        int number = quarter.getNumber();
+        return Mono.defer(() -> {
+            if (!snapshotStore.isStale(Kind.APP, key(foundation, orgGuid, year, number))) {
+                return Mono.empty();
+            }
+            return this.appUsageByFoundationOrg(foundation, orgGuid, year, number)
+                    .doOnNext(orgUsage -> putAppUsage(foundation, orgGuid, year, number, orgUsage))
+                    .then(Mono.fromCallable(() -> {
+                        fetchFailures.fetched(Kind.APP, foundation, orgGuid, year, number);
+                        return true;
+                    }))
+                    .onErrorResume(e -> {
+                        LOG.error("Unable to fetch app usage of org {} in foundation {} for {}", orgGuid, foundation, quarter, e);
+                        fetchFailures.failed(Kind.APP, foundation, orgGuid, year, number, Exceptions.unwrap(e));
+                        return Mono.just(false);
+                    });
+        });
+    }
 
-                        aUsageMap.put(ak + "-" + su.getSpaceName(), a);
-                    }
-                });
-                spaceUsageMap.put(k, su);
+    /**
+     * @return whether the usage was fetched, or nothing when it is up to date
+     */
+    private Mono<Boolean> refreshSIUsage(String foundation, String orgGuid, UsagePeriod quarter) {
+        int year = quarter.getYear();
+        int number = quarter.getNumber();
+        return Mono.defer(() -> {
+            if (!snapshotStore.isStale(Kind.SVC, key(foundation, orgGuid, year, number))) {
+                return Mono.empty();
             }
+            return this.svcUsageByFoundationOrg(foundation, orgGuid, year, number)
+                    .doOnNext(siUsage -> putSIUsage(foundation, orgGuid, year, number, siUsage))
+                    .then(Mono.fromCallable(() -> {
+                        fetchFailures.fetched(Kind.SVC, foundation, orgGuid, year, number);
+                        return true;
+                    }))
+                    .onErrorResume(e -> {
+                        LOG.error("Unable to fetch service usage of org {} in foundation {} for {}", orgGuid, foundation, quarter, e);
+                        fetchFailures.failed(Kind.SVC, foundation, orgGuid, year, number, Exceptions.unwrap(e));
+                        return Mono.just(false);
+                    });
         });
-        orgUsage.setAUsage(aUsageMap);
-        orgUsage.setSpaceUsage(spaceUsageMap);
-        return orgUsage;
     }
 
-    public SIUsage svcUsage(String foundation, String orgGuid, Date start, Date end) {
-        return generateSvcUsage(foundation, orgGuid, dateUtils.converttoyyyyMMdd(start), dateUtils.converttoyyyyMMdd(end));
+    private Mono<OrgUsage> replayAppUsage(String foundation, String orgGuid, UsagePeriod quarter) {
+        int year = quarter.getYear();
+        int number = quarter.getNumber();
+        return appReplay.quarter(foundation, orgGuid, key(foundation, orgGuid, year, number), quarter.getStart(), quarter.getEnd())
+                .map(usage -> metrics.aggregate(foundation, UsageMetrics.APP, () -> usage.getT1().toOrgUsage(orgGuid,
+                        year, number, PeriodCalendar.daysBetween(quarter.getStart(), usage.getT2()))))
+                .doOnNext(orgUsage -> putAppUsage(foundation, orgGuid, year, number, orgUsage));
     }
 
-    public SIUsage svcUsage(String foundation, String orgGuid, int year, int quarter) {
+    private Mono<SIUsage> replaySIUsage(String foundation, String orgGuid, UsagePeriod quarter) {
+        int year = quarter.getYear();
+        int number = quarter.getNumber();
+        return svcReplay.quarter(foundation, orgGuid, key(foundation, orgGuid, year, number), quarter.getStart(), quarter.getEnd())
+                .map(usage -> metrics.aggregate(foundation, UsageMetrics.SVC, () -> usage.getT1().toSIUsage(orgGuid,
+                        year, number, PeriodCalendar.daysBetween(quarter.getStart(), usage.getT2()))))
+                .doOnNext(siUsage -> putSIUsage(foundation, orgGuid, year, number, siUsage));
+    }
 
-        String key = String.format("%s$%s$%s$%s", foundation, orgGuid, year, quarter);
-        if (quarterlySIUsageMap.containsKey(key)) {
-            return quarterlySIUsageMap.get(key);
-        } else {
-            SIUsage siUsage;
-            synchronized (lock) {
-                if (quarterlySIUsageMap.containsKey(key)) {
-                    siUsage = quarterlySIUsageMap.get(key);
-                }else{
-                    siUsage = this.svcUsageByFoundationOrg(foundation, orgGuid, year, quarter);
-                    quarterlySIUsageMap.put(key, siUsage);
-                }
+    private void putAppUsage(String foundation, String orgGuid, int year, int quarter, OrgUsage orgUsage) {
+        String key = key(foundation, orgGuid, year, quarter);
+        appUsageCache.put(key, orgUsage);
+        snapshotStore.saveAppUsage(key, foundation, orgGuid, year, quarter, orgUsage);
+    }
+
+    private void putSIUsage(String foundation, String orgGuid, int year, int quarter, SIUsage siUsage) {
+        String key = key(foundation, orgGuid, year, quarter);
+        siUsageCache.put(key, siUsage);
+        snapshotStore.saveSIUsage(key, foundation, orgGuid, year, quarter, siUsage);
+    }
+
+    /**
+     * The same year and quarter cover other days under another fiscal year start month, so it is part of the key
+     */
+    private String key(String foundation, String orgGuid, int year, int quarter) {
+        return String.format("%s$%s$%s$%s$%s", foundation, orgGuid, year, quarter, periods.getFiscalYearStartMonth());
+    }
+
+    public Cache<String, OrgUsage> getAppUsageCache() {
+        return appUsageCache;
+    }
+
+    public Cache<String, SIUsage> getSIUsageCache() {
+        return siUsageCache;
+    }
+
+    public List<Organization> getOrgs(String foundation) {
+        return organizationMap.getOrDefault(foundation, Collections.emptyList());
+    }
+
+    public OrgUsage appUsage(String foundation, String orgGuid, LocalDate start, LocalDate end) {
+        return generateAppUsage(foundation, orgGuid, start, end).block();
+    }
+
+    /**
+     * Fetches the usage of all orgs concurrently, bounded by the foundation's fetch concurrency
+     *
+     * @return usage of each org, in the order of orgs
+     */
+    public Flux<OrgUsage> appUsage(String foundation, List<Organization> orgs, LocalDate start, LocalDate end) {
+        return Flux.fromIterable(orgs)
+                .flatMapSequential(org -> generateAppUsage(foundation, org.getGuid(), start, end), config.getFetchConcurrency(foundation));
+    }
+
+    /**
+     * Fetches the days of the range that haven't been fetched yet like {@link #appUsage(String, List, LocalDate, LocalDate)},
+     * then reads the usage of every app per day from the per app, per day series
+     *
+     * @return usage of the apps of each org, by space and app name, in the order of orgs
+     */
+    public Flux<List<DailyAppUsage>> dailyAppUsage(String foundation, List<Organization> orgs, LocalDate start, LocalDate end) {
+        if (!config.isAppUsageSeries()) {
+            return Flux.error(new IllegalStateException("The app usage series is disabled"));
+        }
+        return Flux.fromIterable(orgs)
+                .flatMapSequential(org -> generateAppUsage(foundation, org.getGuid(), start, end)
+                        .map(u -> dailyAppUsage(foundation, org.getGuid(), start, end)), config.getFetchConcurrency(foundation));
+    }
+
+    private List<DailyAppUsage> dailyAppUsage(String foundation, String orgGuid, LocalDate start, LocalDate end) {
+        Map<String, double[]> instanceSeconds = appUsageSeries.daily(AppUsageSeries.GroupBy.APP,
+                AppUsageSeries.Metric.INSTANCE_SECONDS, foundation, orgGuid, start, end);
+        Map<String, double[]> mbSeconds = appUsageSeries.daily(AppUsageSeries.GroupBy.APP,
+                AppUsageSeries.Metric.MB_SECONDS, foundation, orgGuid, start, end);
+
+        List<DailyAppUsage> usage = new ArrayList<>(instanceSeconds.size());
+        instanceSeconds.forEach((appGuid, seconds) -> {
+            double[] mb = mbSeconds.get(appGuid);
+            double[] aiCount = new double[seconds.length];
+            double[] gbPerAi = new double[seconds.length];
+            for (int day = 0; day < seconds.length; day++) {
+                aiCount[day] = seconds[day] / 86400;
+                gbPerAi[day] = seconds[day] == 0.0 || mb == null ? 0.0 : mb[day] / seconds[day] / 1024;
             }
-            return siUsage;
+            usage.add(DailyAppUsage.builder()
+                    .appGuid(appGuid)
+                    .appName(appUsageSeries.getAppName(appGuid))
+                    .spaceName(appUsageSeries.getSpaceName(appGuid))
+                    .aiCount(aiCount)
+                    .gbPerAi(gbPerAi)
+                    .build());
+        });
+        usage.sort(Comparator.comparing(DailyAppUsage::getSpaceName, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(DailyAppUsage::getAppName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return usage;
+    }
+
+    public OrgUsage appUsage(String foundation, String orgGuid, int year, int quarter) {
+
+        String key = key(foundation, orgGuid, year, quarter);
+        OrgUsage orgUsage = appUsageCache.getIfPresent(key);
+        if (orgUsage != null) {
+            return orgUsage;
         }
 
+        // Concurrent misses on the same key share one fetch, misses on other keys don't wait for it
+        return appUsageFlights.execute(key, () -> {
+            // Another flight may have filled it since the miss, which was already counted, the map view doesn't count
+            OrgUsage cached = appUsageCache.asMap().get(key);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return this.appUsageByFoundationOrg(foundation, orgGuid, year, quarter)
+                    .doOnNext(u -> putAppUsage(foundation, orgGuid, year, quarter, u));
+        }).block();
     }
 
-    private SIUsage svcUsageByFoundationOrg(String foundation, String orgGuid, int year, int quarter) {
-        int currentQuarter = dateUtils.getQuarter(year, dateUtils.getCurrentDate());
-        if (currentQuarter == quarter) {
-            return generateSvcUsage(foundation, orgGuid, year + "-" + START_DATES[quarter - 1], dateUtils.converttoyyyyMMdd(dateUtils.getCurrentDate()));
-        } else {
-            return generateSvcUsage(foundation, orgGuid, year + "-" + START_DATES[quarter - 1], year + "-" + END_DATES[quarter - 1]);
+    private Mono<OrgUsage> appUsageByFoundationOrg(String foundation, String orgGuid, int year, int quarter) {
+        UsagePeriod period = periods.quarter(year, quarter);
+        LocalDate start = period.getStart();
+        LocalDate end = periods.endOrToday(period);
+        if (!config.isIncrementalRefresh()) {
+            return generateAppUsage(foundation, orgGuid, start, end);
         }
+
+        long days = PeriodCalendar.daysBetween(start, end);
+
+        String key = key(foundation, orgGuid, year, quarter);
+        return appAccumulation.quarter(foundation, orgGuid, key, start, end)
+                .map(accumulator -> metrics.aggregate(foundation, UsageMetrics.APP,
+                        () -> accumulator.toOrgUsage(orgGuid, year, quarter, days)));
     }
 
+    private Mono<OrgUsage> generateAppUsage(String foundation, String orgGuid, LocalDate start, LocalDate end) {
 
-    public SIUsage generateSvcUsage(String foundation, String orgGuid, String start, String end) {
+        UsagePeriod quarter = periods.quarterOf(start);
+        long days = PeriodCalendar.daysBetween(start, end);
 
-        String result = callSvcUsageApi(foundation, orgGuid, start, end).getBody();
+        Mono<AppUsageAccumulator> usage = config.isDailyBuckets()
+                ? appAccumulation.range(foundation, orgGuid, start, end)
+                : fetchAppUsage(foundation, orgGuid, start.toString(), end.toString());
+        return usage.map(accumulator -> metrics.aggregate(foundation, UsageMetrics.APP,
+                () -> accumulator.toOrgUsage(orgGuid, quarter.getYear(), quarter.getNumber(), days)));
+    }
 
-        if(LOG.isDebugEnabled()){
-            LOG.debug("JSON Response: " + result);
-        }
+    /**
+     * Retries a fetch that failed because the foundation was overloaded or unreachable, but not while its circuit is
+     * open, nor one whose response couldn't be read
+     */
+    private <T> Mono<T> retrying(Mono<T> fetch) {
+        return Retries.withBackoff(fetch, config.getFetchRetries(), config.getFetchRetryBackoff(),
+                config.getFetchRetryMaxBackoff(), e -> !(e instanceof CircuitOpenException) && UsageClient.isOverload(e));
+    }
 
-        int year = dateUtils.getYear();
-        int quarter = dateUtils.getQuarter(year, dateUtils.getDayStart(start));
+    private Mono<AppUsageAccumulator> fetchAppUsage(String foundation, String orgGuid, String start, String end) {
+        return retrying(Mono.defer(() -> {
+            AppUsageAccumulator accumulator = new AppUsageAccumulator();
+            AppUsageRecordReader reader = new AppUsageRecordReader(accumulator);
+
+            return read(foundation, orgGuid, UsageMetrics.APP, callAppUsageApi(foundation, orgGuid, start, end), reader)
+                    .then(Mono.fromCallable(() -> {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Read {} app usage records for org {}", reader.getRecords(), orgGuid);
+                        }
+                        putAppUsageSeries(foundation, orgGuid, LocalDate.parse(start), LocalDate.parse(end), accumulator);
+                        return accumulator;
+                    }));
+        }));
+    }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        ServiceUsage serviceUsage = null;
-        try {
-            serviceUsage = objectMapper.readValue(result, ServiceUsage.class);
-        } catch (JsonParseException | JsonMappingException jme) {
-            LOG.error("Encountered exception response to ServiceUsage", jme.getMessage());
-        } catch (IOException e) {
-            LOG.error("Encountered IO exception response to ServiceUsage ", e);
+    /**
+     * Reads an archived app_usages response like {@link #fetchAppUsage} reads a fetched one
+     */
+    private Mono<AppUsageAccumulator> readArchivedAppUsage(UsageArchive.Entry entry) {
+        return Mono.defer(() -> {
+            AppUsageAccumulator accumulator = new AppUsageAccumulator();
+            return replay(entry, new AppUsageRecordReader(accumulator)).then(Mono.fromCallable(() -> {
+                putAppUsageSeries(entry.getFoundation(), entry.getOrgGuid(), entry.getStart(), entry.getEnd(), accumulator);
+                return accumulator;
+            }));
+        });
+    }
+
+    /**
+     * Every span of days read also feeds the per app, per day series
+     */
+    private void putAppUsageSeries(String foundation, String orgGuid, LocalDate first, LocalDate last, AppUsageAccumulator usage) {
+        if (config.isAppUsageSeries()) {
+            appUsageSeries.put(foundation, orgGuid, first, last, usage);
         }
+    }
 
-        SIUsage siUsage = SIUsage.builder().orgGuid(orgGuid).year(year).quarter(quarter).build();
+    private Mono<ServiceUsageAccumulator> readArchivedSvcUsage(UsageArchive.Entry entry) {
+        return Mono.defer(() -> {
+            ServiceUsageAccumulator accumulator = new ServiceUsageAccumulator(config.getIncludedServices());
+            return replay(entry, new ServiceUsageRecordReader(accumulator)).thenReturn(accumulator);
+        });
+    }
 
-        //Service instances per space calculation
-        Map<String, List<ServiceUsage_>> siSpaceMap = serviceUsage.getServiceUsages().stream()
-                .filter(su -> config.getIncludedServices().contains(su.getServiceName()))
-                .collect(Collectors.groupingBy(ServiceUsage_::getSpaceGuid));
-        Map<String, SISpaceUsage> siSpaceUsageMap = new HashMap<>();
-        Map<String, ServiceInstanceUsage> serviceInstanceUsageMap = new HashMap<>();
+    public SIUsage svcUsage(String foundation, String orgGuid, LocalDate start, LocalDate end) {
+        return generateSvcUsage(foundation, orgGuid, start, end).block();
+    }
 
-        siSpaceMap.forEach((k, v) -> {
+    /**
+     * Fetches the usage of all orgs concurrently, bounded by the foundation's fetch concurrency
+     *
+     * @return usage of each org, in the order of orgs
+     */
+    public Flux<SIUsage> svcUsage(String foundation, List<Organization> orgs, LocalDate start, LocalDate end) {
+        return Flux.fromIterable(orgs)
+                .flatMapSequential(org -> generateSvcUsage(foundation, org.getGuid(), start, end), config.getFetchConcurrency(foundation));
+    }
 
-            if (v != null && v.size() > 0) {
+    public SIUsage svcUsage(String foundation, String orgGuid, int year, int quarter) {
 
-                if (LOG.isDebugEnabled()) {
-                    v.stream().forEach(uu -> {
-                        LOG.debug(uu.toString());
-                    });
-                }
+        String key = key(foundation, orgGuid, year, quarter);
+        SIUsage siUsage = siUsageCache.getIfPresent(key);
+        if (siUsage != null) {
+            return siUsage;
+        }
 
-                final SISpaceUsage su = SISpaceUsage.builder().build();
-                su.setSpaceGuid(k);
-                su.setSpaceName(v.get(0).getSpaceName());
-                su.setTotalSis(v.size());
-                su.setTotalSvcs(UsageUtils.getUniqueServices(v).size());
-                su.setSiDurationInSecs(UsageUtils.computeTotalSIDurationInSecs(v, dateUtils.getNoOfDaysElapsed(start, end)));
-                siSpaceUsageMap.put(k, su);
+        // Concurrent misses on the same key share one fetch, misses on other keys don't wait for it
+        return siUsageFlights.execute(key, () -> {
+            // Another flight may have filled it since the miss, which was already counted, the map view doesn't count
+            SIUsage cached = siUsageCache.asMap().get(key);
+            if (cached != null) {
+                return Mono.just(cached);
             }
+            return this.svcUsageByFoundationOrg(foundation, orgGuid, year, quarter)
+                    .doOnNext(u -> putSIUsage(foundation, orgGuid, year, quarter, u));
+        }).block();
+    }
 
-        });
+    private Mono<SIUsage> svcUsageByFoundationOrg(String foundation, String orgGuid, int year, int quarter) {
+        UsagePeriod period = periods.quarter(year, quarter);
+        LocalDate start = period.getStart();
+        LocalDate end = periods.endOrToday(period);
+        if (!config.isIncrementalRefresh()) {
+            return generateSvcUsage(foundation, orgGuid, start, end);
+        }
 
-        siSpaceMap.forEach((k, v) -> {
+        long days = PeriodCalendar.daysBetween(start, end);
 
-            if (v != null && v.size() > 0) {
+        String key = key(foundation, orgGuid, year, quarter);
+        return svcAccumulation.quarter(foundation, orgGuid, key, start, end)
+                .map(accumulator -> metrics.aggregate(foundation, UsageMetrics.SVC,
+                        () -> accumulator.toSIUsage(orgGuid, year, quarter, days)));
+    }
 
-                v.stream().forEach((sv) -> {
 
-                    final ServiceInstanceUsage su = ServiceInstanceUsage.builder().build();
-                    su.setSpaceName(sv.getSpaceName());
-                    su.setDurationInSecs(sv.getDurationInSeconds() / (86400 * dateUtils.getNoOfDaysElapsed(start, end)));
-                    su.setServiceInstanceName(sv.getServiceInstanceName());
-                    su.setServiceName(sv.getServiceName());
-                    serviceInstanceUsageMap.put(sv.getServiceInstanceGuid(), su);
+    public Mono<SIUsage> generateSvcUsage(String foundation, String orgGuid, LocalDate start, LocalDate end) {
 
-                });
-            }
+        UsagePeriod quarter = periods.quarterOf(start);
+        long days = PeriodCalendar.daysBetween(start, end);
+
+        Mono<ServiceUsageAccumulator> usage = config.isDailyBuckets()
+                ? svcAccumulation.range(foundation, orgGuid, start, end)
+                : fetchSvcUsage(foundation, orgGuid, start.toString(), end.toString());
+        return usage.map(accumulator -> metrics.aggregate(foundation, UsageMetrics.SVC,
+                () -> accumulator.toSIUsage(orgGuid, quarter.getYear(), quarter.getNumber(), days)));
+    }
+
+    private Mono<ServiceUsageAccumulator> fetchSvcUsage(String foundation, String orgGuid, String start, String end) {
+        return retrying(Mono.defer(() -> {
+            ServiceUsageAccumulator accumulator = new ServiceUsageAccumulator(config.getIncludedServices());
+            ServiceUsageRecordReader reader = new ServiceUsageRecordReader(accumulator);
+
+            return read(foundation, orgGuid, UsageMetrics.SVC, callSvcUsageApi(foundation, orgGuid, start, end), reader)
+                    .then(Mono.fromCallable(() -> {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Read {} service usage records for org {}", reader.getRecords(), orgGuid);
+                        }
+                        return accumulator;
+                    }));
+        }));
+    }
 
+    /**
+     * Feeds the response to the reader chunk by chunk, and records its latency, size, records and parse time
+     */
+    private Mono<Void> read(String foundation, String orgGuid, String kind, Flux<byte[]> response, UsageRecordReader reader) {
+        return Mono.defer(() -> {
+            long started = System.nanoTime();
+            long[] bytes = new long[1];
+            long[] parseNanos = new long[1];
+
+            return response
+                    .publishOn(Schedulers.parallel())
+                    .doOnNext(chunk -> {
+                        long parseStarted = System.nanoTime();
+                        feed(reader, chunk);
+                        bytes[0] += chunk.length;
+                        parseNanos[0] += System.nanoTime() - parseStarted;
+                    })
+                    .then(Mono.fromRunnable(() -> {
+                        long parseStarted = System.nanoTime();
+                        endOfInput(reader);
+                        parseNanos[0] += System.nanoTime() - parseStarted;
+                        metrics.fetched(foundation, orgGuid, kind, true, System.nanoTime() - started, bytes[0],
+                                reader.getRecords(), parseNanos[0]);
+                    }))
+                    .doOnError(e -> metrics.fetched(foundation, orgGuid, kind, false, System.nanoTime() - started,
+                            bytes[0], reader.getRecords(), parseNanos[0]))
+                    .then();
         });
+    }
+
+    private Mono<Void> replay(UsageArchive.Entry entry, UsageRecordReader reader) {
+        return archive.read(entry)
+                .doOnNext(chunk -> feed(reader, chunk))
+                .then(Mono.fromRunnable(() -> endOfInput(reader)));
+    }
+
+    private void feed(UsageRecordReader reader, byte[] chunk) {
+        try {
+            reader.feed(chunk);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
 
-        siUsage.setServiceInstanceUsage(serviceInstanceUsageMap);
-        siUsage.setSiSpaceUsage(siSpaceUsageMap);
-        return siUsage;
+    private void endOfInput(UsageRecordReader reader) {
+        try {
+            reader.endOfInput();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
     }
 
     /**
@@ -332,22 +882,11 @@ public class UsageService {
      * @return
      */
 
-    private ResponseEntity<String> callAppUsageApi(String foundation, String orgGuid, String start, String end) {
-
-        String uri = String.format("%s/organizations/%s/app_usages?start=%s&end=%s",
-                config.getAppUsageBaseUrl(foundation), orgGuid, start, end);
-        LOG.info(uri);
-
-        RestTemplate restTemplate = new RestTemplate();
-
-        // Sets Authorization token as header needed for CF API calls
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", config.getFoundationToken(foundation));
-
-        HttpEntity<String> entity = new HttpEntity<String>("parameters", headers);
-        ResponseEntity<String> result = restTemplate.exchange(uri, HttpMethod.GET, entity, String.class);
-
-        return result;
+    private Flux<byte[]> callAppUsageApi(String foundation, String orgGuid, String start, String end) {
+        if (config.isArchiveReplay()) {
+            return Flux.error(new IllegalStateException("Usage is replayed from the archive, it isn't fetched"));
+        }
+        return usageClient.appUsages(foundation, orgGuid, start, end);
     }
 
     /**
@@ -358,22 +897,35 @@ public class UsageService {
      * @return
      */
 
-    private ResponseEntity<String> callSvcUsageApi(String foundation, String orgGuid, String start, String end) {
-
-        String uri = String.format("%s/organizations/%s/service_usages?start=%s&end=%s",
-                config.getAppUsageBaseUrl(foundation), orgGuid, start, end);
-        LOG.info(uri);
+    private Flux<byte[]> callSvcUsageApi(String foundation, String orgGuid, String start, String end) {
+        if (config.isArchiveReplay()) {
+            return Flux.error(new IllegalStateException("Usage is replayed from the archive, it isn't fetched"));
+        }
+        return usageClient.svcUsages(foundation, orgGuid, start, end);
+    }
 
-        RestTemplate restTemplate = new RestTemplate();
+    /**
+     * Usage of a closed quarter doesn't change anymore and is kept until it is evicted for weight or its org is
+     * deleted. Usage of the open quarter expires after openQuarterTtl, so the next lookup picks up the days added since.
+     */
+    private class QuarterExpiry<V> implements Expiry<String, V> {
 
-        // Sets Authorization token as header needed for CF API calls
-        HttpHeaders headers = new HttpHeaders();
-        headers.set("Authorization", config.getFoundationToken(foundation));
+        @Override
+        public long expireAfterCreate(String key, V value, long currentTime) {
+            String[] k = key.split("\\$");
+            boolean closed = periods.isClosed(periods.quarter(Integer.parseInt(k[2]), Integer.parseInt(k[3])));
+            return closed ? Long.MAX_VALUE : openQuarterTtl.toNanos();
+        }
 
-        HttpEntity<String> entity = new HttpEntity<String>("parameters", headers);
-        ResponseEntity<String> result = restTemplate.exchange(uri, HttpMethod.GET, entity, String.class);
+        @Override
+        public long expireAfterUpdate(String key, V value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
 
-        return result;
+        @Override
+        public long expireAfterRead(String key, V value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 
 }
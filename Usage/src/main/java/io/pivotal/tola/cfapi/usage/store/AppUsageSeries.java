@@ -0,0 +1,376 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import org.springframework.stereotype.Component;
+
+/**
+ * AppUsageSeries - in-process columnar store of per app, per day usage.
+ * <p>
+ * Every app is registered once with its org, space and names, interned like the identifiers of the usage models, and
+ * is given a dense index that the chunks store in place of the app. Days are grouped in chunks of CHUNK_DAYS consecutive days,
+ * each holding one primitive column per metric with the days of an app next to each other, so range sums and
+ * group-bys are sequential scans over double arrays. A chunk has slots only for the apps with usage in its days,
+ * apps deleted before it or created after it cost nothing there, an app with usage costs 16 bytes per day.
+ * <p>
+ * Fed with the usage of every span of days fetched, replayed or restored from the stored spans. The app-usage
+ * service reports a span in one record per app configuration, so its usage is spread evenly over its days: a quarter's
+ * first fetch gives each of its days the quarter's daily average, the days fetched one by one after it are exact.
+ * Days stored again replace what was stored for them.
+ */
+@Component
+public class AppUsageSeries {
+
+    public enum Metric {
+        // App instance seconds, AI count times 86400 per day
+        INSTANCE_SECONDS,
+        // Memory of the instances times their seconds, GB per AI times 86400 * 1024 per day
+        MB_SECONDS
+    }
+
+    public enum GroupBy {
+        APP, SPACE, ORG
+    }
+
+    static final int CHUNK_DAYS = 32;
+
+    // Apps by GUID, and by index
+    private final Map<String, App> apps = new HashMap<>();
+    private App[] appsByIndex = new App[1024];
+
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Stores the usage of an org over the days first to last, both included, spread evenly over them
+     */
+    public void put(String foundation, String orgGuid, LocalDate first, LocalDate last, AppUsageAccumulator usage) {
+        double days = last.toEpochDay() - first.toEpochDay() + 1;
+        List<AppDay> appDays = new ArrayList<>();
+        usage.forEachApp((spaceGuid, spaceName, appGuid, name, instanceSeconds, mbSeconds) -> appDays.add(new AppDay(
+                appGuid != null ? appGuid : spaceGuid + "$" + name, spaceGuid, Objects.toString(spaceName, ""),
+                Objects.toString(name, ""), instanceSeconds / days, mbSeconds / days)));
+        replaceDays(Identifiers.intern(foundation), Identifiers.intern(orgGuid), first, last, appDays);
+    }
+
+    /**
+     * @return metric of the app summed over the days from and to, both included
+     */
+    public double sum(Metric metric, String appGuid, LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            App app = apps.get(appGuid);
+            if (app == null) {
+                return 0.0;
+            }
+            double sum = 0.0;
+            for (long day = from.toEpochDay(); day <= to.toEpochDay(); day++) {
+                Chunk chunk = chunks.get(Math.floorDiv(day, CHUNK_DAYS));
+                int slot = chunk == null ? Chunk.NONE : chunk.find(app.index);
+                if (slot != Chunk.NONE) {
+                    sum += chunk.column(metric)[slot * CHUNK_DAYS + (int) Math.floorMod(day, CHUNK_DAYS)];
+                }
+            }
+            return sum;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param orgGuid -- org to restrict to, or null for every org of the foundation
+     * @return metric per day from from to to, both included, per app, space or org GUID
+     */
+    public Map<String, double[]> daily(GroupBy groupBy, Metric metric, String foundation, String orgGuid, LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            int days = (int) (to.toEpochDay() - from.toEpochDay() + 1);
+            Map<String, double[]> groups = new LinkedHashMap<>();
+            boolean[] selected = select(foundation, orgGuid);
+
+            for (long day = from.toEpochDay(); day <= to.toEpochDay(); day++) {
+                Chunk chunk = chunks.get(Math.floorDiv(day, CHUNK_DAYS));
+                if (chunk == null) {
+                    continue;
+                }
+                double[] column = chunk.column(metric);
+                int offset = (int) Math.floorMod(day, CHUNK_DAYS);
+                int index = (int) (day - from.toEpochDay());
+                for (int slot = 0; slot < chunk.slots; slot++) {
+                    int app = chunk.slotApp[slot];
+                    if (app < selected.length && selected[app]) {
+                        double value = column[slot * CHUNK_DAYS + offset];
+                        if (value != 0.0) {
+                            groups.computeIfAbsent(group(groupBy, appsByIndex[app]), g -> new double[days])[index] += value;
+                        }
+                    }
+                }
+            }
+            return groups;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return metric summed over the days from and to, both included, per app, space or org GUID
+     */
+    public Map<String, Double> total(GroupBy groupBy, Metric metric, String foundation, String orgGuid, LocalDate from, LocalDate to) {
+        Map<String, Double> totals = new LinkedHashMap<>();
+        daily(groupBy, metric, foundation, orgGuid, from, to).forEach((key, values) -> totals.put(key, Arrays.stream(values).sum()));
+        return totals;
+    }
+
+    public String getAppName(String appGuid) {
+        lock.readLock().lock();
+        try {
+            App app = apps.get(appGuid);
+            return app == null ? null : app.name;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getSpaceName(String appGuid) {
+        lock.readLock().lock();
+        try {
+            App app = apps.get(appGuid);
+            return app == null ? null : app.spaceName;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getApps() {
+        lock.readLock().lock();
+        try {
+            return apps.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return bytes held by the metric columns
+     */
+    public long getColumnBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (Chunk chunk : chunks.values()) {
+                bytes += 8L * (chunk.instanceSeconds.length + chunk.mbSeconds.length);
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    ///////////////////////////////////////
+
+    /**
+     * @return whether each app index belongs to the org, or to any org of the foundation when orgGuid is null
+     */
+    private boolean[] select(String foundation, String orgGuid) {
+        boolean[] selected = new boolean[apps.size()];
+        for (int app = 0; app < selected.length; app++) {
+            selected[app] = appsByIndex[app].belongsTo(foundation, orgGuid);
+        }
+        return selected;
+    }
+
+    private static String group(GroupBy groupBy, App app) {
+        switch (groupBy) {
+            case SPACE:
+                return app.spaceGuid;
+            case ORG:
+                return app.orgGuid;
+            default:
+                return app.guid;
+        }
+    }
+
+    /**
+     * @param foundation -- interned
+     * @param orgGuid    -- interned
+     */
+    private int register(String foundation, String orgGuid, AppDay appDay) {
+        App app = apps.get(appDay.appGuid);
+        if (app == null) {
+            app = new App(apps.size(), Identifiers.intern(appDay.appGuid));
+            apps.put(app.guid, app);
+            if (app.index == appsByIndex.length) {
+                appsByIndex = Arrays.copyOf(appsByIndex, appsByIndex.length * 2);
+            }
+            appsByIndex[app.index] = app;
+        }
+        // Accumulators restored from JSON hold their own copies of the identifiers
+        app.foundation = foundation;
+        app.orgGuid = orgGuid;
+        app.spaceGuid = Identifiers.intern(appDay.spaceGuid);
+        app.spaceName = Identifiers.intern(appDay.spaceName);
+        app.name = Identifiers.intern(appDay.appName);
+        return app.index;
+    }
+
+    private void replaceDays(String foundation, String orgGuid, LocalDate first, LocalDate last, List<AppDay> appDays) {
+        lock.writeLock().lock();
+        try {
+            int[] ids = new int[appDays.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = register(foundation, orgGuid, appDays.get(i));
+            }
+
+            for (long epochDay = first.toEpochDay(); epochDay <= last.toEpochDay(); epochDay++) {
+                Chunk chunk = chunks.computeIfAbsent(Math.floorDiv(epochDay, CHUNK_DAYS), c -> new Chunk());
+                int offset = (int) Math.floorMod(epochDay, CHUNK_DAYS);
+
+                // Apps of the org without usage that day are cleared, e.g. when an earlier fetch of the day still had them
+                for (int slot = 0; slot < chunk.slots; slot++) {
+                    if (appsByIndex[chunk.slotApp[slot]].belongsTo(foundation, orgGuid)) {
+                        chunk.instanceSeconds[slot * CHUNK_DAYS + offset] = 0.0;
+                        chunk.mbSeconds[slot * CHUNK_DAYS + offset] = 0.0;
+                    }
+                }
+                for (int i = 0; i < ids.length; i++) {
+                    int index = chunk.slot(ids[i]) * CHUNK_DAYS + offset;
+                    chunk.instanceSeconds[index] = appDays.get(i).instanceSeconds;
+                    chunk.mbSeconds[index] = appDays.get(i).mbSeconds;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * An app with its org, space and names as of the last days stored
+     */
+    private static class App {
+        private final int index;
+        private final String guid;
+        private String foundation;
+        private String orgGuid;
+        private String spaceGuid;
+        private String spaceName;
+        private String name;
+
+        App(int index, String guid) {
+            this.index = index;
+            this.guid = guid;
+        }
+
+        boolean belongsTo(String foundation, String orgGuid) {
+            return this.foundation.equals(foundation) && (orgGuid == null || this.orgGuid.equals(orgGuid));
+        }
+    }
+
+    /**
+     * Usage of an app on each day of a span
+     */
+    private static class AppDay {
+        private final String appGuid;
+        private final String spaceGuid;
+        private final String spaceName;
+        private final String appName;
+        private final double instanceSeconds;
+        private final double mbSeconds;
+
+        AppDay(String appGuid, String spaceGuid, String spaceName, String appName, double instanceSeconds, double mbSeconds) {
+            this.appGuid = appGuid;
+            this.spaceGuid = spaceGuid;
+            this.spaceName = spaceName;
+            this.appName = appName;
+            this.instanceSeconds = instanceSeconds;
+            this.mbSeconds = mbSeconds;
+        }
+    }
+
+    /**
+     * Days of one chunk, with a slot of CHUNK_DAYS values per app that had usage in them
+     */
+    private static class Chunk {
+
+        static final int NONE = -1;
+
+        // Number of slots in use, and the app of every slot
+        private int slots;
+        private int[] slotApp = new int[16];
+        // Open addressing table of app index + 1 to slot, 0 marks a free entry
+        private int[] tableApps = new int[32];
+        private int[] tableSlots = new int[32];
+        private double[] instanceSeconds = new double[16 * CHUNK_DAYS];
+        private double[] mbSeconds = new double[16 * CHUNK_DAYS];
+
+        /**
+         * @return slot of the app, or NONE when it has no usage in the chunk
+         */
+        int find(int app) {
+            int mask = tableApps.length - 1;
+            for (int i = spread(app) & mask; tableApps[i] != 0; i = (i + 1) & mask) {
+                if (tableApps[i] == app + 1) {
+                    return tableSlots[i];
+                }
+            }
+            return NONE;
+        }
+
+        /**
+         * @return slot of the app, adding one when it has none yet
+         */
+        int slot(int app) {
+            int found = find(app);
+            if (found != NONE) {
+                return found;
+            }
+            int slot = slots++;
+            if (slot == slotApp.length) {
+                slotApp = Arrays.copyOf(slotApp, slotApp.length * 2);
+                instanceSeconds = Arrays.copyOf(instanceSeconds, slotApp.length * CHUNK_DAYS);
+                mbSeconds = Arrays.copyOf(mbSeconds, slotApp.length * CHUNK_DAYS);
+            }
+            slotApp[slot] = app;
+            // Keeps the table at most half full
+            if (slots * 2 > tableApps.length) {
+                tableApps = new int[tableApps.length * 2];
+                tableSlots = new int[tableSlots.length * 2];
+                for (int s = 0; s < slot; s++) {
+                    index(slotApp[s], s);
+                }
+            }
+            index(app, slot);
+            return slot;
+        }
+
+        double[] column(Metric metric) {
+            return metric == Metric.MB_SECONDS ? mbSeconds : instanceSeconds;
+        }
+
+        private void index(int app, int slot) {
+            int mask = tableApps.length - 1;
+            int i = spread(app) & mask;
+            while (tableApps[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            tableApps[i] = app + 1;
+            tableSlots[i] = slot;
+        }
+
+        private static int spread(int app) {
+            return app * 0x9E3779B9 >>> 16 ^ app;
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.time.LocalDate;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DailyUsage - persisted usage accumulator of an org for a span of already ended days, fetched in one request
+ */
+@Entity
+@Table(indexes = @Index(columnList = "kind,foundation,orgGuid,usage_day"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyUsage {
+
+    @Id
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    private Kind kind;
+
+    private String foundation;
+    private String orgGuid;
+
+    // First day of the span
+    @Column(name = "usage_day")
+    private LocalDate day;
+
+    // Last day of the span, the same as day for a single day
+    @Column(name = "last_day")
+    private LocalDate lastDay;
+
+    @Lob
+    private String payload;
+
+}
@@ -0,0 +1,17 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface DailyUsageRepository extends JpaRepository<DailyUsage, String> {
+
+    List<DailyUsage> findByKindAndFoundationAndOrgGuidAndDayBetween(UsageSnapshot.Kind kind, String foundation, String orgGuid,
+                                                                    LocalDate from, LocalDate to);
+
+    Slice<DailyUsage> findByKind(UsageSnapshot.Kind kind, Pageable pageable);
+
+}
@@ -0,0 +1,132 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+/**
+ * DailyUsageStore - keeps the usage of every fetched span of days as a mergeable accumulator, so any date range can
+ * be built from stored spans and only the days never fetched before go upstream
+ */
+@Component
+public class DailyUsageStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DailyUsageStore.class);
+
+    private static final int PAGE_SIZE = 500;
+
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Autowired
+    private DailyUsageRepository repository;
+
+    /**
+     * @return stored spans that lie between from and to, both included, in order of their first day
+     */
+    public <T> List<Span<T>> find(Kind kind, String foundation, String orgGuid, LocalDate from, LocalDate to, Class<T> type) {
+        List<Span<T>> spans = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return spans;
+        }
+        repository.findByKindAndFoundationAndOrgGuidAndDayBetween(kind, foundation, orgGuid, from, to).forEach(span -> {
+            LocalDate last = span.getLastDay() == null ? span.getDay() : span.getLastDay();
+            if (last.isAfter(to)) {
+                return;
+            }
+            try {
+                spans.add(new Span<>(span.getDay(), last, mapper.readValue(span.getPayload(), type)));
+            } catch (IOException e) {
+                LOG.warn("Discarding unreadable daily usage {}", span.getId(), e);
+            }
+        });
+        spans.sort(Comparator.comparing(Span::getFirst));
+        return spans;
+    }
+
+    /**
+     * Reads all stored spans of a kind, a page at a time, in order of their first day. Of spans starting on the same
+     * day the longer comes first, so a span comes after every span that covers it.
+     */
+    public <T> void forEach(Kind kind, Class<T> type, SpanConsumer<T> consumer) {
+        Pageable page = PageRequest.of(0, PAGE_SIZE, Sort.by(Sort.Order.asc("day"), Sort.Order.desc("lastDay")));
+        Slice<DailyUsage> spans;
+        do {
+            spans = repository.findByKind(kind, page);
+            spans.forEach(span -> {
+                try {
+                    LocalDate last = span.getLastDay() == null ? span.getDay() : span.getLastDay();
+                    consumer.accept(span.getFoundation(), span.getOrgGuid(),
+                            new Span<>(span.getDay(), last, mapper.readValue(span.getPayload(), type)));
+                } catch (IOException e) {
+                    LOG.warn("Discarding unreadable daily usage {}", span.getId(), e);
+                }
+            });
+            page = spans.nextPageable();
+        } while (spans.hasNext());
+    }
+
+    /**
+     * @param first -- first day of the span
+     * @param last  -- last day of the span, a day that has ended, its usage doesn't change anymore
+     */
+    public void save(Kind kind, String foundation, String orgGuid, LocalDate first, LocalDate last, Object accumulator) {
+        String id = String.format("%s$%s$%s$%s$%s", kind, foundation, orgGuid, first, last);
+        try {
+            repository.save(DailyUsage.builder()
+                    .id(id)
+                    .kind(kind)
+                    .foundation(foundation)
+                    .orgGuid(orgGuid)
+                    .day(first)
+                    .lastDay(last)
+                    .payload(mapper.writeValueAsString(accumulator))
+                    .build());
+        } catch (JsonProcessingException e) {
+            LOG.error("Unable to store daily usage {}", id, e);
+        }
+    }
+
+    public interface SpanConsumer<T> {
+        void accept(String foundation, String orgGuid, Span<T> span);
+    }
+
+    public static class Span<T> {
+        private final LocalDate first;
+        private final LocalDate last;
+        private final T accumulator;
+
+        public Span(LocalDate first, LocalDate last, T accumulator) {
+            this.first = first;
+            this.last = last;
+            this.accumulator = accumulator;
+        }
+
+        public LocalDate getFirst() {
+            return first;
+        }
+
+        public LocalDate getLast() {
+            return last;
+        }
+
+        public T getAccumulator() {
+            return accumulator;
+        }
+    }
+
+}
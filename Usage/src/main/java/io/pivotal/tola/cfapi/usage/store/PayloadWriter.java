@@ -0,0 +1,17 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+/**
+ * PayloadWriter - takes a usage response chunk by chunk as it is read, and keeps it only once committed
+ */
+public interface PayloadWriter {
+
+    void write(byte[] chunk);
+
+    void commit();
+
+    /**
+     * Drops what was written, the response failed or was cancelled
+     */
+    void abort();
+
+}
@@ -0,0 +1,43 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.time.LocalDate;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * UsageAggregate - persisted usage accumulator of an org for one quarter, covering the quarter start up to throughDay
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageAggregate {
+
+    @Id
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    private Kind kind;
+
+    private String usageKey;
+    private String foundation;
+    private String orgGuid;
+
+    // Last day whose usage is included. Days before today don't change anymore.
+    private LocalDate throughDay;
+
+    @Lob
+    private String payload;
+
+}
@@ -0,0 +1,7 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface UsageAggregateRepository extends JpaRepository<UsageAggregate, String> {
+
+}
@@ -0,0 +1,105 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * UsageAggregateStore - keeps the settled days of a quarter as a mergeable accumulator, so a refresh
+ * only has to fetch the days after the last one it has seen
+ */
+@Component
+public class UsageAggregateStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UsageAggregateStore.class);
+
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Autowired
+    private UsageAggregateRepository repository;
+
+    /**
+     * @return the stored aggregate, or null when none is stored or it can't be read back
+     */
+    public <T> Aggregate<T> find(Kind kind, String key, Class<T> type) {
+        UsageAggregate aggregate = repository.findById(id(kind, key)).orElse(null);
+        if (aggregate == null) {
+            return null;
+        }
+        try {
+            return new Aggregate<>(aggregate.getThroughDay(), mapper.readValue(aggregate.getPayload(), type));
+        } catch (IOException e) {
+            LOG.warn("Discarding unreadable aggregate {}", aggregate.getId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the accumulator unless a concurrent refresh has already moved the aggregate past throughDay
+     */
+    public synchronized void save(Kind kind, String key, String foundation, String orgGuid, LocalDate throughDay, Object accumulator) {
+        String id = id(kind, key);
+        LocalDate stored = repository.findById(id).map(UsageAggregate::getThroughDay).orElse(null);
+        if (stored != null && !stored.isBefore(throughDay)) {
+            return;
+        }
+        write(kind, key, foundation, orgGuid, throughDay, accumulator);
+    }
+
+    /**
+     * Stores the accumulator in place of the stored one, wherever that one was through
+     */
+    public synchronized void replace(Kind kind, String key, String foundation, String orgGuid, LocalDate throughDay, Object accumulator) {
+        write(kind, key, foundation, orgGuid, throughDay, accumulator);
+    }
+
+    ///////////////////////////////////////
+
+    private void write(Kind kind, String key, String foundation, String orgGuid, LocalDate throughDay, Object accumulator) {
+        String id = id(kind, key);
+        try {
+            repository.save(UsageAggregate.builder()
+                    .id(id)
+                    .kind(kind)
+                    .usageKey(key)
+                    .foundation(foundation)
+                    .orgGuid(orgGuid)
+                    .throughDay(throughDay)
+                    .payload(mapper.writeValueAsString(accumulator))
+                    .build());
+        } catch (JsonProcessingException e) {
+            LOG.error("Unable to store aggregate {}", id, e);
+        }
+    }
+
+    private static String id(Kind kind, String key) {
+        return kind + "$" + key;
+    }
+
+    public static class Aggregate<T> {
+        private final LocalDate throughDay;
+        private final T accumulator;
+
+        Aggregate(LocalDate throughDay, T accumulator) {
+            this.throughDay = throughDay;
+            this.accumulator = accumulator;
+        }
+
+        public LocalDate getThroughDay() {
+            return throughDay;
+        }
+
+        public T getAccumulator() {
+            return accumulator;
+        }
+    }
+
+}
@@ -0,0 +1,468 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.utils.GzipInflater;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * UsageArchive - append-only archive of every usage response fetched, so usage can be computed again from it
+ * without going upstream.
+ * <p>
+ * Responses are appended gzip compressed as records to segment files under archiveDir, a new segment is started
+ * once the current one reaches archiveSegmentBytes, at most MAX_SEGMENT_BYTES so positions in it fit an int. A record is its header (type, foundation, org, date range and
+ * fetch time), its payload and a CRC of both. Segments are scanned into an in-memory index at startup, a record
+ * torn by a crash at the end of the last segment is cut off. Payloads are read back through memory-mapped segments.
+ * <p>
+ * Records are never rewritten, an org and range fetched again is appended again and the latest record wins. Whole
+ * segments whose records were all fetched longer than archiveRetention ago are deleted, at startup and whenever a new
+ * segment is started.
+ */
+@Component
+public class UsageArchive {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UsageArchive.class);
+
+    public enum Type {
+        APP, SVC,
+        // Org guids and names of a foundation as a JSON object, whenever they change
+        ORGS
+    }
+
+    static final int MAGIC = 0x55534731;
+
+    private static final int READ_CHUNK = 64 * 1024;
+
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    @Autowired
+    private FoundationsConfig config;
+
+    private Clock clock = Clock.systemUTC();
+
+    private final List<Segment> segments = new ArrayList<>();
+
+    // Records of each type$foundation$org, in the order they were appended
+    private final Map<String, List<Entry>> index = new HashMap<>();
+    private long bytes;
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        Path dir = Paths.get(config.getArchiveDir());
+        Files.createDirectories(dir);
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(dir)) {
+            files = listed.filter(f -> f.getFileName().toString().matches("segment-\\d+\\.arc")).sorted().collect(Collectors.toList());
+        }
+        if (config.getArchiveSegmentBytes() > MAX_SEGMENT_BYTES) {
+            LOG.warn("Archive segments are limited to {} bytes, not {}", MAX_SEGMENT_BYTES, config.getArchiveSegmentBytes());
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Segment segment = new Segment(files.get(i), i + 1);
+            scan(segment, i == files.size() - 1);
+            segments.add(segment);
+        }
+        expire();
+        LOG.info("Opened usage archive {} with {} records in {} segments", dir, getSize(), segments.size());
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        segments.forEach(Segment::close);
+        segments.clear();
+        index.clear();
+    }
+
+    public boolean isEnabled() {
+        return config.isArchive();
+    }
+
+    /**
+     * @param gzipped -- whether the response chunks are gzipped already
+     * @return writer of the response, appended when committed, or null when the archive is off. The compressed
+     * response is buffered until then, so that records of concurrent responses don't interleave.
+     */
+    public PayloadWriter writer(Type type, String foundation, String orgGuid, String start, String end, boolean gzipped) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return new Writer(type, foundation, orgGuid, LocalDate.parse(start), LocalDate.parse(end), gzipped);
+    }
+
+    /**
+     * Appends a payload that is complete already, compressed
+     */
+    public void append(Type type, String foundation, String orgGuid, LocalDate start, LocalDate end, byte[] payload) {
+        if (!isEnabled()) {
+            return;
+        }
+        Writer writer = new Writer(type, foundation, orgGuid, start, end, false);
+        writer.write(payload);
+        writer.commit();
+    }
+
+    /**
+     * @return records of the org, oldest first
+     */
+    public synchronized List<Entry> getEntries(Type type, String foundation, String orgGuid) {
+        return new ArrayList<>(index.getOrDefault(key(type, foundation, orgGuid), Collections.emptyList()));
+    }
+
+    public synchronized Entry getLatest(Type type, String foundation, String orgGuid) {
+        List<Entry> entries = index.get(key(type, foundation, orgGuid));
+        return entries == null ? null : entries.get(entries.size() - 1);
+    }
+
+    /**
+     * @return orgs with records of the type in the foundation
+     */
+    public synchronized Set<String> getOrgGuids(Type type, String foundation) {
+        return index.values().stream()
+                .map(entries -> entries.get(0))
+                .filter(e -> e.type == type && e.foundation.equals(foundation))
+                .map(Entry::getOrgGuid)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * @return the payload of the record, inflated chunk by chunk
+     */
+    public Flux<byte[]> read(Entry entry) {
+        return Flux.using(GzipInflater::new, inflater -> Flux.<byte[], ByteBuffer>generate(entry::slice, (payload, sink) -> {
+            if (!payload.hasRemaining()) {
+                sink.complete();
+                return payload;
+            }
+            byte[] chunk = new byte[Math.min(READ_CHUNK, payload.remaining())];
+            payload.get(chunk);
+            sink.next(chunk);
+            return payload;
+        }).concatMapIterable(chunk -> {
+            try {
+                return inflater.inflate(chunk);
+            } catch (ZipException e) {
+                throw Exceptions.propagate(e);
+            }
+        }).concatWith(Mono.fromRunnable(() -> {
+            try {
+                inflater.finish();
+            } catch (ZipException e) {
+                throw Exceptions.propagate(e);
+            }
+        })), GzipInflater::close);
+    }
+
+    public synchronized int getSize() {
+        return index.values().stream().mapToInt(List::size).sum();
+    }
+
+    public synchronized int getSegments() {
+        return segments.size();
+    }
+
+    /**
+     * @return bytes in all segments
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return size at which a new segment is started
+     */
+    public long getSegmentBytes() {
+        return Math.min(config.getArchiveSegmentBytes(), MAX_SEGMENT_BYTES);
+    }
+
+    ///////////////////////////////////////
+
+    private static String key(Type type, String foundation, String orgGuid) {
+        return String.format("%s$%s$%s", type, foundation, orgGuid);
+    }
+
+    private synchronized void append(Type type, String foundation, String orgGuid, LocalDate start, LocalDate end,
+                                     Instant fetchedAt, byte[] payload) throws IOException {
+        byte[] header = String.join("\t", type.name(), foundation, orgGuid == null ? "" : orgGuid, start.toString(),
+                end.toString(), Long.toString(fetchedAt.toEpochMilli())).getBytes(StandardCharsets.UTF_8);
+        long length = 4 + 4 + header.length + 4 + payload.length + 4;
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Response of " + payload.length + " bytes is too large for an archive segment");
+        }
+
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.size > 0 && segment.size + length > getSegmentBytes()) {
+            int id = segment == null ? 1 : segment.id + 1;
+            segment = new Segment(Paths.get(config.getArchiveDir(), String.format("segment-%08d.arc", id)), id);
+            segments.add(segment);
+            expire();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(header);
+        crc.update(payload);
+        ByteBuffer head = ByteBuffer.allocate(4 + 4 + header.length + 4).putInt(MAGIC).putInt(header.length).put(header)
+                .putInt(payload.length);
+        head.flip();
+        ByteBuffer[] record = {head, ByteBuffer.wrap(payload), (ByteBuffer) ByteBuffer.allocate(4).putInt((int) crc.getValue()).flip()};
+
+        segment.channel.position(segment.size);
+        while (record[2].hasRemaining()) {
+            segment.channel.write(record);
+        }
+        long offset = segment.size + 4 + 4 + header.length + 4;
+        segment.size += length;
+        bytes += length;
+        index(new Entry(type, foundation, orgGuid, start, end, fetchedAt, segment, offset, payload.length));
+    }
+
+    private void index(Entry entry) {
+        index.computeIfAbsent(key(entry.type, entry.foundation, entry.orgGuid), k -> new ArrayList<>()).add(entry);
+        if (entry.segment.newest == null || entry.fetchedAt.isAfter(entry.segment.newest)) {
+            entry.segment.newest = entry.fetchedAt;
+        }
+    }
+
+    /**
+     * Deletes the segments, but the one appended to, whose records were all fetched before the retention
+     */
+    private void expire() throws IOException {
+        Instant cutoff = clock.instant().minus(config.getArchiveRetention());
+        List<Segment> expired = segments.subList(0, Math.max(0, segments.size() - 1)).stream()
+                .filter(s -> s.newest == null || s.newest.isBefore(cutoff))
+                .collect(Collectors.toList());
+        if (expired.isEmpty()) {
+            return;
+        }
+        index.values().forEach(entries -> entries.removeIf(e -> expired.contains(e.segment)));
+        index.values().removeIf(List::isEmpty);
+        for (Segment segment : expired) {
+            segments.remove(segment);
+            bytes -= segment.size;
+            segment.close();
+            Files.deleteIfExists(segment.path);
+        }
+        LOG.info("Deleted {} archive segments fetched before {}", expired.size(), cutoff);
+    }
+
+    /**
+     * Indexes the records of the segment up to the first one that is incomplete or corrupt
+     */
+    private void scan(Segment segment, boolean last) throws IOException {
+        long size = segment.channel.size();
+        MappedByteBuffer map = segment.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        int position = 0;
+        while (position + 8 <= size) {
+            map.position(position);
+            if (map.getInt() != MAGIC) {
+                break;
+            }
+            int headerLength = map.getInt();
+            if (headerLength < 0 || position + 8L + headerLength + 4 > size) {
+                break;
+            }
+            byte[] header = new byte[headerLength];
+            map.get(header);
+            int payloadLength = map.getInt();
+            long end = position + 8L + headerLength + 4 + payloadLength + 4;
+            if (payloadLength < 0 || end > size) {
+                break;
+            }
+            int payloadOffset = map.position();
+            CRC32 crc = new CRC32();
+            crc.update(header);
+            ByteBuffer payload = map.duplicate();
+            payload.limit(payloadOffset + payloadLength);
+            crc.update(payload);
+            map.position(payloadOffset + payloadLength);
+            if (map.getInt() != (int) crc.getValue()) {
+                break;
+            }
+
+            String[] fields = new String(header, StandardCharsets.UTF_8).split("\t", -1);
+            index(new Entry(Type.valueOf(fields[0]), fields[1], fields[2].isEmpty() ? null : fields[2],
+                    LocalDate.parse(fields[3]), LocalDate.parse(fields[4]), Instant.ofEpochMilli(Long.parseLong(fields[5])),
+                    segment, payloadOffset, payloadLength));
+            position = (int) end;
+        }
+
+        if (position < size) {
+            if (last) {
+                LOG.warn("Cutting off {} bytes of an incomplete record at the end of {}", size - position, segment.path);
+                segment.channel.truncate(position);
+            } else {
+                LOG.warn("Ignoring {} unreadable bytes at the end of {}", size - position, segment.path);
+            }
+        }
+        segment.size = position;
+        bytes += position;
+    }
+
+    private static class Segment {
+
+        private final Path path;
+        private final int id;
+        private final FileChannel channel;
+        private long size;
+        // Fetch time of its latest record
+        private Instant newest;
+        // Mapped up to the size it had when last read, mapped again once records past it are read
+        private MappedByteBuffer map;
+
+        Segment(Path path, int id) throws IOException {
+            this.path = path;
+            this.id = id;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        synchronized ByteBuffer slice(long offset, int length) {
+            try {
+                if (map == null || map.capacity() < offset + length) {
+                    map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            ByteBuffer slice = map.duplicate();
+            slice.position((int) offset).limit((int) offset + length);
+            return slice.slice();
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close {}", path, e);
+            }
+        }
+
+    }
+
+    /**
+     * A record of the archive
+     */
+    @Getter
+    public static class Entry {
+        private final Type type;
+        private final String foundation;
+        private final String orgGuid;
+        private final LocalDate start;
+        private final LocalDate end;
+        private final Instant fetchedAt;
+        @Getter(lombok.AccessLevel.NONE)
+        private final Segment segment;
+        @Getter(lombok.AccessLevel.NONE)
+        private final long offset;
+        // Compressed bytes
+        private final int length;
+
+        Entry(Type type, String foundation, String orgGuid, LocalDate start, LocalDate end, Instant fetchedAt,
+              Segment segment, long offset, int length) {
+            this.type = type;
+            this.foundation = foundation;
+            this.orgGuid = orgGuid;
+            this.start = start;
+            this.end = end;
+            this.fetchedAt = fetchedAt;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private ByteBuffer slice() {
+            return segment.slice(offset, length);
+        }
+    }
+
+    /**
+     * Compresses one response as its chunks are read, and appends it when it is complete
+     */
+    private class Writer implements PayloadWriter {
+
+        private final Type type;
+        private final String foundation;
+        private final String orgGuid;
+        private final LocalDate start;
+        private final LocalDate end;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        private final OutputStream out;
+
+        Writer(Type type, String foundation, String orgGuid, LocalDate start, LocalDate end, boolean gzipped) {
+            this.type = type;
+            this.foundation = foundation;
+            this.orgGuid = orgGuid;
+            this.start = start;
+            this.end = end;
+            try {
+                this.out = gzipped ? buffer : new GZIPOutputStream(buffer, 8192);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void write(byte[] chunk) {
+            try {
+                out.write(chunk);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void commit() {
+            try {
+                out.close();
+                append(type, foundation, orgGuid, start, end, clock.instant(), buffer.toByteArray());
+            } catch (IOException e) {
+                LOG.warn("Unable to archive {} usage of org {} in foundation {}", type, orgGuid, foundation, e);
+            }
+        }
+
+        @Override
+        public void abort() {
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.time.LocalDate;
+
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * UsageSnapshot - persisted OrgUsage or SIUsage of an org for one quarter
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UsageSnapshot {
+
+    public enum Kind {
+        APP, SVC
+    }
+
+    @Id
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    private Kind kind;
+
+    private String usageKey;
+    private String foundation;
+    private String orgGuid;
+    private int year;
+    private int quarter;
+    // Of the fiscal calendar the quarter is in
+    private Integer fiscalYearStartMonth;
+
+    private LocalDate refreshedOn;
+
+    // The quarter had already ended when the usage was fetched
+    private boolean complete;
+
+    @Lob
+    private String payload;
+
+}
@@ -0,0 +1,11 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface UsageSnapshotRepository extends JpaRepository<UsageSnapshot, String> {
+
+    List<UsageSnapshot> findByKind(UsageSnapshot.Kind kind);
+
+}
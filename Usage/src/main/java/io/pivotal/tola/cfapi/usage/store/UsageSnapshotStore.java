@@ -0,0 +1,129 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.model.SIUsage;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * UsageSnapshotStore - keeps computed quarterly usage in the embedded database so that it survives restarts,
+ * and knows which quarters have to be fetched again.
+ * <p>
+ * Snapshots of quarters of another fiscal calendar, stored before fiscalYearStartMonth was changed, are deleted when
+ * loaded.
+ */
+@Component
+public class UsageSnapshotStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UsageSnapshotStore.class);
+
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // Freshness of every stored snapshot, so staleness checks don't read payloads back
+    private final Map<String, UsageSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    @Autowired
+    private UsageSnapshotRepository repository;
+
+    @Autowired
+    private PeriodCalendar periods;
+
+    public Map<String, OrgUsage> loadAppUsage() {
+        return load(Kind.APP, OrgUsage.class);
+    }
+
+    public Map<String, SIUsage> loadSIUsage() {
+        return load(Kind.SVC, SIUsage.class);
+    }
+
+    public void saveAppUsage(String key, String foundation, String orgGuid, int year, int quarter, OrgUsage orgUsage) {
+        save(Kind.APP, key, foundation, orgGuid, year, quarter, orgUsage);
+    }
+
+    public void saveSIUsage(String key, String foundation, String orgGuid, int year, int quarter, SIUsage siUsage) {
+        save(Kind.SVC, key, foundation, orgGuid, year, quarter, siUsage);
+    }
+
+    /**
+     * Usage of a quarter is stale until it has been fetched after the quarter ended. Until then it is refreshed daily.
+     */
+    public boolean isStale(Kind kind, String key) {
+        UsageSnapshot snapshot = snapshots.get(id(kind, key));
+        if (snapshot == null) {
+            return true;
+        }
+        return !snapshot.isComplete() && snapshot.getRefreshedOn().isBefore(periods.today());
+    }
+
+    ///////////////////////////////////////
+
+    private <T> Map<String, T> load(Kind kind, Class<T> type) {
+        Map<String, T> usage = new ConcurrentHashMap<>();
+        List<UsageSnapshot> otherCalendar = new ArrayList<>();
+        repository.findByKind(kind).forEach(snapshot -> {
+            if (!Objects.equals(snapshot.getFiscalYearStartMonth(), periods.getFiscalYearStartMonth())) {
+                otherCalendar.add(snapshot);
+                return;
+            }
+            try {
+                usage.put(snapshot.getUsageKey(), mapper.readValue(snapshot.getPayload(), type));
+                snapshot.setPayload(null);
+                snapshots.put(snapshot.getId(), snapshot);
+            } catch (IOException e) {
+                LOG.warn("Discarding unreadable snapshot {}", snapshot.getId(), e);
+            }
+        });
+        if (!otherCalendar.isEmpty()) {
+            LOG.info("Deleting {} {} usage snapshots of another fiscal calendar", otherCalendar.size(), kind);
+            repository.deleteAll(otherCalendar);
+        }
+        LOG.info("Restored {} {} usage snapshots", usage.size(), kind);
+        return usage;
+    }
+
+    private void save(Kind kind, String key, String foundation, String orgGuid, int year, int quarter, Object usage) {
+        try {
+            UsageSnapshot snapshot = UsageSnapshot.builder()
+                    .id(id(kind, key))
+                    .kind(kind)
+                    .usageKey(key)
+                    .foundation(foundation)
+                    .orgGuid(orgGuid)
+                    .year(year)
+                    .quarter(quarter)
+                    .fiscalYearStartMonth(periods.getFiscalYearStartMonth())
+                    .refreshedOn(periods.today())
+                    .complete(isClosed(year, quarter))
+                    .payload(mapper.writeValueAsString(usage))
+                    .build();
+            repository.save(snapshot);
+            snapshot.setPayload(null);
+            snapshots.put(snapshot.getId(), snapshot);
+        } catch (JsonProcessingException e) {
+            LOG.error("Unable to store snapshot {}", id(kind, key), e);
+        }
+    }
+
+    private boolean isClosed(int year, int quarter) {
+        return periods.isClosed(periods.quarter(year, quarter));
+    }
+
+    private static String id(Kind kind, String key) {
+        return kind + "$" + key;
+    }
+
+}
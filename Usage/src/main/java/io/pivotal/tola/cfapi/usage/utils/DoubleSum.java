@@ -0,0 +1,44 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * DoubleSum - running sum with the same compensated (Kahan) summation as {@link java.util.stream.DoubleStream#sum()},
+ * so totals accumulated record by record match totals computed over a stream of the same records
+ */
+public final class DoubleSum {
+
+    private double sum;
+    private double compensation;
+    private double simpleSum;
+
+    public void add(double value) {
+        double tmp = value - compensation;
+        double velvel = sum + tmp;
+        compensation = (velvel - sum) - tmp;
+        sum = velvel;
+        simpleSum += value;
+    }
+
+    @JsonCreator
+    public static DoubleSum of(double value) {
+        DoubleSum sum = new DoubleSum();
+        sum.add(value);
+        return sum;
+    }
+
+    public void add(DoubleSum other) {
+        add(other.sum());
+    }
+
+    @JsonValue
+    public double sum() {
+        double tmp = sum + compensation;
+        if (Double.isNaN(tmp) && Double.isInfinite(simpleSum)) {
+            return simpleSum;
+        }
+        return tmp;
+    }
+
+}
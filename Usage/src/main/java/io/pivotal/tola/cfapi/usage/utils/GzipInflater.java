@@ -0,0 +1,182 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * GzipInflater - inflates a gzip stream pushed chunk by chunk, as it arrives, into blocks of at most BLOCK bytes,
+ * so neither the compressed nor the inflated payload is ever held whole.
+ * <p>
+ * The gzip header and trailer may be split across chunks. The trailer's CRC and size are checked, and a stream that
+ * ends before its trailer fails {@link #finish()} like a truncated response would.
+ */
+public class GzipInflater implements AutoCloseable {
+
+    static final int BLOCK = 64 * 1024;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private enum State {
+        HEADER, BODY, TRAILER, DONE
+    }
+
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private State state = State.HEADER;
+
+    // Header or trailer bytes received so far, they are parsed once complete
+    private byte[] pending = new byte[0];
+
+    /**
+     * @return the inflated blocks the chunk completes, possibly none
+     */
+    public List<byte[]> inflate(byte[] chunk) throws ZipException {
+        List<byte[]> blocks = new ArrayList<>(4);
+        int offset = 0;
+        while (offset < chunk.length && state != State.DONE) {
+            switch (state) {
+                case HEADER:
+                    offset = header(chunk, offset);
+                    break;
+                case BODY:
+                    offset = body(chunk, offset, blocks);
+                    break;
+                default:
+                    offset = trailer(chunk, offset);
+                    break;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * @throws TruncatedException when the stream ended before its trailer
+     */
+    public void finish() throws ZipException {
+        if (state != State.DONE) {
+            throw new TruncatedException();
+        }
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+    /**
+     * A stream that was cut off, unlike a corrupt one it may be complete when received again
+     */
+    public static class TruncatedException extends ZipException {
+
+        public TruncatedException() {
+            super("Unexpected end of gzip stream");
+        }
+    }
+
+    ///////////////////////////////////////
+
+    private int header(byte[] chunk, int offset) throws ZipException {
+        int start = pending.length;
+        pending = concat(pending, chunk, offset);
+        int length = headerLength(pending);
+        if (length < 0) {
+            return chunk.length;
+        }
+        state = State.BODY;
+        pending = new byte[0];
+        return offset + length - start;
+    }
+
+    private int body(byte[] chunk, int offset, List<byte[]> blocks) throws ZipException {
+        inflater.setInput(chunk, offset, chunk.length - offset);
+        try {
+            while (!inflater.finished() && !inflater.needsInput()) {
+                byte[] block = new byte[BLOCK];
+                int n = inflater.inflate(block);
+                if (n == 0 && inflater.needsDictionary()) {
+                    throw new ZipException("Gzip stream needs a dictionary");
+                }
+                if (n > 0) {
+                    crc.update(block, 0, n);
+                    blocks.add(n == BLOCK ? block : Arrays.copyOf(block, n));
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException(e.getMessage());
+        }
+        if (!inflater.finished()) {
+            return chunk.length;
+        }
+        state = State.TRAILER;
+        return chunk.length - inflater.getRemaining();
+    }
+
+    private int trailer(byte[] chunk, int offset) throws ZipException {
+        int start = pending.length;
+        pending = concat(pending, chunk, offset);
+        if (pending.length < 8) {
+            return chunk.length;
+        }
+        if (int32(pending, 0) != (int) crc.getValue() || int32(pending, 4) != (int) inflater.getBytesWritten()) {
+            throw new ZipException("Corrupt gzip trailer");
+        }
+        state = State.DONE;
+        pending = new byte[0];
+        return offset + 8 - start;
+    }
+
+    /**
+     * @return the length of the header at the start of bytes, or -1 when it isn't complete yet
+     */
+    private static int headerLength(byte[] bytes) throws ZipException {
+        if (bytes.length < 10) {
+            return -1;
+        }
+        if ((bytes[0] & 0xff) != 0x1f || (bytes[1] & 0xff) != 0x8b || bytes[2] != 8) {
+            throw new ZipException("Not in gzip format");
+        }
+        int flags = bytes[3] & 0xff;
+        int length = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (bytes.length < length + 2) {
+                return -1;
+            }
+            length += 2 + ((bytes[length] & 0xff) | (bytes[length + 1] & 0xff) << 8);
+        }
+        for (int flag : new int[]{FNAME, FCOMMENT}) {
+            if ((flags & flag) != 0) {
+                while (length < bytes.length && bytes[length] != 0) {
+                    length++;
+                }
+                if (length == bytes.length) {
+                    return -1;
+                }
+                length++;
+            }
+        }
+        if ((flags & FHCRC) != 0) {
+            length += 2;
+        }
+        return length <= bytes.length ? length : -1;
+    }
+
+    private static byte[] concat(byte[] pending, byte[] chunk, int offset) {
+        byte[] bytes = Arrays.copyOf(pending, pending.length + chunk.length - offset);
+        System.arraycopy(chunk, offset, bytes, pending.length, chunk.length - offset);
+        return bytes;
+    }
+
+    private static int int32(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16
+                | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+}
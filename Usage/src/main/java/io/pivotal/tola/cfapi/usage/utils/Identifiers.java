@@ -0,0 +1,66 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.KeyDeserializer;
+
+/**
+ * Identifiers - process wide dictionary of org, space, app and service GUIDs and names.
+ * <p>
+ * Ingestion, the cached usage models and the app usage series share one String per identifier across orgs,
+ * quarters and foundations, instead of holding a copy per record, model and period. Identifiers are held weakly, once no model or accumulator
+ * references one anymore it is dropped.
+ */
+public final class Identifiers {
+
+    private static final WeakInterner INTERNER = new WeakInterner();
+
+    private Identifiers() {
+    }
+
+    /**
+     * @return the canonical instance of value, null for null
+     */
+    public static String intern(String value) {
+        return value == null ? null : INTERNER.intern(value);
+    }
+
+    /**
+     * @return the canonical instance of the current string value of parser, read without copying it when known
+     */
+    public static String intern(JsonParser parser) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+            return intern(parser.getValueAsString());
+        }
+        return INTERNER.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+    }
+
+    public static int size() {
+        return INTERNER.size();
+    }
+
+    /**
+     * Interns identifier fields of deserialized models, e.g. restored snapshots
+     */
+    public static class Deserializer extends JsonDeserializer<String> {
+        @Override
+        public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            return intern(parser);
+        }
+    }
+
+    /**
+     * Interns identifier keys of deserialized maps
+     */
+    public static class KeyInterner extends KeyDeserializer {
+        @Override
+        public Object deserializeKey(String key, DeserializationContext context) {
+            return intern(key);
+        }
+    }
+
+}
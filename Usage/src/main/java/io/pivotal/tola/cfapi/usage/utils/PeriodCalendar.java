@@ -0,0 +1,130 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.utils.UsagePeriod.Type;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * PeriodCalendar - maps dates to the months, quarters and years of a fiscal calendar.
+ * <p>
+ * A fiscal year starts on the first day of the configured month and is named after the calendar year it ends in,
+ * so with a July start 2019-07-01 falls in 2020-Q1. Lookups are plain arithmetic on the month, the calendar is
+ * immutable and safe to share.
+ */
+@Component
+public class PeriodCalendar {
+
+    private final int fiscalYearStartMonth;
+    private final Clock clock;
+
+    @Autowired
+    public PeriodCalendar(FoundationsConfig config) {
+        this(config.getFiscalYearStartMonth(), Clock.systemDefaultZone());
+    }
+
+    public PeriodCalendar(int fiscalYearStartMonth, Clock clock) {
+        if (fiscalYearStartMonth < 1 || fiscalYearStartMonth > 12) {
+            throw new IllegalArgumentException("Fiscal year start month must be 1 to 12, was " + fiscalYearStartMonth);
+        }
+        this.fiscalYearStartMonth = fiscalYearStartMonth;
+        this.clock = clock;
+    }
+
+    public int getFiscalYearStartMonth() {
+        return fiscalYearStartMonth;
+    }
+
+    public LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    /**
+     * @return the day the instant falls on, in the calendar's time zone
+     */
+    public LocalDate dayOf(Instant instant) {
+        return instant.atZone(clock.getZone()).toLocalDate();
+    }
+
+    /**
+     * @return period of the type the date falls in
+     */
+    public UsagePeriod periodOf(Type type, LocalDate date) {
+        int monthOfYear = Math.floorMod(date.getMonthValue() - fiscalYearStartMonth, 12);
+        int year = fiscalYearStartMonth == 1 || date.getMonthValue() < fiscalYearStartMonth ? date.getYear() : date.getYear() + 1;
+        return period(type, year, monthOfYear / type.getMonths() + 1);
+    }
+
+    /**
+     * @param year   -- fiscal year
+     * @param number -- 1-based period within the fiscal year
+     */
+    public UsagePeriod period(Type type, int year, int number) {
+        if (number < 1 || number > type.getPerYear()) {
+            throw new IllegalArgumentException(String.format("%s %d is not in a fiscal year", type, number));
+        }
+        LocalDate yearStart = LocalDate.of(fiscalYearStartMonth == 1 ? year : year - 1, fiscalYearStartMonth, 1);
+        return new UsagePeriod(type, year, number, yearStart.plusMonths((number - 1L) * type.getMonths()));
+    }
+
+    public UsagePeriod quarterOf(LocalDate date) {
+        return periodOf(Type.QUARTER, date);
+    }
+
+    public UsagePeriod quarter(int year, int quarter) {
+        return period(Type.QUARTER, year, quarter);
+    }
+
+    /**
+     * @param label -- quarter in format of yyyy-Qn
+     */
+    public UsagePeriod quarter(String label) {
+        int q = label.indexOf("-Q");
+        if (q < 0) {
+            throw new IllegalArgumentException("Not a quarter: " + label);
+        }
+        return quarter(Integer.parseInt(label.substring(0, q)), Integer.parseInt(label.substring(q + 2)));
+    }
+
+    /**
+     * @return quarters of the current fiscal year up to the current one, latest first
+     */
+    public List<UsagePeriod> getElapsedQuarters() {
+        UsagePeriod current = quarterOf(today());
+        List<UsagePeriod> quarters = new ArrayList<>(current.getNumber());
+        for (int quarter = current.getNumber(); quarter > 0; quarter--) {
+            quarters.add(quarter == current.getNumber() ? current : quarter(current.getYear(), quarter));
+        }
+        return quarters;
+    }
+
+    /**
+     * @return true once the last day of the period has passed
+     */
+    public boolean isClosed(UsagePeriod period) {
+        return period.getEnd().isBefore(today());
+    }
+
+    /**
+     * @return last day of the period, or today while the period is running
+     */
+    public LocalDate endOrToday(UsagePeriod period) {
+        LocalDate today = today();
+        return period.contains(today) ? today : period.getEnd();
+    }
+
+    /**
+     * @return whole days from the start to the end date, 0 if the end is before the start
+     */
+    public static long daysBetween(LocalDate start, LocalDate end) {
+        return Math.max(0, ChronoUnit.DAYS.between(start, end));
+    }
+
+}
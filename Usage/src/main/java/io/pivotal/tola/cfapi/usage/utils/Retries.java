@@ -0,0 +1,42 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Retries - resubscribes to failed publishers with exponential backoff and jitter
+ */
+public class Retries {
+
+    private Retries() {
+    }
+
+    /**
+     * Retries the errors that are retryable up to retries times. The n-th retry waits between half and all of
+     * firstBackoff * 2^(n-1), capped at maxBackoff, so that requests that failed together don't retry together.
+     *
+     * @param retryable -- tested with the unwrapped error
+     */
+    public static <T> Mono<T> withBackoff(Mono<T> source, int retries, Duration firstBackoff, Duration maxBackoff,
+                                          Predicate<Throwable> retryable) {
+        return source.retryWhen(errors -> errors.zipWith(Flux.range(1, Integer.MAX_VALUE), (e, attempt) -> {
+            if (attempt > retries || !retryable.test(Exceptions.unwrap(e))) {
+                throw Exceptions.propagate(e);
+            }
+            return attempt;
+        }).concatMap(attempt -> Mono.delay(backoff(attempt, firstBackoff, maxBackoff))));
+    }
+
+    static Duration backoff(int attempt, Duration firstBackoff, Duration maxBackoff) {
+        long max = maxBackoff.toMillis();
+        long exponential = firstBackoff.toMillis() << Math.min(attempt - 1, 30);
+        long backoff = exponential <= 0 || exponential > max ? max : exponential;
+        return Duration.ofMillis(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+    }
+
+}
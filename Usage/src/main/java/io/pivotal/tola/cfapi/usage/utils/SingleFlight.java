@@ -0,0 +1,44 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * SingleFlight - runs at most one computation per key at a time. Callers asking for a key that is already being
+ * computed share that computation's result, callers for different keys never wait on each other.
+ */
+public final class SingleFlight<V> {
+
+    private final Map<String, CompletableFuture<V>> inflight = new ConcurrentHashMap<>();
+
+    /**
+     * @param computation -- subscribed only when no computation for key is in flight
+     * @return result of the computation in flight for key
+     */
+    public Mono<V> execute(String key, Supplier<Mono<V>> computation) {
+        CompletableFuture<V> created = new CompletableFuture<>();
+        CompletableFuture<V> existing = inflight.putIfAbsent(key, created);
+        if (existing != null) {
+            return Mono.fromFuture(existing);
+        }
+
+        Mono.defer(computation).subscribe(created::complete, e -> {
+            inflight.remove(key, created);
+            created.completeExceptionally(e);
+        }, () -> {
+            inflight.remove(key, created);
+            // Completes callers of an empty computation, no-op otherwise
+            created.complete(null);
+        });
+        return Mono.fromFuture(created);
+    }
+
+    public int getInflight() {
+        return inflight.size();
+    }
+
+}
@@ -0,0 +1,71 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.time.LocalDate;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+/**
+ * UsagePeriod - a month, quarter or year of the fiscal calendar, from its first to its last day
+ */
+@Getter
+@EqualsAndHashCode
+public class UsagePeriod {
+
+    public enum Type {
+        MONTH(1), QUARTER(3), YEAR(12);
+
+        private final int months;
+
+        Type(int months) {
+            this.months = months;
+        }
+
+        public int getMonths() {
+            return months;
+        }
+
+        public int getPerYear() {
+            return 12 / months;
+        }
+    }
+
+    private final Type type;
+    private final int year;
+    // 1-based within the fiscal year, 1 for years
+    private final int number;
+    private final LocalDate start;
+    private final LocalDate end;
+
+    UsagePeriod(Type type, int year, int number, LocalDate start) {
+        this.type = type;
+        this.year = year;
+        this.number = number;
+        this.start = start;
+        this.end = start.plusMonths(type.months).minusDays(1);
+    }
+
+    public boolean contains(LocalDate date) {
+        return !date.isBefore(start) && !date.isAfter(end);
+    }
+
+    /**
+     * @return yyyy for years, yyyy-Qn for quarters and yyyy-Mn for months
+     */
+    public String getLabel() {
+        switch (type) {
+            case QUARTER:
+                return year + "-Q" + number;
+            case MONTH:
+                return year + "-M" + number;
+            default:
+                return String.valueOf(year);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getLabel();
+    }
+
+}
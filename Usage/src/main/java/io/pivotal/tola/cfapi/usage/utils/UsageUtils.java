@@ -1,44 +1,27 @@
 package io.pivotal.tola.cfapi.usage.utils;
 
-import io.pivotal.tola.cfapi.response.model.AppUsage_;
-import io.pivotal.tola.cfapi.response.model.ServiceUsage_;
-
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.text.DecimalFormat;
 
 public class UsageUtils {
 
-    public static <T> Predicate<T> uniqueApp(Function<? super T, Object> keyExtractor)
-    {
-        Map<Object, Boolean> map = new ConcurrentHashMap<>();
-        return t -> map.putIfAbsent(keyExtractor.apply(t), Boolean.TRUE) == null;
-    }
-
-    public static double computeTotalMbPerAis(List<AppUsage_> au){
-        return au.stream().map(o-> o.getMemoryInMbPerInstance()).mapToLong(Integer::longValue).sum() / au.size();
-    }
-
-    public static double computeTotalDurationInSecs(List<AppUsage_> au, long days){
-        if(days == 0)
-            days = 1;
-        return (au.stream().map(o->o.getDurationInSeconds()).mapToDouble(Double::doubleValue).sum())/(86400*days);
-    }
+    // DecimalFormat is not thread safe, each rendering thread keeps its own
+    private static final ThreadLocal<DecimalFormat> USAGE_FORMAT = ThreadLocal.withInitial(() -> new DecimalFormat("#.###"));
 
-    public static double computeTotalSIDurationInSecs(List<ServiceUsage_> si, long days){
+    /**
+     * @param days -- number of days in a period, an empty period counts as one day
+     * @return number of seconds usage durations are averaged over
+     */
+    public static long periodInSeconds(long days){
         if(days == 0)
             days = 1;
-        return (si.stream().map(o->o.getDurationInSeconds()).mapToDouble(Double::doubleValue).sum())/(86400*days);
-    }
-
-    public static List<AppUsage_> getUniqueApps(List<AppUsage_> au){
-        return au.stream().filter(UsageUtils.uniqueApp(p -> p.getAppName())).collect(Collectors.toList());
+        return 86400 * days;
     }
 
-    public static List<ServiceUsage_> getUniqueServices(List<ServiceUsage_> si){
-        return si.stream().filter(UsageUtils.uniqueApp(p->p.getServiceInstanceGuid())).collect(Collectors.toList());
+    /**
+     * @param value -- usage total
+     * @return value with at most three decimals, as shown in views and reports
+     */
+    public static String format(double value){
+        return USAGE_FORMAT.get().format(value);
     }
 }
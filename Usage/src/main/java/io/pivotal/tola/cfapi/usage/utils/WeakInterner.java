@@ -0,0 +1,161 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * WeakInterner - keeps one canonical String per value, for as long as something else references it.
+ * <p>
+ * The table is split in stripes with a lock each, so threads interning different values rarely wait for each
+ * other, and every lookup takes one lock once. Values are held weakly and their entries are dropped once the
+ * values are collected, so identifiers of deleted apps and service instances don't pile up.
+ * <p>
+ * Lookups by char range let parsers resolve identifiers straight from their buffers without creating a String
+ * for values that are already known.
+ */
+public final class WeakInterner {
+
+    private static final int STRIPES = 64;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public WeakInterner() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * @return the canonical instance of value
+     */
+    public String intern(String value) {
+        int hash = spread(value.hashCode());
+        return stripe(hash).intern(hash, value, null, 0, value.length());
+    }
+
+    /**
+     * @return the canonical instance of the chars from offset to offset + length
+     */
+    public String intern(char[] chars, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        hash = spread(hash);
+        return stripe(hash).intern(hash, null, chars, offset, length);
+    }
+
+    /**
+     * @return number of values held, including collected values whose entries haven't been dropped yet
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    ///////////////////////////////////////
+
+    private Stripe stripe(int hash) {
+        // The high bits pick the stripe, the low bits the bucket within it
+        return stripes[(hash >>> 26) & (STRIPES - 1)];
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry extends WeakReference<String> {
+        private final int hash;
+        private Entry next;
+
+        Entry(String value, int hash, Entry next, ReferenceQueue<String> queue) {
+            super(value, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private static final class Stripe {
+
+        private final ReferenceQueue<String> queue = new ReferenceQueue<>();
+        private Entry[] table = new Entry[64];
+        private int size;
+
+        /**
+         * @param value -- the value, or null when it is given by chars
+         */
+        synchronized String intern(int hash, String value, char[] chars, int offset, int length) {
+            expunge();
+            int bucket = hash & (table.length - 1);
+            for (Entry e = table[bucket]; e != null; e = e.next) {
+                if (e.hash != hash) {
+                    continue;
+                }
+                String canonical = e.get();
+                if (canonical != null && (value != null ? canonical.equals(value) : equals(canonical, chars, offset, length))) {
+                    return canonical;
+                }
+            }
+
+            String canonical = value != null ? value : new String(chars, offset, length);
+            table[bucket] = new Entry(canonical, hash, table[bucket], queue);
+            // Keeps chains short, at most one entry per bucket on average
+            if (++size > table.length) {
+                resize();
+            }
+            return canonical;
+        }
+
+        synchronized int size() {
+            expunge();
+            return size;
+        }
+
+        private void expunge() {
+            for (Entry stale = (Entry) queue.poll(); stale != null; stale = (Entry) queue.poll()) {
+                int bucket = stale.hash & (table.length - 1);
+                Entry previous = null;
+                for (Entry e = table[bucket]; e != null; previous = e, e = e.next) {
+                    if (e == stale) {
+                        if (previous == null) {
+                            table[bucket] = e.next;
+                        } else {
+                            previous.next = e.next;
+                        }
+                        size--;
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void resize() {
+            Entry[] resized = new Entry[table.length * 2];
+            int mask = resized.length - 1;
+            for (Entry head : table) {
+                for (Entry e = head, next; e != null; e = next) {
+                    next = e.next;
+                    e.next = resized[e.hash & mask];
+                    resized[e.hash & mask] = e;
+                }
+            }
+            table = resized;
+        }
+
+        private static boolean equals(String value, char[] chars, int offset, int length) {
+            if (value.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) != chars[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+}
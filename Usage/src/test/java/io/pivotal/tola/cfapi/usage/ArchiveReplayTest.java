@@ -0,0 +1,149 @@
+package io.pivotal.tola.cfapi.usage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.model.SIUsage;
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness;
+import io.pivotal.tola.cfapi.usage.service.UsageService;
+import io.pivotal.tola.cfapi.usage.store.UsageArchive;
+import io.pivotal.tola.cfapi.usage.support.AppUsageStandIn;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import io.pivotal.tola.cfapi.usage.utils.UsagePeriod;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.util.FileSystemUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Warms up a foundation against an app-usage stand-in with the archive on, then rebuilds its usage from the archive
+ * alone.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:archive;DB_CLOSE_DELAY=-1",
+        "usage.cronScheduleExpr=-",
+        "usage.archive=true"
+})
+@ContextConfiguration(initializers = ArchiveReplayTest.StandInInitializer.class)
+public class ArchiveReplayTest {
+
+    private static final String FOUNDATION = "archived";
+    private static final int ORGS = 5;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveReplayTest.class);
+
+    private static AppUsageStandIn standIn;
+    private static Path archiveDir;
+
+    @Autowired
+    private UsageService usageService;
+
+    @Autowired
+    private UsageArchive archive;
+
+    @Autowired
+    private PeriodCalendar periods;
+
+    @Autowired
+    private FoundationReadiness readiness;
+
+    @BeforeClass
+    public static void startStandIn() throws IOException {
+        archiveDir = Files.createTempDirectory("usage-archive");
+        standIn = AppUsageStandIn.start(AppUsageStandIn.Settings.builder()
+                .orgs(ORGS)
+                .appRecords(2000)
+                .svcRecords(500)
+                .build());
+    }
+
+    @AfterClass
+    public static void stopStandIn() throws IOException {
+        standIn.close();
+        FileSystemUtils.deleteRecursively(archiveDir);
+    }
+
+    @Test
+    public void rebuildsTheUsageFetchedWithoutFetching() throws InterruptedException {
+        awaitReady();
+        List<UsagePeriod> quarters = periods.getElapsedQuarters();
+
+        Map<String, OrgUsage> appUsage = new HashMap<>();
+        Map<String, SIUsage> siUsage = new HashMap<>();
+        for (String orgGuid : standIn.getOrgGuids()) {
+            for (UsagePeriod quarter : quarters) {
+                String key = orgGuid + quarter;
+                appUsage.put(key, usageService.appUsage(FOUNDATION, orgGuid, quarter.getYear(), quarter.getNumber()));
+                siUsage.put(key, usageService.svcUsage(FOUNDATION, orgGuid, quarter.getYear(), quarter.getNumber()));
+            }
+        }
+        assertTrue(archive.getSize() > 0);
+        assertNotNull(archive.getLatest(UsageArchive.Type.ORGS, FOUNDATION, null));
+
+        usageService.getAppUsageCache().invalidateAll();
+        usageService.getSIUsageCache().invalidateAll();
+        Map<String, Long> requests = standIn.getRequestCounts();
+
+        usageService.replayArchive();
+        LOG.info("Replayed {} archived responses, {} KB compressed", archive.getSize(), archive.getBytes() >> 10);
+
+        assertEquals(requests, standIn.getRequestCounts());
+        assertEquals(ORGS * quarters.size(), usageService.getAppUsageCache().estimatedSize());
+        assertEquals(ORGS * quarters.size(), usageService.getSIUsageCache().estimatedSize());
+        for (String orgGuid : standIn.getOrgGuids()) {
+            for (UsagePeriod quarter : quarters) {
+                String key = orgGuid + quarter;
+                assertEquals(appUsage.get(key), usageService.appUsage(FOUNDATION, orgGuid, quarter.getYear(), quarter.getNumber()));
+                assertEquals(siUsage.get(key), usageService.svcUsage(FOUNDATION, orgGuid, quarter.getYear(), quarter.getNumber()));
+            }
+        }
+        assertEquals(requests, standIn.getRequestCounts());
+    }
+
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 60000;
+        while ((!readiness.isReady(FOUNDATION) || usageService.isRefreshing(FOUNDATION)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(readiness.isReady(FOUNDATION));
+    }
+
+    static class StandInInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of(
+                    "usage.archiveDir=" + archiveDir,
+                    "usage.foundations[0].name=" + FOUNDATION,
+                    "usage.foundations[0].apiHost=localhost",
+                    "usage.foundations[0].port=" + standIn.getPort(),
+                    "usage.foundations[0].secure=false",
+                    "usage.foundations[0].appUsageUrl=" + standIn.getBaseUrl(),
+                    "usage.foundations[0].username=admin",
+                    "usage.foundations[0].password=admin"
+            ).applyTo(context);
+        }
+
+    }
+
+}
@@ -0,0 +1,155 @@
+package io.pivotal.tola.cfapi.usage;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness;
+import io.pivotal.tola.cfapi.usage.service.UsageService;
+import io.pivotal.tola.cfapi.usage.support.AppUsageStandIn;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a full scheduled refresh of a foundation against the app-usage stand-in, and checks the upstream requests
+ * per endpoint, the bytes transferred and the metrics it records.
+ * <p>
+ * The default estate keeps the suite fast. Size it with -Dload.orgs, -Dload.appRecords, -Dload.svcRecords,
+ * -Dload.spaces, -Dload.appsPerSpace, -Dload.latencyMs and -Dload.fetchConcurrency, and compare uncompressed
+ * transfer with -Dload.compression=false. Refresh times are measured by RefreshBenchmark, e.g.
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="Refresh -p orgs=100"}.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:refreshload;DB_CLOSE_DELAY=-1",
+        "usage.cronScheduleExpr=-",
+        "usage.warmUpOnStartup=false"
+})
+@ContextConfiguration(initializers = RefreshLoadTest.StandInInitializer.class)
+public class RefreshLoadTest {
+
+    private static final String FOUNDATION = "standin";
+    private static final int ORGS = Integer.getInteger("load.orgs", 20);
+    private static final boolean COMPRESSION = Boolean.parseBoolean(System.getProperty("load.compression", "true"));
+
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshLoadTest.class);
+
+    private static AppUsageStandIn standIn;
+
+    @Autowired
+    private UsageService usageService;
+
+    @Autowired
+    private PeriodCalendar periods;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private FoundationReadiness readiness;
+
+    @BeforeClass
+    public static void startStandIn() {
+        standIn = AppUsageStandIn.start(AppUsageStandIn.Settings.builder()
+                .orgs(ORGS)
+                .appRecords(Integer.getInteger("load.appRecords", 2000))
+                .svcRecords(Integer.getInteger("load.svcRecords", 500))
+                .spaces(Integer.getInteger("load.spaces", 10))
+                .appsPerSpace(Integer.getInteger("load.appsPerSpace", 20))
+                .latency(Duration.ofMillis(Long.getLong("load.latencyMs", 20)))
+                .compression(COMPRESSION)
+                .build());
+    }
+
+    @AfterClass
+    public static void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void refreshesEveryOrgAndQuarter() throws InterruptedException {
+        // Orgs are discovered in the background after startup
+        long deadline = System.currentTimeMillis() + 30000;
+        while ((!readiness.isReady(FOUNDATION) || usageService.isRefreshing(FOUNDATION)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(readiness.isReady(FOUNDATION));
+
+        Map<String, Long> before = standIn.getRequestCounts();
+        double wireBefore = meterRegistry.find("usage.fetch.wire.bytes").tags("foundation", FOUNDATION).functionCounter().count();
+
+        usageService.refreshUsage();
+
+        long appRequests = standIn.getRequests(AppUsageStandIn.APP_USAGES) - before.getOrDefault(AppUsageStandIn.APP_USAGES, 0L);
+        long svcRequests = standIn.getRequests(AppUsageStandIn.SERVICE_USAGES) - before.getOrDefault(AppUsageStandIn.SERVICE_USAGES, 0L);
+        double wire = meterRegistry.find("usage.fetch.wire.bytes").tags("foundation", FOUNDATION).functionCounter().count() - wireBefore;
+        double inflated = meterRegistry.find("usage.fetch.bytes").tags("foundation", FOUNDATION).summaries().stream()
+                .mapToDouble(DistributionSummary::totalAmount).sum();
+        LOG.info("Refreshed {} orgs with {} app_usages and {} service_usages requests, {} KB received for {} KB of usage, "
+                        + "all requests {}", ORGS, appRequests, svcRequests, (long) wire >> 10, (long) inflated >> 10,
+                standIn.getRequestCounts());
+
+        int quarters = periods.getElapsedQuarters().size();
+        assertEquals(ORGS, usageService.getOrgs(FOUNDATION).size());
+        assertEquals(ORGS * quarters, usageService.getAppUsageCache().estimatedSize());
+        assertEquals(ORGS * quarters, usageService.getSIUsageCache().estimatedSize());
+        assertTrue(appRequests >= ORGS * quarters);
+        assertTrue(svcRequests >= ORGS * quarters);
+
+        // One usage.fetch timer per org
+        Collection<Timer> fetches = meterRegistry.find("usage.fetch").tags("foundation", FOUNDATION, "kind", "app", "outcome", "success").timers();
+        DistributionSummary records = meterRegistry.find("usage.fetch.records").tags("foundation", FOUNDATION, "kind", "app").summary();
+        assertEquals(ORGS, fetches.size());
+        assertEquals(appRequests, fetches.stream().mapToLong(Timer::count).sum());
+        assertEquals(appRequests, records.count());
+        assertTrue(records.totalAmount() > 0);
+        assertTrue(meterRegistry.find("usage.fetch.bytes").tags("foundation", FOUNDATION).summary().totalAmount() > 0);
+        assertTrue(meterRegistry.find("usage.parse").tags("foundation", FOUNDATION).timer().count() > 0);
+        assertTrue(meterRegistry.find("usage.aggregate").tags("foundation", FOUNDATION).timer().count() > 0);
+        assertEquals(1, meterRegistry.find("usage.refresh.foundation").tags("foundation", FOUNDATION).timer().count());
+        assertEquals(1, meterRegistry.find("usage.refresh").timer().count());
+        assertTrue(meterRegistry.find("usage.fetch.limit").tags("foundation", FOUNDATION).gauge().value() >= 1);
+        assertEquals(0, meterRegistry.find("usage.fetch.queued").tags("foundation", FOUNDATION).gauge().value(), 0);
+        assertTrue(wire > 0);
+        if (COMPRESSION) {
+            assertTrue(wire < inflated / 2);
+        }
+    }
+
+    static class StandInInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of(
+                    "usage.foundations[0].name=" + FOUNDATION,
+                    "usage.foundations[0].apiHost=localhost",
+                    "usage.foundations[0].port=" + standIn.getPort(),
+                    "usage.foundations[0].secure=false",
+                    "usage.foundations[0].appUsageUrl=" + standIn.getBaseUrl(),
+                    "usage.foundations[0].username=admin",
+                    "usage.foundations[0].password=admin",
+                    "usage.foundations[0].fetchConcurrency=" + Integer.getInteger("load.fetchConcurrency", 8)
+            ).applyTo(context);
+        }
+
+    }
+
+}
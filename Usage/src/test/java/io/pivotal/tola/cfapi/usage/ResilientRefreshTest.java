@@ -0,0 +1,175 @@
+package io.pivotal.tola.cfapi.usage;
+
+import java.time.Duration;
+import java.util.List;
+
+import io.pivotal.tola.cfapi.usage.service.CircuitBreaker;
+import io.pivotal.tola.cfapi.usage.service.CircuitOpenException;
+import io.pivotal.tola.cfapi.usage.service.FetchFailures.Failure;
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness;
+import io.pivotal.tola.cfapi.usage.service.UsageClient;
+import io.pivotal.tola.cfapi.usage.service.UsageService;
+import io.pivotal.tola.cfapi.usage.support.AppUsageStandIn;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import reactor.core.Exceptions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Refreshes a foundation against an app-usage stand-in that cuts off and stalls some responses, fails every usage
+ * request of one org, and goes down altogether.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:resilient;DB_CLOSE_DELAY=-1",
+        "usage.cronScheduleExpr=-",
+        "usage.warmUpOnStartup=false",
+        "usage.failedFetchRetryInterval=PT1H",
+        "usage.fetchTimeout=PT0.5S",
+        "usage.fetchRetries=4",
+        "usage.fetchRetryBackoff=PT0.02S",
+        "usage.fetchRetryMaxBackoff=PT0.2S",
+        "usage.circuitWindow=100",
+        "usage.circuitMinCalls=100",
+        "usage.circuitFailureRate=0.9",
+        "usage.circuitOpenDuration=PT1S"
+})
+@ContextConfiguration(initializers = ResilientRefreshTest.StandInInitializer.class)
+public class ResilientRefreshTest {
+
+    private static final String FOUNDATION = "faulty";
+    private static final int ORGS = 5;
+
+    private static AppUsageStandIn standIn;
+
+    @Autowired
+    private UsageService usageService;
+
+    @Autowired
+    private UsageClient usageClient;
+
+    @Autowired
+    private PeriodCalendar periods;
+
+    @Autowired
+    private FoundationReadiness readiness;
+
+    @BeforeClass
+    public static void startStandIn() {
+        standIn = AppUsageStandIn.start(AppUsageStandIn.Settings.builder()
+                .orgs(ORGS)
+                .appRecords(200)
+                .svcRecords(50)
+                .truncateRate(0.05)
+                .stallRate(0.05)
+                .stall(Duration.ofSeconds(5))
+                .build());
+    }
+
+    @AfterClass
+    public static void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void completesWithoutTheBrokenOrgAndFetchesItOnceHealed() throws InterruptedException {
+        awaitReady();
+        String broken = standIn.getOrgGuids().get(ORGS - 1);
+        standIn.breakOrgs(broken);
+
+        usageService.refreshUsage();
+
+        int quarters = periods.getElapsedQuarters().size();
+        assertEquals((ORGS - 1) * quarters, usageService.getAppUsageCache().estimatedSize());
+        assertEquals((ORGS - 1) * quarters, usageService.getSIUsageCache().estimatedSize());
+        List<Failure> failures = usageService.getFetchFailures().getFailures(FOUNDATION);
+        assertEquals(2 * quarters, failures.size());
+        assertTrue(failures.stream().allMatch(f -> f.getOrgGuid().equals(broken) && f.getAttempts() == 1));
+
+        standIn.heal();
+        usageService.retryFailedFetches();
+        long deadline = System.currentTimeMillis() + 30000;
+        while (!usageService.getFetchFailures().getFailures(FOUNDATION).isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        assertTrue(usageService.getFetchFailures().getFailures(FOUNDATION).isEmpty());
+        assertEquals(ORGS * quarters, usageService.getAppUsageCache().estimatedSize());
+        assertEquals(ORGS * quarters, usageService.getSIUsageCache().estimatedSize());
+    }
+
+    @Test
+    public void failsFastWhileTheServiceIsDownAndRecovers() throws InterruptedException {
+        awaitReady();
+        CircuitBreaker breaker = usageClient.getBreakers().iterator().next();
+        String orgGuid = standIn.getOrgGuids().get(0);
+
+        standIn.setDown(true);
+        for (int i = 0; i < 200 && breaker.getState() == CircuitBreaker.State.CLOSED; i++) {
+            fetch(orgGuid);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        long sent = standIn.getRequests(AppUsageStandIn.APP_USAGES);
+        assertTrue(fetch(orgGuid) instanceof CircuitOpenException);
+        assertEquals(sent, standIn.getRequests(AppUsageStandIn.APP_USAGES));
+
+        standIn.setDown(false);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (breaker.getState() != CircuitBreaker.State.CLOSED && System.currentTimeMillis() < deadline) {
+            fetch(orgGuid);
+            Thread.sleep(100);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private void awaitReady() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        while ((!readiness.isReady(FOUNDATION) || usageService.isRefreshing(FOUNDATION)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertTrue(readiness.isReady(FOUNDATION));
+    }
+
+    /**
+     * @return the error of a single app_usages request, if it failed
+     */
+    private Throwable fetch(String orgGuid) {
+        try {
+            usageClient.appUsages(FOUNDATION, orgGuid, "2019-01-01", "2019-01-01").blockLast();
+            return null;
+        } catch (RuntimeException e) {
+            return Exceptions.unwrap(e);
+        }
+    }
+
+    static class StandInInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of(
+                    "usage.foundations[0].name=" + FOUNDATION,
+                    "usage.foundations[0].apiHost=localhost",
+                    "usage.foundations[0].port=" + standIn.getPort(),
+                    "usage.foundations[0].secure=false",
+                    "usage.foundations[0].appUsageUrl=" + standIn.getBaseUrl(),
+                    "usage.foundations[0].username=admin",
+                    "usage.foundations[0].password=admin"
+            ).applyTo(context);
+        }
+
+    }
+
+}
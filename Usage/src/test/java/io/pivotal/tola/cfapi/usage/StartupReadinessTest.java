@@ -0,0 +1,135 @@
+package io.pivotal.tola.cfapi.usage;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Map;
+
+import io.pivotal.tola.cfapi.usage.configuration.ReadinessHealthIndicator;
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness;
+import io.pivotal.tola.cfapi.usage.service.FoundationReadiness.State;
+import io.pivotal.tola.cfapi.usage.service.UsageService;
+import io.pivotal.tola.cfapi.usage.support.AppUsageStandIn;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Starts the application against a slow stand-in foundation and an unreachable one, and checks that it is up while
+ * they are still warming up.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:startup;DB_CLOSE_DELAY=-1",
+        "usage.cronScheduleExpr=-"
+})
+@ContextConfiguration(initializers = StartupReadinessTest.FoundationsInitializer.class)
+public class StartupReadinessTest {
+
+    private static final String SLOW = "slow";
+    private static final String UNREACHABLE = "unreachable";
+    private static final int ORGS = 3;
+
+    // Discovery alone takes several round trips to the stand-in
+    private static final Duration LATENCY = Duration.ofSeconds(2);
+
+    private static final Logger LOG = LoggerFactory.getLogger(StartupReadinessTest.class);
+
+    private static AppUsageStandIn standIn;
+
+    @Autowired
+    private FoundationReadiness readiness;
+
+    @Autowired
+    private ReadinessHealthIndicator readinessHealth;
+
+    @Autowired
+    private UsageService usageService;
+
+    @BeforeClass
+    public static void startStandIn() {
+        standIn = AppUsageStandIn.start(AppUsageStandIn.Settings.builder()
+                .orgs(ORGS)
+                .appRecords(100)
+                .svcRecords(20)
+                .latency(LATENCY)
+                .build());
+    }
+
+    @AfterClass
+    public static void stopStandIn() {
+        standIn.close();
+    }
+
+    @Test
+    public void startsBeforeFoundationsAreWarmedUp() throws InterruptedException {
+        assertNotEquals(State.READY, readiness.getStatus(SLOW).getState());
+        assertEquals(Status.OUT_OF_SERVICE, readinessHealth.health().getStatus());
+
+        long deadline = System.currentTimeMillis() + 60000;
+        while (!(readiness.getStatus(SLOW).getState().isDone() && readiness.getStatus(UNREACHABLE).getState().isDone())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        LOG.info("Foundation {} ready after {}, foundation {} {} after {}", SLOW, readiness.getWarmUp(SLOW),
+                UNREACHABLE, readiness.getStatus(UNREACHABLE).getState(), readiness.getWarmUp(UNREACHABLE));
+
+        assertEquals(State.READY, readiness.getStatus(SLOW).getState());
+        assertEquals(ORGS, usageService.getOrgs(SLOW).size());
+        assertTrue(usageService.getAppUsageCache().estimatedSize() > 0);
+        assertEquals(State.FAILED, readiness.getStatus(UNREACHABLE).getState());
+        assertTrue(usageService.getOrgs(UNREACHABLE).isEmpty());
+
+        Health health = readinessHealth.health();
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(State.FAILED, ((Map<?, ?>) health.getDetails().get(UNREACHABLE)).get("state"));
+    }
+
+    static class FoundationsInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of(
+                    "usage.foundations[0].name=" + SLOW,
+                    "usage.foundations[0].apiHost=localhost",
+                    "usage.foundations[0].port=" + standIn.getPort(),
+                    "usage.foundations[0].secure=false",
+                    "usage.foundations[0].appUsageUrl=" + standIn.getBaseUrl(),
+                    "usage.foundations[0].username=admin",
+                    "usage.foundations[0].password=admin",
+                    "usage.foundations[1].name=" + UNREACHABLE,
+                    "usage.foundations[1].apiHost=localhost",
+                    "usage.foundations[1].port=" + closedPort(),
+                    "usage.foundations[1].secure=false",
+                    "usage.foundations[1].username=admin",
+                    "usage.foundations[1].password=admin"
+            ).applyTo(context);
+        }
+
+        private static int closedPort() {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                return socket.getLocalPort();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,235 @@
+package io.pivotal.tola.cfapi.usage.configuration;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TokenCacheTest {
+
+    private static final Instant NOW = Instant.parse("2019-05-15T10:00:00Z");
+
+    private final MutableClock clock = new MutableClock(NOW);
+    private final ManualScheduler scheduler = new ManualScheduler(clock);
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger invalidations = new AtomicInteger();
+
+    @Test
+    public void keepsTheTokenUntilItExpires() {
+        TokenCache cache = cache(() -> Mono.just(token(requests.incrementAndGet(), NOW.plus(Duration.ofHours(1)))));
+
+        String token = cache.getToken().block();
+        clock.advance(Duration.ofMinutes(59));
+        assertEquals(token, cache.getToken().block());
+        assertEquals(1, requests.get());
+
+        clock.advance(Duration.ofMinutes(2));
+        assertEquals(token(2, NOW.plus(Duration.ofHours(1))), cache.getToken().block());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void concurrentMissesShareOneRequest() {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        TokenCache cache = cache(() -> {
+            requests.incrementAndGet();
+            return Mono.fromFuture(response);
+        });
+
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            cache.getToken().subscribe(tokens::add);
+        }
+        assertEquals(0, tokens.size());
+
+        response.complete(token(1, NOW.plus(Duration.ofHours(1))));
+
+        assertEquals(3, tokens.size());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void sourceThatThrowsFailsTheRequestOnly() {
+        TokenCache cache = cache(() -> {
+            if (requests.incrementAndGet() == 1) {
+                throw new IllegalStateException("UAA unreachable");
+            }
+            return Mono.just(token(2, NOW.plus(Duration.ofHours(1))));
+        });
+
+        assertFails(cache, IllegalStateException.class);
+        assertEquals(token(2, NOW.plus(Duration.ofHours(1))), cache.getToken().block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    public void emptySourceFailsTheRequestOnly() {
+        TokenCache cache = cache(() -> requests.incrementAndGet() == 1
+                ? Mono.empty() : Mono.just(token(2, NOW.plus(Duration.ofHours(1)))));
+
+        assertFails(cache, IllegalStateException.class);
+        assertEquals(token(2, NOW.plus(Duration.ofHours(1))), cache.getToken().block(Duration.ofSeconds(5)));
+    }
+
+    @Test
+    public void refreshesAheadOfExpiryAndRetriesFailedRefreshes() {
+        TokenCache cache = cache(() -> {
+            int request = requests.incrementAndGet();
+            if (request == 2 || request == 3) {
+                return Mono.error(new IllegalStateException("UAA unavailable"));
+            }
+            return Mono.just(token(request, clock.instant().plus(Duration.ofHours(1))));
+        });
+        cache.getToken().block();
+
+        // Two minutes ahead of expiry, then halfway to expiry twice
+        scheduler.advance(Duration.ofMinutes(58));
+        assertEquals(2, requests.get());
+        scheduler.advance(Duration.ofSeconds(59));
+        assertEquals(2, requests.get());
+        scheduler.advance(Duration.ofSeconds(1));
+        assertEquals(3, requests.get());
+        scheduler.advance(Duration.ofSeconds(30));
+        assertEquals(4, requests.get());
+        assertEquals(3, invalidations.get());
+
+        // Issued on the last retry, 59:30 after the first
+        assertEquals(token(4, NOW.plus(Duration.ofSeconds(3570)).plus(Duration.ofHours(1))), cache.getToken().block());
+        assertEquals(4, requests.get());
+
+        cache.dispose();
+        scheduler.advance(Duration.ofHours(2));
+        assertEquals(4, requests.get());
+    }
+
+    ///////////////////////////////////////
+
+    private TokenCache cache(Supplier<Mono<String>> source) {
+        return new TokenCache("f", source, invalidations::incrementAndGet, Duration.ofMinutes(2), clock, scheduler);
+    }
+
+    private static void assertFails(TokenCache cache, Class<? extends Throwable> type) {
+        try {
+            cache.getToken().block(Duration.ofSeconds(5));
+            fail("token request should fail");
+        } catch (RuntimeException e) {
+            assertTrue(e.toString(), type.isInstance(e) || type.isInstance(e.getCause()));
+        }
+    }
+
+    private static String token(int request, Instant expiresAt) {
+        String claims = "{\"exp\":" + expiresAt.getEpochSecond() + ",\"jti\":\"" + request + "\"}";
+        return "bearer header." + Base64.getUrlEncoder().withoutPadding().encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".signature";
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    /**
+     * Runs scheduled tasks on the calling thread as the clock is advanced past them
+     */
+    private static class ManualScheduler implements Scheduler {
+        private final MutableClock clock;
+        private final List<Task> tasks = new ArrayList<>();
+
+        ManualScheduler(MutableClock clock) {
+            this.clock = clock;
+        }
+
+        void advance(Duration duration) {
+            clock.advance(duration);
+            for (Task due = due(); due != null; due = due()) {
+                tasks.remove(due);
+                due.run.run();
+            }
+        }
+
+        private Task due() {
+            return tasks.stream()
+                    .filter(t -> !t.disposed && !t.at.isAfter(clock.instant()))
+                    .min((a, b) -> a.at.compareTo(b.at))
+                    .orElse(null);
+        }
+
+        @Override
+        public Disposable schedule(Runnable task) {
+            return schedule(task, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public Disposable schedule(Runnable task, long delay, TimeUnit unit) {
+            Task scheduled = new Task(clock.instant().plusMillis(unit.toMillis(delay)), task);
+            tasks.add(scheduled);
+            return scheduled;
+        }
+
+        @Override
+        public Worker createWorker() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class Task implements Disposable {
+        private final Instant at;
+        private final Runnable run;
+        private boolean disposed;
+
+        Task(Instant at, Runnable run) {
+            this.at = at;
+            this.run = run;
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return disposed;
+        }
+    }
+
+}
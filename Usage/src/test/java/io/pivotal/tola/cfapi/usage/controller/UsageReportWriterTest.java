@@ -0,0 +1,113 @@
+package io.pivotal.tola.cfapi.usage.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageRecordReader;
+import io.pivotal.tola.cfapi.usage.model.DailyAppUsage;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.support.UsagePayloads;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class UsageReportWriterTest {
+
+    private static final int APPS = 1000;
+    private static final int ROW_WINDOW = 10;
+
+    @Test
+    public void streamingReportKeepsOnlyTheRowWindow() throws Exception {
+        try (UsageReportWriter writer = new UsageReportWriter(ROW_WINDOW)) {
+            writer.addAppUsage("org-a", orgUsage("org-a", APPS));
+            writer.addAppUsage("org-b", orgUsage("org-b", APPS));
+
+            for (String org : new String[]{"org-a", "org-b"}) {
+                SXSSFSheet sheet = writer.getSheet(org);
+                int lastRow = sheet.getLastRowNum();
+                assertEquals(lastRow - ROW_WINDOW, sheet.getLastFlushedRowNum());
+                assertNull(sheet.getRow(0));
+                assertNotNull(sheet.getRow(lastRow));
+            }
+        }
+    }
+
+    @Test
+    public void inMemoryReportKeepsEveryRow() throws Exception {
+        try (UsageReportWriter writer = new UsageReportWriter(-1)) {
+            writer.addAppUsage("org-a", orgUsage("org-a", APPS));
+
+            SXSSFSheet sheet = writer.getSheet("org-a");
+            assertEquals(-1, sheet.getLastFlushedRowNum());
+            assertEquals(sheet.getLastRowNum() + 1 - 4, sheet.getPhysicalNumberOfRows());
+        }
+    }
+
+    @Test
+    public void writesOneSheetPerOrg() throws Exception {
+        OrgUsage orgB = orgUsage("org-b", 100);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (UsageReportWriter writer = new UsageReportWriter(10)) {
+            writer.addAppUsage("org-a", orgUsage("org-a", 100));
+            writer.addAppUsage("org-b", orgB);
+            writer.write(out);
+        }
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(2, workbook.getNumberOfSheets());
+            XSSFSheet sheet = workbook.getSheet("org-b");
+            assertEquals("org-b", sheet.getRow(2).getCell(0).getStringCellValue());
+            // Spaces start at row 7, followed by two breaks, the applications title and header, then the apps
+            assertEquals(7 + orgB.getSpaceUsage().size() + 4 + orgB.getAUsage().size() - 1, sheet.getLastRowNum());
+        }
+    }
+
+    @Test
+    public void writesAColumnPerDay() throws Exception {
+        DailyAppUsage app = DailyAppUsage.builder()
+                .appGuid("app-1")
+                .appName("app-1-name")
+                .spaceName("space-1-name")
+                .aiCount(new double[]{2.0, 0.0, 1.5})
+                .gbPerAi(new double[]{0.5, 0.0, 1.0})
+                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (UsageReportWriter writer = new UsageReportWriter(10)) {
+            writer.addDailyAppUsage("org-a", LocalDate.parse("2019-03-30"), Arrays.asList(app));
+            writer.write(out);
+        }
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            XSSFSheet sheet = workbook.getSheet("org-a");
+            assertEquals("2019-04-01", sheet.getRow(1).getCell(5).getStringCellValue());
+            assertEquals("AI Count", sheet.getRow(2).getCell(2).getStringCellValue());
+            assertEquals(1.5, sheet.getRow(2).getCell(5).getNumericCellValue(), 0.0);
+            assertEquals("Gb per AI", sheet.getRow(3).getCell(2).getStringCellValue());
+            assertEquals(0.5, sheet.getRow(3).getCell(3).getNumericCellValue(), 0.0);
+            assertEquals(3, sheet.getLastRowNum());
+        }
+    }
+
+    ///////////////////////////////////////
+
+    /**
+     * @param apps -- number of app usage records, spread over spaces of up to 200 apps
+     */
+    private static OrgUsage orgUsage(String orgGuid, int apps) throws IOException {
+        AppUsageAccumulator accumulator = new AppUsageAccumulator();
+        AppUsageRecordReader reader = new AppUsageRecordReader(accumulator);
+        reader.feed(UsagePayloads.appUsages(orgGuid, apps, apps / 200 + 4, 200, orgGuid.hashCode()));
+        reader.endOfInput();
+        return accumulator.toOrgUsage(orgGuid, 2019, 1, 89);
+    }
+
+}
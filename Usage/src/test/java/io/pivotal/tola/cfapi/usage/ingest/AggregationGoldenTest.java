@@ -0,0 +1,227 @@
+package io.pivotal.tola.cfapi.usage.ingest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.model.SIUsage;
+import io.pivotal.tola.cfapi.usage.support.UsagePayloads;
+import io.pivotal.tola.cfapi.usage.support.UsageTimeline;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.springframework.util.StreamUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks the aggregation kernel against OrgUsage/SIUsage produced by the original multi-pass aggregation
+ * of the same responses. The golden files were recorded from that implementation and must match exactly.
+ * <p>
+ * Usage of consecutive periods of a timeline, merged the way stored aggregates and their deltas are, must match the
+ * single response of the whole period exactly too.
+ */
+@RunWith(Parameterized.class)
+public class AggregationGoldenTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+
+    private static final LocalDate Q1_FIRST = LocalDate.of(2019, 1, 1);
+    private static final LocalDate Q1_LAST = LocalDate.of(2019, 3, 31);
+    private static final LocalDate[] SPLITS = {LocalDate.of(2019, 1, 2), LocalDate.of(2019, 2, 1), LocalDate.of(2019, 3, 31)};
+    private static final List<String> TIMELINE_SERVICES = Arrays.asList("p.mysql", "p.rabbitmq", "p.redis");
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> periods() {
+        return Arrays.asList(new Object[][]{
+                {"quarter", 89L},
+                {"sameday", 0L}
+        });
+    }
+
+    private final String period;
+    private final long days;
+
+    public AggregationGoldenTest(String period, long days) {
+        this.period = period;
+        this.days = days;
+    }
+
+    @Test
+    public void appUsageMatchesGolden() throws Exception {
+        AppUsageAccumulator accumulator = new AppUsageAccumulator();
+        AppUsageRecordReader reader = new AppUsageRecordReader(accumulator);
+        feed(reader, "golden/app_usages.json");
+
+        ObjectNode actual = MAPPER.valueToTree(accumulator.toOrgUsage("org-1", 2019, 1, days));
+        assertMatches(golden("golden/app_usages_" + period + ".golden.json"), actual, "");
+    }
+
+    @Test
+    public void serviceUsageMatchesGolden() throws Exception {
+        ServiceUsageAccumulator accumulator = new ServiceUsageAccumulator(Arrays.asList("p-rabbitmq", "p.rabbitmq", "p.mysql"));
+        ServiceUsageRecordReader reader = new ServiceUsageRecordReader(accumulator);
+        feed(reader, "golden/service_usages.json");
+
+        ObjectNode actual = MAPPER.valueToTree(accumulator.toSIUsage("org-1", 2019, 1, days));
+        assertMatches(golden("golden/service_usages_" + period + ".golden.json"), actual, "");
+    }
+
+    @Test
+    public void storedAppUsageMergesToGolden() throws Exception {
+        AppUsageAccumulator accumulator = new AppUsageAccumulator();
+        feed(new AppUsageRecordReader(accumulator), "golden/app_usages.json");
+
+        AppUsageAccumulator merged = new AppUsageAccumulator();
+        merged.merge(MAPPER.readValue(MAPPER.writeValueAsString(accumulator), AppUsageAccumulator.class));
+
+        ObjectNode actual = MAPPER.valueToTree(merged.toOrgUsage("org-1", 2019, 1, days));
+        assertMatches(golden("golden/app_usages_" + period + ".golden.json"), actual, "");
+    }
+
+    @Test
+    public void storedServiceUsageMergesToGolden() throws Exception {
+        ServiceUsageAccumulator accumulator = new ServiceUsageAccumulator(Arrays.asList("p-rabbitmq", "p.rabbitmq", "p.mysql"));
+        feed(new ServiceUsageRecordReader(accumulator), "golden/service_usages.json");
+
+        ServiceUsageAccumulator merged = new ServiceUsageAccumulator(Arrays.asList("p-rabbitmq", "p.rabbitmq", "p.mysql"));
+        merged.merge(MAPPER.readValue(MAPPER.writeValueAsString(accumulator), ServiceUsageAccumulator.class));
+
+        ObjectNode actual = MAPPER.valueToTree(merged.toSIUsage("org-1", 2019, 1, days));
+        assertMatches(golden("golden/service_usages_" + period + ".golden.json"), actual, "");
+    }
+
+    @Test
+    public void consecutiveAppUsageMergesToTheWholePeriod() throws Exception {
+        UsageTimeline timeline = UsageTimeline.sample(Q1_FIRST, Q1_LAST, 7);
+        for (LocalDate split : SPLITS) {
+            AppUsageAccumulator merged = new AppUsageAccumulator();
+            merged.merge(restored(appUsage(timeline, Q1_FIRST, split.minusDays(1)), AppUsageAccumulator.class));
+            merged.merge(restored(appUsage(timeline, split, Q1_LAST), AppUsageAccumulator.class));
+
+            assertEquals("split on " + split, appUsage(timeline, Q1_FIRST, Q1_LAST).toOrgUsage("org-1", 2019, 1, days),
+                    merged.toOrgUsage("org-1", 2019, 1, days));
+        }
+    }
+
+    @Test
+    public void consecutiveServiceUsageMergesToTheWholePeriod() throws Exception {
+        UsageTimeline timeline = UsageTimeline.sample(Q1_FIRST, Q1_LAST, 7);
+        for (LocalDate split : SPLITS) {
+            ServiceUsageAccumulator merged = new ServiceUsageAccumulator(TIMELINE_SERVICES);
+            merged.merge(restored(serviceUsage(timeline, Q1_FIRST, split.minusDays(1)), ServiceUsageAccumulator.class));
+            merged.merge(restored(serviceUsage(timeline, split, Q1_LAST), ServiceUsageAccumulator.class));
+
+            assertEquals("split on " + split, serviceUsage(timeline, Q1_FIRST, Q1_LAST).toSIUsage("org-1", 2019, 1, days),
+                    merged.toSIUsage("org-1", 2019, 1, days));
+        }
+    }
+
+    @Test
+    public void restoredUsageKeepsTotals() throws Exception {
+        AppUsageAccumulator apps = new AppUsageAccumulator();
+        feed(new AppUsageRecordReader(apps), "golden/app_usages.json");
+        ServiceUsageAccumulator services = new ServiceUsageAccumulator(Arrays.asList("p-rabbitmq", "p.rabbitmq", "p.mysql"));
+        feed(new ServiceUsageRecordReader(services), "golden/service_usages.json");
+
+        OrgUsage orgUsage = MAPPER.readValue(MAPPER.writeValueAsString(apps.toOrgUsage("org-1", 2019, 1, days)), OrgUsage.class);
+        SIUsage siUsage = MAPPER.readValue(MAPPER.writeValueAsString(services.toSIUsage("org-1", 2019, 1, days)), SIUsage.class);
+
+        assertMatches(golden("golden/app_usages_" + period + ".golden.json"), MAPPER.valueToTree(orgUsage), "");
+        assertMatches(golden("golden/service_usages_" + period + ".golden.json"), MAPPER.valueToTree(siUsage), "");
+    }
+
+    @Test
+    public void restoredUsageCannotBeChanged() throws Exception {
+        AppUsageAccumulator apps = new AppUsageAccumulator();
+        feed(new AppUsageRecordReader(apps), "golden/app_usages.json");
+        OrgUsage orgUsage = MAPPER.readValue(MAPPER.writeValueAsString(apps.toOrgUsage("org-1", 2019, 1, days)), OrgUsage.class);
+
+        try {
+            orgUsage.getSpaceUsage().clear();
+            fail("space usage should be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+            assertTrue(orgUsage.getAUsage().size() > 0);
+        }
+        try {
+            orgUsage.getAUsage().remove(orgUsage.getAUsage().keySet().iterator().next());
+            fail("app usage should be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+            assertTrue(orgUsage.getSpaceUsage().size() > 0);
+        }
+    }
+
+    ///////////////////////////////////////
+
+    private static AppUsageAccumulator appUsage(UsageTimeline timeline, LocalDate start, LocalDate end) throws IOException {
+        AppUsageAccumulator accumulator = new AppUsageAccumulator();
+        feed(new AppUsageRecordReader(accumulator), timeline.appUsages("org-1", start, end));
+        return accumulator;
+    }
+
+    private static ServiceUsageAccumulator serviceUsage(UsageTimeline timeline, LocalDate start, LocalDate end) throws IOException {
+        ServiceUsageAccumulator accumulator = new ServiceUsageAccumulator(TIMELINE_SERVICES);
+        feed(new ServiceUsageRecordReader(accumulator), timeline.serviceUsages("org-1", start, end));
+        return accumulator;
+    }
+
+    private static <T> T restored(T accumulator, Class<T> type) throws IOException {
+        return MAPPER.readValue(MAPPER.writeValueAsString(accumulator), type);
+    }
+
+    private static void feed(UsageRecordReader reader, String resource) throws IOException {
+        feed(reader, read(resource));
+    }
+
+    private static void feed(UsageRecordReader reader, byte[] payload) throws IOException {
+        // Small chunks make records straddle chunk boundaries
+        for (byte[] chunk : UsagePayloads.chunks(payload, 97)) {
+            reader.feed(chunk);
+        }
+        reader.endOfInput();
+    }
+
+    private static JsonNode golden(String resource) throws IOException {
+        return MAPPER.readTree(read(resource));
+    }
+
+    private static byte[] read(String resource) throws IOException {
+        try (InputStream in = AggregationGoldenTest.class.getClassLoader().getResourceAsStream(resource)) {
+            return StreamUtils.copyToByteArray(in);
+        }
+    }
+
+    private static void assertMatches(JsonNode expected, JsonNode actual, String path) {
+        if (expected.isObject()) {
+            assertTrue(path + " should be an object", actual != null && actual.isObject());
+            Iterator<Map.Entry<String, JsonNode>> fields = expected.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                assertMatches(field.getValue(), actual.get(field.getKey()), path + "/" + field.getKey());
+            }
+            assertEquals(path + " fields", expected.size(), actual.size() - (path.isEmpty() ? 2 : 0));
+        } else if (expected.isNumber()) {
+            if (actual == null || !actual.isNumber()) {
+                fail(path + " expected " + expected + " but was " + actual);
+            }
+            assertEquals(path, expected.asDouble(), actual.asDouble(), 0.0);
+        } else {
+            // Non-finite numbers are recorded as text
+            assertEquals(path, expected.asText(), actual == null ? null : actual.asText());
+        }
+    }
+
+}
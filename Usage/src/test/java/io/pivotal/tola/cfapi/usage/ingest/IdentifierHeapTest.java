@@ -0,0 +1,122 @@
+package io.pivotal.tola.cfapi.usage.ingest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.model.SIUsage;
+import io.pivotal.tola.cfapi.usage.support.UsagePayloads;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a year of cached usage of a synthetic estate holds a single instance of every identifier, however many
+ * models of however many quarters refer to it
+ */
+public class IdentifierHeapTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IdentifierHeapTest.class);
+
+    private static final int ORGS = 10;
+    private static final int QUARTERS = 4;
+
+    private static final List<String> SERVICES = Arrays.asList("p-rabbitmq", "p.rabbitmq", "p.mysql", "p.redis");
+
+    @Test
+    public void estateHoldsEachIdentifierOnce() throws Exception {
+        Set<String> values = new HashSet<>();
+        Set<String> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Object> estate = estate();
+        for (Object usage : estate) {
+            identifiers(usage).filter(Objects::nonNull).forEach(identifier -> {
+                values.add(identifier);
+                instances.add(identifier);
+            });
+        }
+        LOG.info("{} orgs over {} quarters: {} models refer to {} identifiers", ORGS, QUARTERS, estate.size(), values.size());
+
+        assertTrue(values.size() > ORGS * 20);
+        assertEquals(values.size(), instances.size());
+    }
+
+    @Test
+    public void restoredModelsShareIdentifiers() throws Exception {
+        ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        OrgUsage orgUsage = appUsage("org-restored", 1);
+
+        OrgUsage restored = mapper.readValue(mapper.writeValueAsString(orgUsage), OrgUsage.class);
+
+        restored.getAUsage().forEach((key, a) -> {
+            assertSame(Identifiers.intern(key), key);
+            assertSame(Identifiers.intern(a.getAppName()), a.getAppName());
+            assertSame(Identifiers.intern(a.getSpaceGuid()), a.getSpaceGuid());
+        });
+        restored.getSpaceUsage().forEach((key, s) -> assertSame(Identifiers.intern(s.getSpaceName()), s.getSpaceName()));
+    }
+
+    ///////////////////////////////////////
+
+    private static List<Object> estate() throws IOException {
+        List<Object> usages = new ArrayList<>();
+        for (int org = 0; org < ORGS; org++) {
+            for (int quarter = 1; quarter <= QUARTERS; quarter++) {
+                usages.add(appUsage("org-" + org, quarter));
+                usages.add(svcUsage("org-" + org, quarter));
+            }
+        }
+        return usages;
+    }
+
+    private static OrgUsage appUsage(String orgGuid, int quarter) throws IOException {
+        AppUsageAccumulator accumulator = new AppUsageAccumulator();
+        AppUsageRecordReader reader = new AppUsageRecordReader(accumulator);
+        reader.feed(UsagePayloads.appUsages(orgGuid, 3000, 20, 100, orgGuid.hashCode() + quarter));
+        reader.endOfInput();
+        return accumulator.toOrgUsage(orgGuid, 2019, quarter, 89);
+    }
+
+    private static SIUsage svcUsage(String orgGuid, int quarter) throws IOException {
+        ServiceUsageAccumulator accumulator = new ServiceUsageAccumulator(SERVICES);
+        ServiceUsageRecordReader reader = new ServiceUsageRecordReader(accumulator);
+        reader.feed(UsagePayloads.serviceUsages(orgGuid, 1000, 20, 20, orgGuid.hashCode() + quarter));
+        reader.endOfInput();
+        return accumulator.toSIUsage(orgGuid, 2019, quarter, 89);
+    }
+
+    /**
+     * @return the identifiers the model holds, as keys and in its children
+     */
+    private static Stream<String> identifiers(Object usage) {
+        if (usage instanceof OrgUsage) {
+            OrgUsage orgUsage = (OrgUsage) usage;
+            return Stream.concat(
+                    orgUsage.getSpaceUsage().entrySet().stream().flatMap(e ->
+                            Stream.of(e.getKey(), e.getValue().getSpaceGuid(), e.getValue().getSpaceName())),
+                    orgUsage.getAUsage().entrySet().stream().flatMap(e -> Stream.of(e.getKey(), e.getValue().getAppGuid(),
+                            e.getValue().getAppName(), e.getValue().getSpaceGuid(), e.getValue().getSpaceName())));
+        }
+        SIUsage siUsage = (SIUsage) usage;
+        return Stream.concat(
+                siUsage.getSiSpaceUsage().entrySet().stream().flatMap(e ->
+                        Stream.of(e.getKey(), e.getValue().getSpaceGuid(), e.getValue().getSpaceName())),
+                siUsage.getServiceInstanceUsage().entrySet().stream().flatMap(e -> Stream.of(e.getKey(),
+                        e.getValue().getSpaceName(), e.getValue().getServiceName(), e.getValue().getServiceInstanceName())));
+    }
+
+}
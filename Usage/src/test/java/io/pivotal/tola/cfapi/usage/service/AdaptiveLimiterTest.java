@@ -0,0 +1,78 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveLimiterTest {
+
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @Test
+    public void queuesRequestsOverTheLimit() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("f", 2, 1, 2, e -> true);
+
+        Long completed = Flux.range(0, 10)
+                .flatMap(i -> limiter.limit(() -> call(Duration.ofMillis(50))))
+                .count()
+                .block();
+
+        assertEquals(10, completed.longValue());
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, limiter.getInflight());
+        assertEquals(0, limiter.getQueued());
+    }
+
+    @Test
+    public void lowersLimitOnOverloadAndRaisesItWhileSaturated() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("f", 8, 1, 16, e -> e instanceof IllegalStateException);
+
+        for (int i = 0; i < 3; i++) {
+            limiter.limit(() -> Flux.error(new IllegalStateException("503"))).onErrorResume(e -> Flux.empty()).blockLast();
+        }
+        int lowered = limiter.getLimit();
+        assertTrue("limit " + lowered, lowered < 8);
+
+        // Other errors don't count
+        limiter.limit(() -> Flux.error(new IllegalArgumentException("404"))).onErrorResume(e -> Flux.empty()).blockLast();
+        assertEquals(lowered, limiter.getLimit());
+
+        Flux.range(0, 300)
+                .flatMap(i -> limiter.limit(() -> call(Duration.ofMillis(20))), 16)
+                .blockLast();
+        assertTrue("limit " + limiter.getLimit(), limiter.getLimit() > lowered);
+        assertTrue(maxRunning.get() <= 16);
+    }
+
+    @Test
+    public void cancelledRequestsGiveUpTheirPlace() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("f", 1, 1, 1, e -> true);
+
+        Disposable first = limiter.limit(() -> call(Duration.ofMillis(200))).subscribe();
+        Disposable queued = limiter.limit(() -> call(Duration.ofMillis(200))).subscribe();
+        assertEquals(1, limiter.getQueued());
+
+        queued.dispose();
+        assertEquals(0, limiter.getQueued());
+        first.dispose();
+        assertEquals(0, limiter.getInflight());
+
+        assertEquals(1L, limiter.limit(() -> call(Duration.ofMillis(10))).count().block().longValue());
+    }
+
+    private Flux<Integer> call(Duration latency) {
+        return Mono.defer(() -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            return Mono.delay(latency).map(i -> 1);
+        }).doOnTerminate(running::decrementAndGet).doOnCancel(running::decrementAndGet).flux();
+    }
+
+}
@@ -0,0 +1,89 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+
+import static org.junit.Assert.assertEquals;
+
+public class CircuitBreakerTest {
+
+    private Instant now = Instant.parse("2019-01-01T00:00:00Z");
+
+    private final Clock clock = new Clock() {
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    };
+
+    private final AtomicInteger sent = new AtomicInteger();
+
+    @Test
+    public void opensOnFailuresAndClosesAfterASuccessfulTrial() {
+        CircuitBreaker breaker = new CircuitBreaker("f", 10, 4, 0.5, Duration.ofSeconds(30), clock);
+
+        call(breaker, true);
+        call(breaker, false);
+        call(breaker, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(breaker, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        assertEquals(CircuitOpenException.class, call(breaker, true).getClass());
+        assertEquals(4, sent.get());
+
+        // The trial fails and opens it again
+        now = now.plusSeconds(30);
+        call(breaker, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(5, sent.get());
+
+        now = now.plusSeconds(30);
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        call(breaker, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void errorsThatDontCountLeaveItClosed() {
+        CircuitBreaker breaker = new CircuitBreaker("f", 4, 4, 0.5, Duration.ofSeconds(30), clock);
+
+        for (int i = 0; i < 10; i++) {
+            breaker.protect(() -> Flux.error(new IllegalArgumentException("404")), e -> false)
+                    .onErrorResume(e -> Flux.empty())
+                    .blockLast();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    private Throwable call(CircuitBreaker breaker, boolean fails) {
+        try {
+            breaker.protect(() -> {
+                sent.incrementAndGet();
+                return fails ? Flux.error(new IllegalStateException("503")) : Flux.just(1);
+            }, e -> true).blockLast();
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.ingest.ServiceUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.ingest.ServiceUsageRecordReader;
+import io.pivotal.tola.cfapi.usage.store.DailyUsageStore;
+import io.pivotal.tola.cfapi.usage.store.DailyUsageStore.Span;
+import io.pivotal.tola.cfapi.usage.store.UsageAggregateStore;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import io.pivotal.tola.cfapi.usage.support.UsageTimeline;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Range queries over stored spans of days, with usage being the list of days it covers, and over real service usage
+ * of a timeline compared with a single response of the same range
+ */
+public class UsageAccumulationTest {
+
+    private static final LocalDate TODAY = LocalDate.parse("2019-05-15");
+    private static final List<String> SERVICES = Arrays.asList("p.mysql", "p.rabbitmq", "p.redis");
+
+    private final List<Span<Object>> stored = new ArrayList<>();
+    private final List<String> fetched = new ArrayList<>();
+
+    private DailyUsageStore dailyStore;
+    private FoundationsConfig config;
+    private UsageAccumulation<List<String>> accumulation;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        dailyStore = mock(DailyUsageStore.class);
+        when(dailyStore.find(any(), anyString(), anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            LocalDate from = invocation.getArgument(3);
+            LocalDate to = invocation.getArgument(4);
+            List<Span<Object>> spans = new ArrayList<>();
+            synchronized (stored) {
+                stored.forEach(span -> {
+                    if (!span.getFirst().isBefore(from) && !span.getLast().isAfter(to)) {
+                        spans.add(span);
+                    }
+                });
+            }
+            return spans;
+        });
+        doAnswer(invocation -> {
+            synchronized (stored) {
+                return stored.add(new Span<>(invocation.getArgument(3), invocation.getArgument(4), invocation.getArgument(5)));
+            }
+        }).when(dailyStore).save(any(), anyString(), anyString(), any(), any(), any());
+
+        config = mock(FoundationsConfig.class);
+        when(config.getFetchConcurrency(anyString())).thenReturn(4);
+
+        accumulation = new UsageAccumulation<>(Kind.APP, (Class<List<String>>) (Class<?>) List.class, ArrayList::new,
+                List::addAll, (foundation, orgGuid, start, end) -> Mono.fromCallable(() -> {
+                    synchronized (fetched) {
+                        fetched.add(start + ".." + end);
+                    }
+                    List<String> days = new ArrayList<>();
+                    for (LocalDate day = LocalDate.parse(start); !day.isAfter(LocalDate.parse(end)); day = day.plusDays(1)) {
+                        days.add(day.toString());
+                    }
+                    return days;
+                }), config, dailyStore, mock(UsageAggregateStore.class), () -> TODAY);
+    }
+
+    @Test
+    public void fetchesEachRunOfMissingDaysInOneRequest() {
+        range("2019-05-03", "2019-05-04");
+
+        List<String> usage = range("2019-05-01", "2019-05-07");
+
+        assertEquals(Arrays.asList("2019-05-01", "2019-05-02", "2019-05-03", "2019-05-04", "2019-05-05",
+                "2019-05-06", "2019-05-07"), usage);
+        assertEquals(Arrays.asList("2019-05-01..2019-05-02", "2019-05-03..2019-05-04", "2019-05-05..2019-05-07"), sorted(fetched));
+        assertEquals(3, stored.size());
+    }
+
+    @Test
+    public void repeatedRangeIsServedFromStoredSpans() {
+        range("2019-04-01", "2019-04-10");
+        range("2019-04-11", "2019-04-30");
+        fetched.clear();
+
+        List<String> usage = range("2019-04-01", "2019-04-30");
+
+        assertEquals(30, usage.size());
+        assertEquals(0, fetched.size());
+    }
+
+    @Test
+    public void spansPartlyInTheRangeAreFetchedAgain() {
+        range("2019-04-01", "2019-04-30");
+        fetched.clear();
+
+        List<String> usage = range("2019-04-10", "2019-04-20");
+
+        assertEquals(11, usage.size());
+        assertEquals(Arrays.asList("2019-04-10..2019-04-20"), fetched);
+    }
+
+    @Test
+    public void todayIsFetchedEveryTimeAndNeverStored() {
+        range("2019-05-14", "2019-05-20");
+        List<String> usage = range("2019-05-14", "2019-05-20");
+
+        assertEquals(Arrays.asList("2019-05-14", "2019-05-15"), usage);
+        assertEquals(Arrays.asList("2019-05-14..2019-05-14", "2019-05-15..2019-05-15", "2019-05-15..2019-05-15"), sorted(fetched));
+        assertEquals(1, stored.size());
+    }
+
+    @Test
+    public void firstFetchOfAQuarterIsStoredAsASpan() {
+        when(config.isDailyBuckets()).thenReturn(true);
+
+        List<String> usage = accumulation.quarter("f", "org", "f$org$2019$1$1", LocalDate.parse("2019-01-01"),
+                LocalDate.parse("2019-03-31")).block();
+        fetched.clear();
+
+        assertEquals(90, usage.size());
+        assertEquals(1, stored.size());
+        assertEquals(90, range("2019-01-01", "2019-03-31").size());
+        assertEquals(0, fetched.size());
+    }
+
+    @Test
+    public void rangesOfServiceUsageMergeToASingleResponse() throws IOException {
+        LocalDate first = LocalDate.parse("2019-01-01");
+        LocalDate last = LocalDate.parse("2019-03-31");
+        UsageTimeline timeline = UsageTimeline.sample(first, last, 42);
+        UsageAccumulation<ServiceUsageAccumulator> services = new UsageAccumulation<>(Kind.SVC, ServiceUsageAccumulator.class,
+                () -> new ServiceUsageAccumulator(SERVICES), ServiceUsageAccumulator::merge,
+                (foundation, orgGuid, start, end) -> Mono.fromCallable(() ->
+                        read(timeline.serviceUsages(orgGuid, LocalDate.parse(start), LocalDate.parse(end)))),
+                config, dailyStore, mock(UsageAggregateStore.class), () -> TODAY);
+
+        String[][] ranges = {
+                {"2019-01-10", "2019-01-20"},
+                {"2019-02-01", "2019-02-03"},
+                {"2019-01-01", "2019-02-28"},
+                {"2019-01-05", "2019-03-31"},
+                {"2019-01-01", "2019-03-31"}
+        };
+        for (String[] range : ranges) {
+            LocalDate from = LocalDate.parse(range[0]);
+            LocalDate to = LocalDate.parse(range[1]);
+            long days = ChronoUnit.DAYS.between(from, to) + 1;
+
+            ServiceUsageAccumulator merged = services.range("f", "org", from, to).block();
+            ServiceUsageAccumulator single = read(timeline.serviceUsages("org", from, to));
+
+            assertEquals(range[0] + ".." + range[1], single.toSIUsage("org", 2019, 1, days), merged.toSIUsage("org", 2019, 1, days));
+        }
+    }
+
+    private List<String> range(String from, String to) {
+        return accumulation.range("f", "org", LocalDate.parse(from), LocalDate.parse(to)).block();
+    }
+
+    private static ServiceUsageAccumulator read(byte[] response) throws IOException {
+        ServiceUsageAccumulator accumulator = new ServiceUsageAccumulator(SERVICES);
+        ServiceUsageRecordReader reader = new ServiceUsageRecordReader(accumulator);
+        reader.feed(response);
+        reader.endOfInput();
+        return accumulator;
+    }
+
+    private static List<String> sorted(List<String> fetched) {
+        List<String> sorted = new ArrayList<>(fetched);
+        sorted.sort(null);
+        return sorted;
+    }
+
+}
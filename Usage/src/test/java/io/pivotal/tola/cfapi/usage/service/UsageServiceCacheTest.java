@@ -0,0 +1,88 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshotStore;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UsageServiceCacheTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final UsageService usageService = new UsageService();
+    private Cache<String, OrgUsage> cache;
+
+    @Before
+    public void setUp() {
+        FoundationsConfig config = mock(FoundationsConfig.class);
+        when(config.getFoundations()).thenReturn(Collections.emptyList());
+        when(config.getRefreshThreads()).thenReturn(1);
+        when(config.getCacheMaxWeight()).thenReturn(10L);
+        when(config.getOpenQuarterTtl()).thenReturn(Duration.ZERO);
+
+        ReflectionTestUtils.setField(usageService, "config", config);
+        // 2019-05-15, in the second quarter
+        ReflectionTestUtils.setField(usageService, "periods",
+                new PeriodCalendar(1, Clock.fixed(Instant.parse("2019-05-15T10:00:00Z"), ZoneOffset.UTC)));
+        ReflectionTestUtils.setField(usageService, "snapshotStore", mock(UsageSnapshotStore.class));
+        ReflectionTestUtils.setField(usageService, "metrics", new UsageMetrics(registry));
+        usageService.init();
+        cache = usageService.getAppUsageCache();
+    }
+
+    @After
+    public void tearDown() {
+        usageService.dispose();
+    }
+
+    @Test
+    public void openQuarterExpiresClosedQuarterDoesNot() {
+        cache.put("f$org$2019$1$1", OrgUsage.builder().build());
+        cache.put("f$org$2019$2$1", OrgUsage.builder().build());
+
+        assertNotNull(cache.getIfPresent("f$org$2019$1$1"));
+        assertNull(cache.getIfPresent("f$org$2019$2$1"));
+    }
+
+    @Test
+    public void evictsBeyondMaxWeight() {
+        for (int org = 0; org < 12; org++) {
+            cache.put("f$org-" + org + "$2019$1$1", OrgUsage.builder().build());
+        }
+        cache.cleanUp();
+
+        assertEquals(10, cache.estimatedSize());
+        assertEquals(10, registry.get("usage.cache.weight").tag("cache", "appUsage").gauge().value(), 0);
+        assertEquals(2, registry.get("cache.evictions").tag("cache", "appUsage").functionCounter().count(), 0);
+    }
+
+    @Test
+    public void publishesLookups() {
+        cache.put("f$org$2019$1$1", OrgUsage.builder().build());
+        cache.getIfPresent("f$org$2019$1$1");
+        cache.getIfPresent("f$other$2019$1$1");
+        cache.asMap().get("f$other$2019$1$1");
+
+        assertEquals(1, registry.get("cache.gets").tags("cache", "appUsage", "result", "hit").functionCounter().count(), 0);
+        assertEquals(1, registry.get("cache.gets").tags("cache", "appUsage", "result", "miss").functionCounter().count(), 0);
+    }
+
+}
@@ -0,0 +1,146 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshotStore;
+import io.pivotal.tola.cfapi.usage.support.UsagePayloads;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the quarterly cache miss path from many threads against an app-usage service whose responses are held back
+ * until the test releases them
+ */
+public class UsageServiceConcurrencyTest {
+
+    private static final int KEYS = 16;
+
+    private final Map<String, AtomicInteger> fetches = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile CountDownLatch started;
+
+    private UsageService usageService;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        byte[] payload = UsagePayloads.appUsages("org", 200, 4, 20, 1L);
+
+        UsageClient usageClient = mock(UsageClient.class);
+        when(usageClient.appUsages(anyString(), anyString(), anyString(), anyString())).thenAnswer(invocation -> {
+            String orgGuid = invocation.getArgument(1);
+            return Mono.fromCallable(() -> {
+                fetches.computeIfAbsent(orgGuid, k -> new AtomicInteger()).incrementAndGet();
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                started.countDown();
+                try {
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                    return payload;
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }).subscribeOn(Schedulers.elastic()).flux();
+        });
+
+        usageService = new UsageService();
+        ReflectionTestUtils.setField(usageService, "config", mock(FoundationsConfig.class));
+        ReflectionTestUtils.setField(usageService, "periods", new PeriodCalendar(1, Clock.systemDefaultZone()));
+        ReflectionTestUtils.setField(usageService, "usageClient", usageClient);
+        ReflectionTestUtils.setField(usageService, "snapshotStore", mock(UsageSnapshotStore.class));
+        ReflectionTestUtils.setField(usageService, "metrics", new UsageMetrics(new SimpleMeterRegistry()));
+
+        executor = Executors.newFixedThreadPool(KEYS);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentMissesOnOneKeyShareOneFetch() throws Exception {
+        String orgGuid = UUID.randomUUID().toString();
+        started = new CountDownLatch(1);
+
+        List<Future<OrgUsage>> futures = submit(KEYS, i -> usageService.appUsage("f", orgGuid, 2019, 1));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        release.countDown();
+        List<OrgUsage> results = results(futures);
+
+        assertEquals(1, fetches.get(orgGuid).get());
+        results.forEach(orgUsage -> assertSame(results.get(0), orgUsage));
+    }
+
+    @Test
+    public void missesOnDifferentKeysFetchConcurrently() throws Exception {
+        List<String> orgGuids = new ArrayList<>();
+        for (int i = 0; i < KEYS; i++) {
+            orgGuids.add(UUID.randomUUID().toString());
+        }
+        started = new CountDownLatch(KEYS);
+
+        // Every fetch is held until all of them have started, which a lock shared by all keys would never let happen
+        List<Future<OrgUsage>> futures = submit(KEYS, i -> usageService.appUsage("f", orgGuids.get(i), 2019, 1));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertEquals(KEYS, maxInFlight.get());
+        release.countDown();
+        results(futures);
+
+        orgGuids.forEach(orgGuid -> assertEquals(1, fetches.get(orgGuid).get()));
+    }
+
+    ///////////////////////////////////////
+
+    private List<Future<OrgUsage>> submit(int threads, IntFunction<OrgUsage> task) {
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<OrgUsage>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            int thread = i;
+            futures.add(executor.submit(() -> {
+                ready.await();
+                return task.apply(thread);
+            }));
+        }
+        ready.countDown();
+        return futures;
+    }
+
+    private static List<OrgUsage> results(List<Future<OrgUsage>> futures) throws Exception {
+        List<OrgUsage> results = new ArrayList<>();
+        for (Future<OrgUsage> future : futures) {
+            results.add(future.get(10, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+}
@@ -0,0 +1,141 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.model.Organization;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshotStore;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import org.cloudfoundry.operations.CloudFoundryOperations;
+import org.cloudfoundry.operations.organizations.OrganizationSummary;
+import org.cloudfoundry.operations.organizations.Organizations;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Discovers the orgs of a reachable and an unreachable foundation as orgs are created and deleted
+ */
+public class UsageServiceOrgDiscoveryTest {
+
+    // Orgs are kept per foundation across instances, each test discovers its own foundations
+    private final String foundation = UUID.randomUUID().toString();
+    private final String unreachable = UUID.randomUUID().toString();
+
+    private final Map<String, List<String>> orgNames = new ConcurrentHashMap<>();
+
+    private UsageService usageService;
+    private FoundationReadiness readiness;
+
+    @Before
+    public void setUp() {
+        CloudFoundryOperations operations = operations(foundation);
+        CloudFoundryOperations unreachableOperations = operations(unreachable);
+
+        FoundationsConfig config = mock(FoundationsConfig.class);
+        when(config.getFoundations()).thenReturn(Arrays.asList(foundation(foundation), foundation(unreachable)));
+        when(config.getExcludedOrgs()).thenReturn(Collections.singletonList("system"));
+        when(config.getOperations(foundation)).thenReturn(operations);
+        when(config.getOperations(unreachable)).thenReturn(unreachableOperations);
+
+        usageService = new UsageService();
+        ReflectionTestUtils.setField(usageService, "config", config);
+        ReflectionTestUtils.setField(usageService, "periods", new PeriodCalendar(1, Clock.systemDefaultZone()));
+        ReflectionTestUtils.setField(usageService, "snapshotStore", mock(UsageSnapshotStore.class));
+        ReflectionTestUtils.setField(usageService, "metrics", new UsageMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(usageService, "readiness", readiness = new FoundationReadiness(config));
+
+        orgNames.put(foundation, Arrays.asList("a", "b", "system"));
+    }
+
+    @Test
+    public void firstDiscoveryListsOrgsAndEvictsDeletedOnes() {
+        usageService.getAppUsageCache().put(key("a"), OrgUsage.builder().build());
+        usageService.getAppUsageCache().put(key("gone"), OrgUsage.builder().build());
+
+        Map<String, List<Organization>> created = usageService.getOrgsByFoundation();
+
+        assertTrue(created.get(foundation).isEmpty());
+        assertEquals(Arrays.asList("a", "b"), names(usageService.getOrgs(foundation)));
+        assertNotNull(usageService.getAppUsageCache().getIfPresent(key("a")));
+        assertNull(usageService.getAppUsageCache().getIfPresent(key("gone")));
+    }
+
+    @Test
+    public void laterDiscoveriesReturnOnlyCreatedOrgs() {
+        usageService.getOrgsByFoundation();
+        usageService.getAppUsageCache().put(key("a"), OrgUsage.builder().build());
+        usageService.getAppUsageCache().put(key("b"), OrgUsage.builder().build());
+
+        orgNames.put(foundation, Arrays.asList("b", "c"));
+        Map<String, List<Organization>> created = usageService.getOrgsByFoundation();
+
+        assertEquals(Collections.singletonList("c"), names(created.get(foundation)));
+        assertEquals(Arrays.asList("b", "c"), names(usageService.getOrgs(foundation)));
+        assertNull(usageService.getAppUsageCache().getIfPresent(key("a")));
+        assertNotNull(usageService.getAppUsageCache().getIfPresent(key("b")));
+
+        assertTrue(usageService.getOrgsByFoundation().get(foundation).isEmpty());
+    }
+
+    @Test
+    public void unreachableFoundationKeepsItsOrgs() {
+        orgNames.put(unreachable, Collections.singletonList("x"));
+        usageService.getOrgsByFoundation();
+
+        orgNames.remove(unreachable);
+        Map<String, List<Organization>> created = usageService.getOrgsByFoundation();
+
+        assertNull(created.get(unreachable));
+        assertTrue(readiness.isFailed(unreachable));
+        assertEquals(Collections.singletonList("x"), names(usageService.getOrgs(unreachable)));
+        assertEquals(Arrays.asList("a", "b"), names(usageService.getOrgs(foundation)));
+    }
+
+    private String key(String orgGuid) {
+        return String.format("%s$%s$%s$%s", foundation, orgGuid, 2019, 1);
+    }
+
+    private static FoundationsConfig.Foundation foundation(String name) {
+        FoundationsConfig.Foundation f = new FoundationsConfig.Foundation();
+        f.setName(name);
+        return f;
+    }
+
+    // Lists the foundation's current orgNames, named after their GUIDs, or fails when it has none
+    private CloudFoundryOperations operations(String name) {
+        Organizations organizations = mock(Organizations.class);
+        when(organizations.list()).thenAnswer(invocation -> {
+            List<String> names = orgNames.get(name);
+            if (names == null) {
+                return Flux.error(new IllegalStateException("unreachable"));
+            }
+            return Flux.fromIterable(names).map(n -> OrganizationSummary.builder().id(n).name(n).build());
+        });
+        CloudFoundryOperations operations = mock(CloudFoundryOperations.class);
+        when(operations.organizations()).thenReturn(organizations);
+        return operations;
+    }
+
+    private static List<String> names(List<Organization> orgs) {
+        return orgs.stream().map(Organization::getName).collect(Collectors.toList());
+    }
+
+}
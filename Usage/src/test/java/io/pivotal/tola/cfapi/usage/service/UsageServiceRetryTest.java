@@ -0,0 +1,99 @@
+package io.pivotal.tola.cfapi.usage.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshotStore;
+import io.pivotal.tola.cfapi.usage.support.UsagePayloads;
+import io.pivotal.tola.cfapi.usage.utils.GzipInflater;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class UsageServiceRetryTest {
+
+    private static final byte[] PAYLOAD = UsagePayloads.appUsages("org", 20, 2, 5, 1L);
+
+    private final AtomicInteger fetches = new AtomicInteger();
+    private Flux<byte[]>[] responses;
+
+    private UsageService usageService;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        UsageClient usageClient = mock(UsageClient.class);
+        when(usageClient.appUsages(anyString(), anyString(), anyString(), anyString())).thenAnswer(invocation ->
+                responses[Math.min(fetches.getAndIncrement(), responses.length - 1)]);
+
+        FoundationsConfig config = mock(FoundationsConfig.class);
+        when(config.getFetchRetries()).thenReturn(3);
+        when(config.getFetchRetryBackoff()).thenReturn(Duration.ofMillis(1));
+        when(config.getFetchRetryMaxBackoff()).thenReturn(Duration.ofMillis(1));
+
+        usageService = new UsageService();
+        ReflectionTestUtils.setField(usageService, "config", config);
+        ReflectionTestUtils.setField(usageService, "periods", new PeriodCalendar(1, Clock.systemDefaultZone()));
+        ReflectionTestUtils.setField(usageService, "usageClient", usageClient);
+        ReflectionTestUtils.setField(usageService, "snapshotStore", mock(UsageSnapshotStore.class));
+        ReflectionTestUtils.setField(usageService, "metrics", new UsageMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    public void cutOffResponsesAreFetchedAgain() {
+        responses = new Flux[]{Flux.just(Arrays.copyOf(PAYLOAD, PAYLOAD.length / 2)), Flux.just(PAYLOAD)};
+
+        usageService.appUsage("f", "org", 2019, 1);
+
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void unreadableResponsesAreNotFetchedAgain() {
+        responses = new Flux[]{Flux.just("{\"app_usages\": [}".getBytes(StandardCharsets.UTF_8)), Flux.just(PAYLOAD)};
+
+        try {
+            usageService.appUsage("f", "org", 2019, 1);
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(UsageClient.isUnreadable(e));
+        }
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void failuresOfUnreadableResponsesArePermanent() {
+        FetchFailures failures = new FetchFailures();
+        failures.failed(Kind.APP, "f", "org-1", 2019, 1, new JsonParseException(null, "Unexpected character"));
+        failures.failed(Kind.APP, "f", "org-2", 2019, 1, new ZipException("invalid stored block lengths"));
+        failures.failed(Kind.APP, "f", "org-3", 2019, 1, new IOException("Connection reset by peer"));
+        failures.failed(Kind.APP, "f", "org-4", 2019, 1, Exceptions.propagate(new GzipInflater.TruncatedException()));
+
+        assertEquals(4, failures.getFailures("f").size());
+        assertEquals(2, failures.getRetryableByFoundation().get("f").size());
+        assertTrue(failures.getRetryableByFoundation().get("f").stream().noneMatch(FetchFailures.Failure::isPermanent));
+        assertFalse(UsageClient.isOverload(new JsonParseException(null, "Unexpected character")));
+        assertTrue(UsageClient.isOverload(new IOException("Connection reset by peer")));
+    }
+
+}
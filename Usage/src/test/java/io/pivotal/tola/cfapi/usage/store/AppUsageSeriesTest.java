@@ -0,0 +1,174 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageAccumulator;
+import io.pivotal.tola.cfapi.usage.ingest.AppUsageRecord;
+import io.pivotal.tola.cfapi.usage.store.AppUsageSeries.GroupBy;
+import io.pivotal.tola.cfapi.usage.store.AppUsageSeries.Metric;
+import io.pivotal.tola.cfapi.usage.utils.Identifiers;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AppUsageSeriesTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AppUsageSeriesTest.class);
+
+    private static final LocalDate DAY = LocalDate.parse("2019-03-31");
+
+    private final AppUsageSeries series = new AppUsageSeries();
+
+    @Test
+    public void sumsRangesAndGroupsByDay() {
+        write("f", "org-1", DAY, record("space-1", "app-1", 86400, 512), record("space-1", "app-2", 43200, 1024));
+        write("f", "org-1", DAY.plusDays(1), record("space-1", "app-1", 86400, 512));
+        write("f", "org-2", DAY, record("space-2", "app-3", 86400, 256));
+
+        assertEquals(2 * 86400 * 512.0, series.sum(Metric.MB_SECONDS, "app-1", DAY, DAY.plusDays(1)), 0.0);
+        assertEquals(86400 * 512.0, series.sum(Metric.MB_SECONDS, "app-1", DAY.plusDays(1), DAY.plusDays(40)), 0.0);
+        assertEquals("app-2-name", series.getAppName("app-2"));
+
+        Map<String, double[]> spaces = series.daily(GroupBy.SPACE, Metric.INSTANCE_SECONDS, "f", "org-1", DAY, DAY.plusDays(1));
+        assertEquals(1, spaces.size());
+        assertArrayEquals(new double[]{129600, 86400}, spaces.get("space-1"), 0.0);
+
+        Map<String, Double> orgs = series.total(GroupBy.ORG, Metric.INSTANCE_SECONDS, "f", null, DAY, DAY);
+        assertEquals(129600, orgs.get("org-1"), 0.0);
+        assertEquals(86400, orgs.get("org-2"), 0.0);
+    }
+
+    @Test
+    public void refetchedDayReplacesStoredDay() {
+        write("f", "org-1", DAY, record("space-1", "app-1", 3600, 512), record("space-1", "app-2", 3600, 512));
+        write("f", "org-1", DAY, record("space-1", "app-1", 7200, 512));
+
+        assertEquals(7200, series.sum(Metric.INSTANCE_SECONDS, "app-1", DAY, DAY), 0.0);
+        assertEquals(0, series.sum(Metric.INSTANCE_SECONDS, "app-2", DAY, DAY), 0.0);
+    }
+
+    @Test
+    public void spreadsSpansEvenlyOverTheirDays() {
+        LocalDate first = LocalDate.parse("2019-01-01");
+        LocalDate last = LocalDate.parse("2019-03-31");
+        write("f", "org-1", first, last, record("space-1", "app-1", 90 * 86400, 512));
+        // A day fetched on its own afterwards is exact
+        write("f", "org-1", last, last, record("space-1", "app-1", 3 * 86400, 512));
+
+        Map<String, double[]> days = series.daily(GroupBy.APP, Metric.INSTANCE_SECONDS, "f", "org-1", first, last);
+        assertEquals(86400, days.get("app-1")[0], 0.0);
+        assertEquals(86400, days.get("app-1")[88], 0.0);
+        assertEquals(3 * 86400, days.get("app-1")[89], 0.0);
+        assertEquals(92 * 86400 * 512.0, series.sum(Metric.MB_SECONDS, "app-1", first, last), 1e-3);
+        assertEquals("space-1-name", series.getSpaceName("app-1"));
+    }
+
+    @Test
+    public void sharesIdentifiersWithTheUsageModels() {
+        write("f", "org-1", DAY, record("space-1", "app-1", 86400, 512));
+
+        assertSame(Identifiers.intern(new String("app-1-name")), series.getAppName("app-1"));
+        assertSame(Identifiers.intern(new String("space-1-name")), series.getSpaceName("app-1"));
+    }
+
+    @Test
+    public void chunksHoldOnlyAppsWithUsageInTheirDays() {
+        AppUsageRecord[] records = new AppUsageRecord[1000];
+        for (int a = 0; a < records.length; a++) {
+            records[a] = record("space-1", "app-" + a, 86400, 512);
+        }
+        write("f", "org-1", DAY, records);
+        long firstChunk = series.getColumnBytes();
+
+        // The apps were deleted, a year later only one is left
+        write("f", "org-1", DAY.plusDays(365), record("space-1", "app-0", 86400, 512));
+
+        assertEquals(2 * 8 * 1024 * AppUsageSeries.CHUNK_DAYS, firstChunk);
+        assertEquals(firstChunk + 2 * 8 * 16 * AppUsageSeries.CHUNK_DAYS, series.getColumnBytes());
+        assertEquals(2 * 86400 * 512.0, series.sum(Metric.MB_SECONDS, "app-0", DAY, DAY.plusDays(365)), 0.0);
+        assertEquals(86400 * 512.0, series.sum(Metric.MB_SECONDS, "app-999", DAY, DAY.plusDays(365)), 0.0);
+    }
+
+    @Test
+    public void keepsLargeValuesExact() {
+        // A quarter of 25 instances of 4 GB in seconds is beyond the 24 bits of a float
+        write("f", "org-1", DAY, record("space-1", "app-1", 25 * 7776001, 4096));
+
+        assertEquals(25 * 7776001.0 * 4096, series.sum(Metric.MB_SECONDS, "app-1", DAY, DAY), 0.0);
+        assertEquals(25 * 7776001.0, series.sum(Metric.INSTANCE_SECONDS, "app-1", DAY, DAY), 0.0);
+    }
+
+    /**
+     * Loads three years of 2000 apps and extrapolates the columns needed for tens of thousands of apps
+     */
+    @Test
+    public void holdsYearsOfAppsCompactly() {
+        int orgs = 20;
+        int appsPerOrg = 100;
+        LocalDate first = LocalDate.parse("2017-01-01");
+        int days = (int) (LocalDate.parse("2019-12-31").toEpochDay() - first.toEpochDay() + 1);
+
+        AppUsageRecord record = new AppUsageRecord();
+        for (int d = 0; d < days; d++) {
+            for (int o = 0; o < orgs; o++) {
+                AppUsageAccumulator usage = new AppUsageAccumulator();
+                for (int a = 0; a < appsPerOrg; a++) {
+                    record.setSpaceGuid("org-" + o + "-space-" + (a % 5));
+                    record.setAppGuid("org-" + o + "-app-" + a);
+                    record.setAppName("app-" + a);
+                    record.setDurationInSeconds(86400 * (1 + a % 3));
+                    record.setMemoryInMbPerInstance(1024);
+                    usage.accept(record);
+                }
+                series.put("f", "org-" + o, first.plusDays(d), first.plusDays(d), usage);
+            }
+        }
+
+        int apps = orgs * appsPerOrg;
+        long bytesPerAppYear = series.getColumnBytes() * 365 / ((long) apps * days);
+
+        LOG.info("{} apps over {} days: {} KB of columns, {} bytes per app and year, {} MB for 30000 apps over 3 years",
+                apps, days, series.getColumnBytes() / 1024, bytesPerAppYear, bytesPerAppYear * 30000 * 3 / (1024 * 1024));
+
+        Map<String, double[]> year = series.daily(GroupBy.APP, Metric.MB_SECONDS, "f", null, LocalDate.parse("2019-01-01"), LocalDate.parse("2019-12-31"));
+
+        assertEquals(apps, year.size());
+        assertEquals(365, year.get("org-0-app-1").length);
+        assertEquals(2 * 86400 * 1024.0, year.get("org-0-app-1")[100], 0.0);
+        // 16 bytes per app and day, rounded up to whole chunks and slot capacity
+        assertTrue(bytesPerAppYear <= (16 * 366 + 16 * AppUsageSeries.CHUNK_DAYS) * 11 / 10);
+    }
+
+    ///////////////////////////////////////
+
+    private void write(String foundation, String orgGuid, LocalDate day, AppUsageRecord... records) {
+        write(foundation, orgGuid, day, day, records);
+    }
+
+    private void write(String foundation, String orgGuid, LocalDate first, LocalDate last, AppUsageRecord... records) {
+        AppUsageAccumulator usage = new AppUsageAccumulator();
+        for (AppUsageRecord record : records) {
+            usage.accept(record);
+        }
+        series.put(foundation, orgGuid, first, last, usage);
+    }
+
+    private static AppUsageRecord record(String spaceGuid, String appGuid, double durationInSeconds, int memoryInMb) {
+        AppUsageRecord record = new AppUsageRecord();
+        record.setSpaceGuid(spaceGuid);
+        record.setSpaceName(spaceGuid + "-name");
+        record.setAppGuid(appGuid);
+        record.setAppName(appGuid + "-name");
+        record.setInstanceCount(1);
+        record.setMemoryInMbPerInstance(memoryInMb);
+        record.setDurationInSeconds(durationInSeconds);
+        return record;
+    }
+
+}
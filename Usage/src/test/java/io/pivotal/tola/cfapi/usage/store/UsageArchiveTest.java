@@ -0,0 +1,197 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import io.pivotal.tola.cfapi.usage.configuration.FoundationsConfig;
+import io.pivotal.tola.cfapi.usage.store.UsageArchive.Entry;
+import io.pivotal.tola.cfapi.usage.store.UsageArchive.Type;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UsageArchiveTest {
+
+    private static final LocalDate START = LocalDate.of(2019, 1, 1);
+    private static final LocalDate END = LocalDate.of(2019, 3, 31);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FoundationsConfig config = new FoundationsConfig();
+    private UsageArchive archive;
+
+    @Before
+    public void setUp() throws IOException {
+        config.setArchive(true);
+        config.setArchiveDir(folder.getRoot().getPath());
+        archive = open();
+    }
+
+    @After
+    public void tearDown() {
+        archive.close();
+    }
+
+    @Test
+    public void readsRecordsBackAfterReopening() throws IOException {
+        String payload = repeated("{\"app_usages\":[]}", 10000);
+        archive.append(Type.APP, "f", "org-1", START, END, bytes(payload));
+        archive.append(Type.SVC, "f", "org-1", START, END, bytes("{\"service_usages\":[]}"));
+        archive.append(Type.APP, "f", "org-1", END, END, bytes("second"));
+        assertEquals(payload, read(archive.getEntries(Type.APP, "f", "org-1").get(0)));
+
+        archive.close();
+        archive = open();
+
+        List<Entry> entries = archive.getEntries(Type.APP, "f", "org-1");
+        assertEquals(2, entries.size());
+        assertEquals(START, entries.get(0).getStart());
+        assertEquals(END, entries.get(0).getEnd());
+        assertEquals(payload, read(entries.get(0)));
+        assertEquals("second", read(archive.getLatest(Type.APP, "f", "org-1")));
+        assertEquals("{\"service_usages\":[]}", read(archive.getLatest(Type.SVC, "f", "org-1")));
+        assertNull(archive.getLatest(Type.APP, "f", "org-2"));
+
+        // Appends after reopening go on where the segment ended
+        archive.append(Type.APP, "f", "org-2", START, END, bytes("third"));
+        assertEquals("third", read(archive.getLatest(Type.APP, "f", "org-2")));
+        assertEquals(payload, read(entries.get(0)));
+    }
+
+    @Test
+    public void cutsOffARecordTornAtTheEnd() throws IOException {
+        archive.append(Type.APP, "f", "org-1", START, END, bytes("first"));
+        archive.append(Type.APP, "f", "org-1", START, END, bytes("second"));
+        long bytes = archive.getBytes();
+        archive.close();
+
+        Path segment = Files.list(folder.getRoot().toPath()).findFirst().get();
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.setLength(bytes - 3);
+        }
+
+        archive = open();
+        assertEquals(1, archive.getSize());
+        assertEquals("first", read(archive.getLatest(Type.APP, "f", "org-1")));
+
+        archive.append(Type.APP, "f", "org-1", START, END, bytes("third"));
+        archive.close();
+        archive = open();
+        assertEquals(2, archive.getSize());
+        assertEquals("third", read(archive.getLatest(Type.APP, "f", "org-1")));
+    }
+
+    @Test
+    public void rollsSegmentsAtTheirSize() throws IOException {
+        config.setArchiveSegmentBytes(1024);
+        for (int i = 0; i < 20; i++) {
+            archive.append(Type.APP, "f", "org-" + i, START, END, bytes(repeated("usage of org " + i, 20)));
+        }
+        int segments = archive.getSegments();
+        assertEquals(segments, Files.list(folder.getRoot().toPath()).count());
+        assertTrue(segments > 1);
+
+        archive.close();
+        archive = open();
+        assertEquals(20, archive.getSize());
+        assertEquals(segments, archive.getSegments());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(repeated("usage of org " + i, 20), read(archive.getLatest(Type.APP, "f", "org-" + i)));
+        }
+    }
+
+    @Test
+    public void deletesSegmentsOlderThanTheRetention() throws IOException {
+        config.setArchiveSegmentBytes(256);
+        config.setArchiveRetention(Duration.ofDays(400));
+        Instant now = Instant.parse("2019-04-01T00:00:00Z");
+        ReflectionTestUtils.setField(archive, "clock", Clock.fixed(now, ZoneOffset.UTC));
+        for (int i = 0; i < 10; i++) {
+            archive.append(Type.APP, "f", "org-" + i, START, END, bytes(repeated("usage of org " + i, 20)));
+        }
+        assertTrue(archive.getSegments() > 2);
+
+        ReflectionTestUtils.setField(archive, "clock", Clock.fixed(now.plus(Duration.ofDays(401)), ZoneOffset.UTC));
+        for (int i = 10; i < 20; i++) {
+            archive.append(Type.APP, "f", "org-" + i, START, END, bytes(repeated("usage of org " + i, 20)));
+        }
+        assertNull(archive.getLatest(Type.APP, "f", "org-0"));
+        assertEquals(archive.getSegments(), Files.list(folder.getRoot().toPath()).count());
+        for (int i = 10; i < 20; i++) {
+            assertEquals(repeated("usage of org " + i, 20), read(archive.getLatest(Type.APP, "f", "org-" + i)));
+        }
+
+        // At startup too, all but the segment appended to
+        archive.close();
+        config.setArchiveRetention(Duration.ofDays(1));
+        archive = open(Clock.fixed(now.plus(Duration.ofDays(403)), ZoneOffset.UTC));
+        assertEquals(1, archive.getSegments());
+        assertEquals(1, Files.list(folder.getRoot().toPath()).count());
+        assertEquals(Files.size(Files.list(folder.getRoot().toPath()).findFirst().get()), archive.getBytes());
+    }
+
+    @Test
+    public void capsTheSegmentSize() {
+        config.setArchiveSegmentBytes(8L * 1024 * 1024 * 1024);
+        assertEquals(UsageArchive.MAX_SEGMENT_BYTES, archive.getSegmentBytes());
+        config.setArchiveSegmentBytes(1024);
+        assertEquals(1024, archive.getSegmentBytes());
+    }
+
+    @Test
+    public void archivesNothingWhenOff() throws IOException {
+        config.setArchive(false);
+        assertNull(archive.writer(Type.APP, "f", "org-1", "2019-01-01", "2019-03-31", false));
+        archive.append(Type.APP, "f", "org-1", START, END, bytes("ignored"));
+        assertEquals(0, archive.getSize());
+    }
+
+    private UsageArchive open() throws IOException {
+        return open(Clock.systemUTC());
+    }
+
+    private UsageArchive open(Clock clock) throws IOException {
+        UsageArchive opened = new UsageArchive();
+        ReflectionTestUtils.setField(opened, "config", config);
+        ReflectionTestUtils.setField(opened, "clock", clock);
+        opened.open();
+        return opened;
+    }
+
+    private String read(Entry entry) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        archive.read(entry).toIterable().forEach(chunk -> out.write(chunk, 0, chunk.length));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String payload) {
+        return payload.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String repeated(String s, int times) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            b.append(s);
+        }
+        return b.toString();
+    }
+
+}
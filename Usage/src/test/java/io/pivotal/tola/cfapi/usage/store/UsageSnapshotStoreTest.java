@@ -0,0 +1,92 @@
+package io.pivotal.tola.cfapi.usage.store;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.pivotal.tola.cfapi.usage.model.AUsage;
+import io.pivotal.tola.cfapi.usage.model.OrgUsage;
+import io.pivotal.tola.cfapi.usage.model.SpaceUsage;
+import io.pivotal.tola.cfapi.usage.store.UsageSnapshot.Kind;
+import io.pivotal.tola.cfapi.usage.utils.PeriodCalendar;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UsageSnapshotStoreTest {
+
+    private final UsageSnapshotRepository repository = mock(UsageSnapshotRepository.class);
+    private final UsageSnapshotStore store = new UsageSnapshotStore();
+
+    @Before
+    public void setUp() {
+        ReflectionTestUtils.setField(store, "repository", repository);
+        ReflectionTestUtils.setField(store, "periods",
+                new PeriodCalendar(4, Clock.fixed(Instant.parse("2019-06-15T12:00:00Z"), ZoneOffset.UTC)));
+    }
+
+    @Test
+    public void deletesSnapshotsOfAnotherFiscalCalendar() {
+        UsageSnapshot current = snapshot("f$org$2020$1$4", 4);
+        UsageSnapshot otherMonth = snapshot("f$org$2020$1$1", 1);
+        UsageSnapshot beforeMonthsWereStored = snapshot("f$org$2020$1", null);
+        when(repository.findByKind(Kind.APP)).thenReturn(Arrays.asList(current, otherMonth, beforeMonthsWereStored));
+
+        Map<String, OrgUsage> restored = store.loadAppUsage();
+
+        assertEquals(Collections.singleton("f$org$2020$1$4"), restored.keySet());
+        assertFalse(store.isStale(Kind.APP, "f$org$2020$1$4"));
+        assertTrue(store.isStale(Kind.APP, "f$org$2020$1$1"));
+        verify(repository).deleteAll(Arrays.asList(otherMonth, beforeMonthsWereStored));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void restoresNestedUsageWithItsTotals() throws Exception {
+        OrgUsage usage = OrgUsage.builder().orgGuid("org").year(2020).quarter(1)
+                .spaceUsage(Collections.singletonMap("space", SpaceUsage.builder()
+                        .spaceGuid("space").spaceName("space-name").totalApps(1).totalMbPerAis(2048).aiDurationInSecs(2).build()))
+                .aUsage(Collections.singletonMap("app-space-name", AUsage.builder()
+                        .appGuid("app").appName("app").spaceGuid("space").spaceName("space-name")
+                        .totalMbPerAis(1024).aiDurationInSecs(2).build()))
+                .build();
+        UsageSnapshot snapshot = snapshot("f$org$2020$1$4", 4);
+        snapshot.setPayload(new ObjectMapper().writeValueAsString(usage));
+        when(repository.findByKind(Kind.APP)).thenReturn(Collections.singletonList(snapshot));
+
+        OrgUsage restored = store.loadAppUsage().get("f$org$2020$1$4");
+
+        assertEquals(usage, restored);
+        assertEquals("2", restored.getSpaceUsage().get("space").getTotalGbPerAis());
+        assertEquals("2", restored.getAUsage().get("app-space-name").getAvgAICount());
+        restored.getSpaceUsage().clear();
+    }
+
+    private static UsageSnapshot snapshot(String key, Integer fiscalYearStartMonth) {
+        return UsageSnapshot.builder()
+                .id("APP$" + key)
+                .kind(Kind.APP)
+                .usageKey(key)
+                .foundation("f")
+                .orgGuid("org")
+                .year(2020)
+                .quarter(1)
+                .fiscalYearStartMonth(fiscalYearStartMonth)
+                .refreshedOn(LocalDate.of(2019, 7, 1))
+                .complete(true)
+                .payload("{\"orgGuid\":\"org\",\"year\":2020,\"quarter\":1}")
+                .build();
+    }
+
+}
@@ -0,0 +1,303 @@
+package io.pivotal.tola.cfapi.usage.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.QueryStringDecoder;
+import lombok.Builder;
+import lombok.Getter;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.ipc.netty.NettyContext;
+import reactor.ipc.netty.http.server.HttpServer;
+import reactor.ipc.netty.http.server.HttpServerRequest;
+import reactor.ipc.netty.http.server.HttpServerResponse;
+
+/**
+ * AppUsageStandIn - embeddable stand-in for a foundation's cloud controller, UAA and app-usage service.
+ * <p>
+ * Serves the root and /v2/info endpoints, /oauth/token, /v2/organizations and the app_usages and service_usages
+ * of every org on one plain http port. Usage payloads are generated per request with {@link UsagePayloads}, so
+ * the stand-in holds no payloads itself, except gzip compressed ones: when compression is on and the client
+ * accepts gzip, each payload is compressed once and kept, so the client's cost isn't mixed with the stand-in's.
+ * Every request waits for the configured latency, usage requests fail with a 503 at the configured error rate,
+ * and requests are counted per endpoint.
+ * <p>
+ * Faults can be injected as well: usage responses cut off halfway or stalled past the client's timeout at the
+ * configured rates, orgs whose usage requests always fail with a 500 ({@link #breakOrgs}) and a usage service
+ * that is down altogether ({@link #setDown}).
+ */
+public class AppUsageStandIn implements AutoCloseable {
+
+    public static final String INFO = "info";
+    public static final String TOKEN = "token";
+    public static final String ORGANIZATIONS = "organizations";
+    public static final String APP_USAGES = "app_usages";
+    public static final String SERVICE_USAGES = "service_usages";
+
+    @Builder
+    @Getter
+    public static class Settings {
+        @Builder.Default
+        private int orgs = 10;
+        // Records per app_usages and service_usages response
+        @Builder.Default
+        private int appRecords = 1000;
+        @Builder.Default
+        private int svcRecords = 200;
+        @Builder.Default
+        private int spaces = 10;
+        // Distinct apps and service instances per space
+        @Builder.Default
+        private int appsPerSpace = 10;
+        @Builder.Default
+        private Duration latency = Duration.ZERO;
+        // Share of usage requests answered with a 503
+        @Builder.Default
+        private double errorRate = 0.0;
+        // Share of usage responses cut off after half of the payload
+        @Builder.Default
+        private double truncateRate = 0.0;
+        // Share of usage responses held back for stall before they are sent
+        @Builder.Default
+        private double stallRate = 0.0;
+        @Builder.Default
+        private Duration stall = Duration.ofMinutes(2);
+        @Builder.Default
+        private Duration tokenTtl = Duration.ofHours(12);
+        // Usage responses are gzip compressed for clients that accept it
+        @Builder.Default
+        private boolean compression = true;
+    }
+
+    private static final Pattern USAGE_PATH = Pattern.compile("/organizations/([^/]+)/(app_usages|service_usages)");
+
+    private final Settings settings;
+    private final List<String> orgGuids = new ArrayList<>();
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+    private final Set<String> brokenOrgs = ConcurrentHashMap.newKeySet();
+    private volatile boolean down;
+    private final Map<String, Mono<byte[]>> gzipped = new ConcurrentHashMap<>();
+    private final NettyContext context;
+
+    private AppUsageStandIn(Settings settings) {
+        this.settings = settings;
+        for (int i = 0; i < settings.orgs; i++) {
+            orgGuids.add(String.format("00000000-0000-0000-0000-%012d", i));
+        }
+        this.context = HttpServer.create("localhost", 0).newHandler(this::handle)
+                .block();
+    }
+
+    public static AppUsageStandIn start(Settings settings) {
+        return new AppUsageStandIn(settings);
+    }
+
+    public int getPort() {
+        return context.address().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + getPort();
+    }
+
+    public List<String> getOrgGuids() {
+        return Collections.unmodifiableList(orgGuids);
+    }
+
+    public long getRequests(String endpoint) {
+        AtomicLong count = requests.get(endpoint);
+        return count == null ? 0 : count.get();
+    }
+
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requests.forEach((endpoint, count) -> counts.put(endpoint, count.get()));
+        return counts;
+    }
+
+    /**
+     * Usage requests of these orgs fail with a 500 until they are healed
+     */
+    public void breakOrgs(String... guids) {
+        brokenOrgs.addAll(Arrays.asList(guids));
+    }
+
+    public void heal() {
+        brokenOrgs.clear();
+    }
+
+    /**
+     * While down, all usage requests fail with a 503
+     */
+    public void setDown(boolean down) {
+        this.down = down;
+    }
+
+    @Override
+    public void close() {
+        context.dispose();
+        context.onClose().block(Duration.ofSeconds(10));
+    }
+
+    ///////////////////////////////////////
+
+    // Routes on the path alone, the router would match the query string as part of the path
+    private Publisher<Void> handle(HttpServerRequest req, HttpServerResponse res) {
+        String path = new QueryStringDecoder(req.uri()).path();
+        Matcher usage = USAGE_PATH.matcher(path);
+        if (usage.matches()) {
+            return usage(req, res, usage.group(1), usage.group(2));
+        }
+        switch (path) {
+            case "/":
+                return respond(res, INFO, () -> json(res, root()));
+            case "/v2/info":
+                return respond(res, INFO, () -> json(res, info()));
+            case "/oauth/token":
+                return req.receive().then().then(respond(res, TOKEN, () -> json(res, token())));
+            case "/v2/organizations":
+                return respond(res, ORGANIZATIONS, () -> json(res, organizations(req)));
+            default:
+                return res.status(HttpResponseStatus.NOT_FOUND).send();
+        }
+    }
+
+    private Mono<Void> respond(HttpServerResponse res, String endpoint, Supplier<Publisher<Void>> response) {
+        requests.computeIfAbsent(endpoint, k -> new AtomicLong()).incrementAndGet();
+        Mono<Void> delay = settings.latency.isZero() ? Mono.empty() : Mono.delay(settings.latency).then();
+        return delay.then(Mono.defer(() -> Mono.from(response.get())));
+    }
+
+    private Publisher<Void> usage(HttpServerRequest req, HttpServerResponse res, String orgGuid, String endpoint) {
+        return respond(res, endpoint, () -> {
+            if (down || happens(settings.errorRate)) {
+                return res.status(HttpResponseStatus.SERVICE_UNAVAILABLE).sendString(Mono.just("injected failure"));
+            }
+            if (brokenOrgs.contains(orgGuid)) {
+                return res.status(HttpResponseStatus.INTERNAL_SERVER_ERROR).sendString(Mono.just("broken org " + orgGuid));
+            }
+            if (!orgGuids.contains(orgGuid)) {
+                return res.status(HttpResponseStatus.NOT_FOUND).sendString(Mono.just("unknown org " + orgGuid));
+            }
+            // Payloads are generated off the event loop, and differ per org but not per request
+            long seed = orgGuid.hashCode();
+            Mono<byte[]> payload = Mono.fromCallable(() -> APP_USAGES.equals(endpoint)
+                    ? UsagePayloads.appUsages(orgGuid, settings.appRecords, settings.spaces, settings.appsPerSpace, seed)
+                    : UsagePayloads.serviceUsages(orgGuid, settings.svcRecords, settings.spaces, settings.appsPerSpace, seed))
+                    .subscribeOn(Schedulers.elastic());
+            String accepted = req.requestHeaders().get(HttpHeaderNames.ACCEPT_ENCODING);
+            if (settings.compression && accepted != null && accepted.contains("gzip")) {
+                Mono<byte[]> plain = payload;
+                payload = gzipped.computeIfAbsent(orgGuid + "$" + endpoint, k -> plain.map(AppUsageStandIn::gzip).cache());
+                res.header(HttpHeaderNames.CONTENT_ENCODING, "gzip");
+            }
+            if (happens(settings.truncateRate)) {
+                payload = payload.map(bytes -> Arrays.copyOf(bytes, bytes.length / 2));
+            }
+            if (happens(settings.stallRate)) {
+                payload = payload.delayElement(settings.stall);
+            }
+            return res.header(HttpHeaderNames.CONTENT_TYPE, "application/json").sendByteArray(payload);
+        });
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 8);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean happens(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static Publisher<Void> json(HttpServerResponse res, String body) {
+        return res.header(HttpHeaderNames.CONTENT_TYPE, "application/json").sendString(Mono.just(body));
+    }
+
+    private String root() {
+        String base = getBaseUrl();
+        return "{\"links\":{"
+                + "\"self\":{\"href\":\"" + base + "\"},"
+                + "\"cloud_controller_v2\":{\"href\":\"" + base + "/v2\",\"meta\":{\"version\":\"2.128.0\"}},"
+                + "\"cloud_controller_v3\":{\"href\":\"" + base + "/v3\",\"meta\":{\"version\":\"3.63.0\"}},"
+                + "\"network_policy_v0\":{\"href\":\"" + base + "/networking/v0/external\"},"
+                + "\"network_policy_v1\":{\"href\":\"" + base + "/networking/v1/external\"},"
+                + "\"uaa\":{\"href\":\"" + base + "\"},"
+                + "\"login\":{\"href\":\"" + base + "\"},"
+                + "\"logging\":{\"href\":\"ws://localhost:" + getPort() + "\"},"
+                + "\"routing\":{\"href\":\"" + base + "/routing\"},"
+                + "\"app_ssh\":{\"href\":\"localhost:2222\",\"meta\":{\"host_key_fingerprint\":\"00\",\"oauth_client\":\"ssh-proxy\"}}"
+                + "}}";
+    }
+
+    private String info() {
+        String base = getBaseUrl();
+        return "{\"name\":\"stand-in\",\"build\":\"\",\"support\":\"\",\"version\":0,\"description\":\"\","
+                + "\"authorization_endpoint\":\"" + base + "\",\"token_endpoint\":\"" + base + "\","
+                + "\"min_cli_version\":null,\"min_recommended_cli_version\":null,\"api_version\":\"2.128.0\","
+                + "\"app_ssh_endpoint\":\"localhost:2222\",\"app_ssh_host_key_fingerprint\":\"00\",\"app_ssh_oauth_client\":\"ssh-proxy\","
+                + "\"doppler_logging_endpoint\":\"ws://localhost:" + getPort() + "\",\"routing_endpoint\":\"" + base + "/routing\"}";
+    }
+
+    private String token() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        Instant now = Instant.now();
+        String claims = "{\"iat\":" + now.getEpochSecond() + ",\"exp\":" + now.plus(settings.tokenTtl).getEpochSecond()
+                + ",\"user_name\":\"stand-in\"}";
+        String jwt = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".c2ln";
+        return "{\"access_token\":\"" + jwt + "\",\"token_type\":\"bearer\",\"refresh_token\":\"" + jwt + "\","
+                + "\"expires_in\":" + settings.tokenTtl.getSeconds() + ",\"scope\":\"cloud_controller.admin\",\"jti\":\"stand-in\"}";
+    }
+
+    private String organizations(HttpServerRequest req) {
+        Map<String, List<String>> query = new QueryStringDecoder(req.uri()).parameters();
+        int page = query.containsKey("page") ? Integer.parseInt(query.get("page").get(0)) : 1;
+        int perPage = query.containsKey("results-per-page") ? Integer.parseInt(query.get("results-per-page").get(0)) : 50;
+        int pages = Math.max(1, (orgGuids.size() + perPage - 1) / perPage);
+
+        StringBuilder resources = new StringBuilder();
+        for (int i = (page - 1) * perPage; i < Math.min(orgGuids.size(), page * perPage); i++) {
+            String guid = orgGuids.get(i);
+            if (resources.length() > 0) {
+                resources.append(',');
+            }
+            resources.append("{\"metadata\":{\"guid\":\"").append(guid).append("\",\"url\":\"/v2/organizations/").append(guid)
+                    .append("\",\"created_at\":\"2019-01-01T00:00:00Z\",\"updated_at\":\"2019-01-01T00:00:00Z\"},")
+                    .append("\"entity\":{\"name\":\"org-").append(i).append("\",\"billing_enabled\":false,")
+                    .append("\"quota_definition_guid\":\"quota\",\"status\":\"active\"}}");
+        }
+        String next = page < pages ? "\"/v2/organizations?page=" + (page + 1) + "&results-per-page=" + perPage + "\"" : "null";
+        return "{\"total_results\":" + orgGuids.size() + ",\"total_pages\":" + pages + ",\"prev_url\":null,\"next_url\":" + next
+                + ",\"resources\":[" + resources + "]}";
+    }
+
+}
@@ -0,0 +1,117 @@
+package io.pivotal.tola.cfapi.usage.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * UsagePayloads - synthetic app_usages and service_usages responses of any size
+ */
+public final class UsagePayloads {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final int[] MEMORY = {256, 512, 768, 1024, 2048};
+
+    private static final String[] SERVICES = {"p-rabbitmq", "p.mysql", "p.redis", "p.rabbitmq"};
+
+    private UsagePayloads() {
+    }
+
+    /**
+     * @param records -- number of app usage records
+     * @param spaces  -- number of spaces the records are spread over
+     * @param apps    -- number of distinct apps per space
+     */
+    public static byte[] appUsages(String orgGuid, int records, int spaces, int apps, long seed) {
+        Random random = new Random(seed);
+        return write(orgGuid, "app_usages", g -> {
+            for (int i = 0; i < records; i++) {
+                int space = random.nextInt(spaces);
+                int app = random.nextInt(apps);
+                g.writeStartObject();
+                g.writeStringField("space_guid", orgGuid + "-space-" + space);
+                g.writeStringField("space_name", "space-" + space);
+                g.writeStringField("app_name", "app-" + app);
+                g.writeStringField("app_guid", orgGuid + "-space-" + space + "-app-" + app);
+                g.writeNumberField("instance_count", 1 + random.nextInt(4));
+                g.writeNumberField("memory_in_mb_per_instance", MEMORY[random.nextInt(MEMORY.length)]);
+                g.writeNumberField("duration_in_seconds", random.nextInt(7776000) + random.nextInt(1000) / 1000.0);
+                g.writeEndObject();
+            }
+        });
+    }
+
+    /**
+     * @param records   -- number of service usage records
+     * @param spaces    -- number of spaces the records are spread over
+     * @param instances -- number of distinct service instances per space
+     */
+    public static byte[] serviceUsages(String orgGuid, int records, int spaces, int instances, long seed) {
+        Random random = new Random(seed);
+        return write(orgGuid, "service_usages", g -> {
+            for (int i = 0; i < records; i++) {
+                int space = random.nextInt(spaces);
+                int instance = random.nextInt(instances);
+                String service = SERVICES[(space + instance) % SERVICES.length];
+                g.writeStartObject();
+                g.writeBooleanField("deleted", random.nextBoolean());
+                g.writeNumberField("duration_in_seconds", random.nextInt(7776000) + random.nextInt(1000) / 1000.0);
+                g.writeStringField("space_guid", orgGuid + "-space-" + space);
+                g.writeStringField("space_name", "space-" + space);
+                g.writeStringField("service_instance_guid", orgGuid + "-space-" + space + "-si-" + instance);
+                g.writeStringField("service_instance_name", "si-" + instance);
+                g.writeStringField("service_instance_type", "managed_service_instance");
+                g.writeStringField("service_plan_name", "small");
+                g.writeStringField("service_name", service);
+                g.writeStringField("service_guid", "svc-" + service);
+                g.writeEndObject();
+            }
+        });
+    }
+
+    /**
+     * Splits a payload the way it would arrive from the network
+     */
+    public static List<byte[]> chunks(byte[] payload, int chunkSize) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < payload.length; i += chunkSize) {
+            chunks.add(Arrays.copyOfRange(payload, i, Math.min(payload.length, i + chunkSize)));
+        }
+        return chunks;
+    }
+
+    ///////////////////////////////////////
+
+    private static byte[] write(String orgGuid, String recordsField, RecordWriter records) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonGenerator g = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+                g.writeStartObject();
+                g.writeStringField("organization_guid", orgGuid);
+                g.writeStringField("period_start", "2019-01-01");
+                g.writeStringField("period_end", "2019-03-31");
+                g.writeArrayFieldStart(recordsField);
+                records.write(g);
+                g.writeEndArray();
+                g.writeEndObject();
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface RecordWriter {
+        void write(JsonGenerator g) throws IOException;
+    }
+
+}
@@ -0,0 +1,221 @@
+package io.pivotal.tola.cfapi.usage.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * UsageTimeline - usage of an org as segments of constant configuration, rendered as the app_usages and
+ * service_usages responses the app-usage service returns for any range of days.
+ * <p>
+ * Like the service, a response has one record per app, instance count and memory, or per service instance and plan,
+ * with the usage of all its segments that falls in the range. Records are in the order they first appear.
+ */
+public final class UsageTimeline {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final int[] MEMORY = {256, 512, 1024, 2048};
+    private static final String[] SERVICES = {"p.mysql", "p.rabbitmq", "p.redis"};
+    private static final String[] PLANS = {"small", "medium", "large"};
+
+    private final List<Segment> apps = new ArrayList<>();
+    private final List<Segment> serviceInstances = new ArrayList<>();
+
+    /**
+     * @param from -- epoch second the segment starts at
+     * @param to   -- epoch second the segment ends at, excluded
+     */
+    public UsageTimeline app(int space, String appName, String appGuid, int instances, int memory, long from, long to) {
+        apps.add(new Segment(space, appName, appGuid, String.valueOf(instances), memory, from, to));
+        return this;
+    }
+
+    /**
+     * @param from -- epoch second the segment starts at
+     * @param to   -- epoch second the segment ends at, excluded
+     */
+    public UsageTimeline serviceInstance(int space, String name, String guid, String service, String plan, long from, long to) {
+        serviceInstances.add(new Segment(space, name, guid, service, plan, from, to));
+        return this;
+    }
+
+    /**
+     * @return apps that scale, are pushed blue/green, stop and start, are created and deleted, and service instances
+     * that are upgraded to larger plans, created and deleted, over the days from first to last
+     */
+    public static UsageTimeline sample(LocalDate first, LocalDate last, long seed) {
+        Random random = new Random(seed);
+        long start = epochSecond(first);
+        long end = epochSecond(last.plusDays(1));
+        UsageTimeline timeline = new UsageTimeline();
+
+        for (int space = 0; space < 3; space++) {
+            for (int app = 0; app < 5; app++) {
+                String name = "app-" + space + "-" + app;
+                int generation = 0;
+                int instances = 1 + random.nextInt(3);
+                int memory = MEMORY[random.nextInt(MEMORY.length)];
+                long at = random.nextInt(4) == 0 ? start + random.nextInt((int) (end - start)) : start;
+                long stop = random.nextInt(4) == 0 ? at + random.nextInt((int) (end - at)) : end;
+                while (at < stop) {
+                    long next = Math.min(stop, at + 3600 + random.nextInt(20 * 86400));
+                    timeline.app(space, name, name + "-guid-" + generation, instances, memory, at, next);
+                    switch (random.nextInt(4)) {
+                        case 0:
+                            instances = instances % 4 + 1;
+                            break;
+                        case 1:
+                            memory = MEMORY[(indexOf(memory) + 1) % MEMORY.length];
+                            break;
+                        case 2:
+                            generation++;
+                            break;
+                        default:
+                            // Stopped for a while, started again as it was
+                            next += random.nextInt(3 * 86400);
+                            break;
+                    }
+                    at = next;
+                }
+            }
+
+            for (int instance = 0; instance < 4; instance++) {
+                String name = "si-" + space + "-" + instance;
+                String service = SERVICES[(space + instance) % SERVICES.length];
+                long at = random.nextInt(3) == 0 ? start + random.nextInt((int) (end - start)) : start;
+                long stop = random.nextInt(3) == 0 ? at + random.nextInt((int) (end - at)) : end;
+                int plan = 0;
+                while (at < stop) {
+                    long next = plan == PLANS.length - 1 ? stop : Math.min(stop, at + 3600 + random.nextInt(40 * 86400));
+                    timeline.serviceInstance(space, name, name + "-guid", service, PLANS[plan++], at, next);
+                    at = next;
+                }
+            }
+        }
+        return timeline;
+    }
+
+    public byte[] appUsages(String orgGuid, LocalDate start, LocalDate end) {
+        return write(orgGuid, start, end, "app_usages", apps, (g, s, seconds) -> {
+            g.writeStringField("space_guid", "space-guid-" + s.space);
+            g.writeStringField("space_name", "space-" + s.space);
+            g.writeStringField("app_name", s.name);
+            g.writeStringField("app_guid", s.guid);
+            g.writeNumberField("instance_count", Integer.parseInt(s.kind));
+            g.writeNumberField("memory_in_mb_per_instance", Integer.parseInt(s.config));
+            g.writeNumberField("duration_in_seconds", (double) seconds * Integer.parseInt(s.kind));
+        });
+    }
+
+    public byte[] serviceUsages(String orgGuid, LocalDate start, LocalDate end) {
+        return write(orgGuid, start, end, "service_usages", serviceInstances, (g, s, seconds) -> {
+            g.writeBooleanField("deleted", false);
+            g.writeNumberField("duration_in_seconds", (double) seconds);
+            g.writeStringField("space_guid", "space-guid-" + s.space);
+            g.writeStringField("space_name", "space-" + s.space);
+            g.writeStringField("service_instance_guid", s.guid);
+            g.writeStringField("service_instance_name", s.name);
+            g.writeStringField("service_instance_type", "managed_service_instance");
+            g.writeStringField("service_plan_guid", "plan-" + s.config);
+            g.writeStringField("service_plan_name", s.config);
+            g.writeStringField("service_name", s.kind);
+            g.writeStringField("service_guid", "svc-" + s.kind);
+        });
+    }
+
+    ///////////////////////////////////////
+
+    private static long epochSecond(LocalDate day) {
+        return day.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static int indexOf(int memory) {
+        for (int i = 0; i < MEMORY.length; i++) {
+            if (MEMORY[i] == memory) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static byte[] write(String orgGuid, LocalDate start, LocalDate end, String recordsField,
+                                List<Segment> segments, RecordWriter record) {
+        long from = epochSecond(start);
+        long to = epochSecond(end.plusDays(1));
+
+        // Segments of the same record add up, records are in the order they first appear
+        Map<String, Segment> firsts = new LinkedHashMap<>();
+        Map<String, Long> seconds = new LinkedHashMap<>();
+        segments.stream()
+                .filter(s -> s.from < to && s.to > from)
+                .sorted(Comparator.comparingLong((Segment s) -> s.from))
+                .forEach(s -> {
+                    String key = s.guid + "/" + s.kind + "/" + s.config;
+                    firsts.putIfAbsent(key, s);
+                    seconds.merge(key, Math.min(s.to, to) - Math.max(s.from, from), Long::sum);
+                });
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonGenerator g = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+                g.writeStartObject();
+                g.writeStringField("organization_guid", orgGuid);
+                g.writeStringField("period_start", start.toString());
+                g.writeStringField("period_end", end.toString());
+                g.writeArrayFieldStart(recordsField);
+                for (Map.Entry<String, Segment> first : firsts.entrySet()) {
+                    g.writeStartObject();
+                    record.write(g, first.getValue(), seconds.get(first.getKey()));
+                    g.writeEndObject();
+                }
+                g.writeEndArray();
+                g.writeEndObject();
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface RecordWriter {
+        void write(JsonGenerator g, Segment segment, long seconds) throws IOException;
+    }
+
+    /**
+     * Usage of an app or service instance while its configuration doesn't change. For apps kind is the instance count
+     * and config the memory, for service instances kind is the service and config the plan.
+     */
+    private static class Segment {
+        private final int space;
+        private final String name;
+        private final String guid;
+        private final String kind;
+        private final String config;
+        private final long from;
+        private final long to;
+
+        Segment(int space, String name, String guid, String kind, Object config, long from, long to) {
+            this.space = space;
+            this.name = name;
+            this.guid = guid;
+            this.kind = kind;
+            this.config = String.valueOf(config);
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GzipInflaterTest {
+
+    private final Random random = new Random(7);
+
+    @Test
+    public void inflatesChunksSplitAnywhere() throws IOException {
+        byte[] payload = payload(300000);
+        byte[] gzipped = gzip(payload);
+
+        for (int maxChunk : new int[]{1, 7, 4096, gzipped.length}) {
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            try (GzipInflater inflater = new GzipInflater()) {
+                for (int offset = 0; offset < gzipped.length; ) {
+                    int end = Math.min(gzipped.length, offset + 1 + random.nextInt(maxChunk));
+                    for (byte[] block : inflater.inflate(Arrays.copyOfRange(gzipped, offset, end))) {
+                        assertTrue(block.length <= GzipInflater.BLOCK);
+                        inflated.write(block);
+                    }
+                    offset = end;
+                }
+                inflater.finish();
+            }
+            assertArrayEquals(payload, inflated.toByteArray());
+        }
+    }
+
+    @Test
+    public void skipsOptionalHeaderFields() throws IOException {
+        byte[] payload = payload(1000);
+        byte[] deflated = Arrays.copyOfRange(gzip(payload), 10, gzip(payload).length);
+        // FEXTRA, FNAME and FCOMMENT
+        byte[] header = {0x1f, (byte) 0x8b, 8, 4 | 8 | 16, 0, 0, 0, 0, 0, 3, 2, 0, 'x', 'y', 'a', '.', 'j', 0, 'c', 0};
+        byte[] gzipped = Arrays.copyOf(header, header.length + deflated.length);
+        System.arraycopy(deflated, 0, gzipped, header.length, deflated.length);
+
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        try (GzipInflater inflater = new GzipInflater()) {
+            for (byte b : gzipped) {
+                for (byte[] block : inflater.inflate(new byte[]{b})) {
+                    inflated.write(block);
+                }
+            }
+            inflater.finish();
+        }
+        assertArrayEquals(payload, inflated.toByteArray());
+    }
+
+    @Test(expected = ZipException.class)
+    public void failsOnTruncatedStreams() throws IOException {
+        byte[] gzipped = gzip(payload(10000));
+        try (GzipInflater inflater = new GzipInflater()) {
+            inflater.inflate(Arrays.copyOf(gzipped, gzipped.length / 2));
+            inflater.finish();
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void failsOnCorruptTrailers() throws IOException {
+        byte[] gzipped = gzip(payload(10000));
+        gzipped[gzipped.length - 5]++;
+        try (GzipInflater inflater = new GzipInflater()) {
+            inflater.inflate(gzipped);
+        }
+    }
+
+    private byte[] payload(int length) {
+        StringBuilder json = new StringBuilder("[");
+        while (json.length() < length) {
+            json.append("{\"app_guid\":\"").append(random.nextInt(50)).append("\",\"instance_count\":").append(random.nextInt(8)).append("},");
+        }
+        return json.substring(0, length).getBytes();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,79 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import io.pivotal.tola.cfapi.usage.utils.UsagePeriod.Type;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PeriodCalendarTest {
+
+    private static final Clock MAY_15 = Clock.fixed(Instant.parse("2019-05-15T10:00:00Z"), ZoneOffset.UTC);
+
+    private final PeriodCalendar calendar = new PeriodCalendar(1, MAY_15);
+    private final PeriodCalendar fiscal = new PeriodCalendar(7, MAY_15);
+
+    @Test
+    public void calendarQuartersMatchTheFixedQuarterDates() {
+        String[] starts = {"01-01", "04-01", "07-01", "10-01"};
+        String[] ends = {"03-31", "06-30", "09-30", "12-31"};
+        for (int quarter = 1; quarter <= 4; quarter++) {
+            UsagePeriod period = calendar.quarter(2020, quarter);
+            assertEquals(LocalDate.parse("2020-" + starts[quarter - 1]), period.getStart());
+            assertEquals(LocalDate.parse("2020-" + ends[quarter - 1]), period.getEnd());
+            assertEquals(period, calendar.quarterOf(period.getStart()));
+            assertEquals(period, calendar.quarterOf(period.getEnd()));
+        }
+    }
+
+    @Test
+    public void fiscalYearIsNamedAfterTheYearItEndsIn() {
+        assertEquals("2020-Q1", fiscal.quarterOf(LocalDate.parse("2019-07-01")).getLabel());
+        assertEquals("2019-Q4", fiscal.quarterOf(LocalDate.parse("2019-06-30")).getLabel());
+        assertEquals("2020-Q2", fiscal.quarterOf(LocalDate.parse("2019-12-31")).getLabel());
+        assertEquals("2020-Q3", fiscal.quarterOf(LocalDate.parse("2020-01-01")).getLabel());
+
+        UsagePeriod year = fiscal.periodOf(Type.YEAR, LocalDate.parse("2020-02-29"));
+        assertEquals(LocalDate.parse("2019-07-01"), year.getStart());
+        assertEquals(LocalDate.parse("2020-06-30"), year.getEnd());
+
+        UsagePeriod month = fiscal.periodOf(Type.MONTH, LocalDate.parse("2020-02-29"));
+        assertEquals("2020-M8", month.getLabel());
+        assertEquals(LocalDate.parse("2020-02-01"), month.getStart());
+        assertEquals(LocalDate.parse("2020-02-29"), month.getEnd());
+    }
+
+    @Test
+    public void elapsedQuartersAreLatestFirst() {
+        assertEquals("[2019-Q2, 2019-Q1]", labels(calendar.getElapsedQuarters()).toString());
+        assertEquals("[2019-Q4, 2019-Q3, 2019-Q2, 2019-Q1]", labels(fiscal.getElapsedQuarters()).toString());
+    }
+
+    @Test
+    public void runningQuarterEndsToday() {
+        assertEquals(LocalDate.parse("2019-05-15"), calendar.endOrToday(calendar.quarter("2019-Q2")));
+        assertEquals(LocalDate.parse("2019-03-31"), calendar.endOrToday(calendar.quarter("2019-Q1")));
+        assertFalse(calendar.isClosed(calendar.quarter(2019, 2)));
+        assertTrue(calendar.isClosed(calendar.quarter(2019, 1)));
+        assertEquals(89, PeriodCalendar.daysBetween(LocalDate.parse("2019-01-01"), LocalDate.parse("2019-03-31")));
+        assertEquals(0, PeriodCalendar.daysBetween(LocalDate.parse("2019-01-02"), LocalDate.parse("2019-01-01")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsQuartersOutsideTheYear() {
+        calendar.quarter(2019, 5);
+    }
+
+    private static List<String> labels(List<UsagePeriod> periods) {
+        return periods.stream().map(UsagePeriod::getLabel).collect(Collectors.toList());
+    }
+
+}
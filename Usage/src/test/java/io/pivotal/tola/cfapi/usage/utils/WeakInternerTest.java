@@ -0,0 +1,87 @@
+package io.pivotal.tola.cfapi.usage.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class WeakInternerTest {
+
+    private final WeakInterner interner = new WeakInterner();
+
+    @Test
+    public void returnsOneInstancePerValue() {
+        String guid = interner.intern(new String("6a0b1c2d-guid"));
+        char[] buffer = "xx6a0b1c2d-guidyy".toCharArray();
+
+        assertSame(guid, interner.intern(new String("6a0b1c2d-guid")));
+        assertSame(guid, interner.intern(buffer, 2, 13));
+        assertNotSame(guid, interner.intern(buffer, 2, 12));
+        assertEquals("6a0b1c2d-gui", interner.intern(buffer, 2, 12));
+        assertEquals(2, interner.size());
+    }
+
+    @Test
+    public void threadsInterningTheSameValuesShareInstances() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String[]>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit((Callable<String[]>) () -> {
+                    start.await();
+                    String[] interned = new String[5000];
+                    for (int i = 0; i < interned.length; i++) {
+                        interned[i] = interner.intern("guid-" + i);
+                    }
+                    return interned;
+                }));
+            }
+            start.countDown();
+
+            String[] first = results.get(0).get();
+            for (Future<String[]> result : results) {
+                String[] interned = result.get();
+                for (int i = 0; i < interned.length; i++) {
+                    assertSame(first[i], interned[i]);
+                }
+            }
+            assertEquals(5000, interner.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void dropsValuesNothingReferences() throws InterruptedException {
+        List<String> kept = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            String guid = interner.intern("guid-" + i);
+            if (i % 10 == 0) {
+                kept.add(guid);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (interner.size() > kept.size() && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertEquals(kept.size(), interner.size());
+        for (int i = 0; i < kept.size(); i++) {
+            assertSame(kept.get(i), interner.intern("guid-" + i * 10));
+        }
+        assertEquals(kept.size(), interner.size());
+    }
+
+}